@@ -0,0 +1,67 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import ru.golovkov.multimediadataprocessing.ImageWrapper;
+import ru.golovkov.multimediadataprocessing.TileScheduler;
+
+/**
+ * Синтетические входные изображения для бенчмарков; строятся в процессе, поэтому замеры
+ * не зависят от файлов и сети. Содержимое детерминировано: одинаковые параметры дают
+ * одинаковые пикселы при любом числе потоков.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Изображение с соотношением сторон 4:3 и площадью около {@code megapixels} мегапикселов.
+     */
+    static ImageWrapper create(int megapixels, ImageContent content, TileScheduler scheduler) {
+        int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3.0));
+        int height = megapixels * 1_000_000 / width;
+        ImageWrapper imageWrapper = new ImageWrapper(width, height);
+        int[] pixels = imageWrapper.getPixels();
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                for (int x = 0; x < width; x++) {
+                    pixels[y * width + x] = pixel(content, x, y, width, height);
+                }
+            }
+        });
+        return imageWrapper;
+    }
+
+    private static int pixel(ImageContent content, int x, int y, int width, int height) {
+        int noise = hash(x, y);
+        return switch (content) {
+            case NOISE -> noise | 0xFF000000;
+            case PHOTO -> {
+                double u = (double) x / width;
+                double v = (double) y / height;
+                double shape = Math.sin(u * 9 + Math.cos(v * 7)) * Math.cos(v * 11 - u * 3);
+                int red = channel(96 + 120 * u + 30 * shape, noise);
+                int green = channel(80 + 100 * v + 50 * shape, noise >>> 8);
+                int blue = channel(140 - 60 * u + 70 * shape, noise >>> 16);
+                yield 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+            case MASK -> {
+                double u = 40.0 * x / width;
+                double v = 30.0 * y / height;
+                boolean set = Math.sin(u) * Math.sin(v) + Math.sin(u * 0.37 + v * 0.53) > 0.3;
+                yield set ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        };
+    }
+
+    private static int channel(double value, int noise) {
+        return Math.clamp(Math.round(value) + (noise & 0x0F) - 8, 0, 255);
+    }
+
+    private static int hash(int x, int y) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77;
+        h ^= h >>> 15;
+        h *= 0x2C1B3C6D;
+        h ^= h >>> 12;
+        return h;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.golovkov.multimediadataprocessing.BorderMode;
+import ru.golovkov.multimediadataprocessing.ConvolutionKernel;
+import ru.golovkov.multimediadataprocessing.ImageWrapper;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class FilterBenchmark {
+
+    private static final ConvolutionKernel GAUSSIAN = ConvolutionKernel.of(new double[][]{
+            {1 / 256.0, 4 / 256.0, 6 / 256.0, 4 / 256.0, 1 / 256.0},
+            {4 / 256.0, 16 / 256.0, 24 / 256.0, 16 / 256.0, 4 / 256.0},
+            {6 / 256.0, 24 / 256.0, 36 / 256.0, 24 / 256.0, 6 / 256.0},
+            {4 / 256.0, 16 / 256.0, 24 / 256.0, 16 / 256.0, 4 / 256.0},
+            {1 / 256.0, 4 / 256.0, 6 / 256.0, 4 / 256.0, 1 / 256.0}});
+    private static final ConvolutionKernel PREWITT_X = ConvolutionKernel.of(new int[][]{{-1, 0, 1}, {-1, 0, 1}, {-1, 0, 1}});
+    private static final ConvolutionKernel PREWITT_Y = ConvolutionKernel.of(new int[][]{{-1, -1, -1}, {0, 0, 0}, {1, 1, 1}});
+
+    @Benchmark
+    public ImageWrapper averageFilter(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createAverageFilter(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper averageFilterRadius5(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createAverageFilter(state.imageWrapper, 5);
+    }
+
+    @Benchmark
+    public ImageWrapper medianFilter(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createMedianFilter(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper medianFilterRadius3(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createMedianFilter(state.imageWrapper, 3);
+    }
+
+    @Benchmark
+    public ImageWrapper robertsGradient(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createRobertsGradient(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper sobelGradient(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createSobelGradient(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper laplacian90(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createLaplacian90(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper laplacian45(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createLaplacian45(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper convolveGaussian5x5(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.convolve(state.imageWrapper, GAUSSIAN, BorderMode.REFLECT);
+    }
+
+    @Benchmark
+    public ImageWrapper gradientMagnitudePrewitt(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createGradientMagnitude(state.imageWrapper, PREWITT_X, PREWITT_Y, BorderMode.ZERO);
+    }
+
+    @Benchmark
+    public ImageWrapper meanThresholdRadius15(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.applyMeanThreshold(state.imageWrapper, 15, 10);
+    }
+
+    @Benchmark
+    public ImageWrapper bradleyThresholdRadius15(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.applyBradleyThreshold(state.imageWrapper, 15, 0.15);
+    }
+
+    @Benchmark
+    public ImageWrapper sauvolaThresholdRadius15(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.applySauvolaThreshold(state.imageWrapper, 15, 0.34);
+    }
+
+    @Benchmark
+    public ImageWrapper downsampled(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createDownsampled(state.imageWrapper, 1000, 1000);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.golovkov.multimediadataprocessing.Histogram;
+import ru.golovkov.multimediadataprocessing.ImageWrapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Гистограммные операции. {@link ru.golovkov.multimediadataprocessing.HistogramService}
+ * кэширует гистограмму по версии изображения, поэтому перед каждым вызовом версия
+ * сдвигается: замер включает подсчёт гистограммы, как при первом применении к картинке.
+ * CLAHE строит гистограммы плиток сам и кэшем не пользуется.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class HistogramBenchmark {
+
+    @Benchmark
+    public Histogram histogram(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        state.imageWrapper.markModified();
+        return state.imageTransformer.getHistogramService().histogramOf(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper histogramEqualization(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        state.imageWrapper.markModified();
+        return state.imageTransformer.createHistogramEqualization(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper adaptiveHistogramEqualization(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createAdaptiveHistogramEqualization(state.imageWrapper, 8, 2.0, false);
+    }
+
+    @Benchmark
+    public ImageWrapper adaptiveHistogramEqualizationLuma(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createAdaptiveHistogramEqualization(state.imageWrapper, 8, 2.0, true);
+    }
+
+    @Benchmark
+    public ImageWrapper otsuThreshold(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        state.imageWrapper.markModified();
+        return state.imageTransformer.applyOtsuThreshold(state.imageWrapper);
+    }
+}
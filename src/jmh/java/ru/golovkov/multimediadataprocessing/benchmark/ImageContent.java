@@ -0,0 +1,22 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+/**
+ * Вид синтетического содержимого входного изображения.
+ */
+public enum ImageContent {
+
+    /**
+     * Плавные градиенты и крупные детали со слабым шумом, как у фотографии.
+     */
+    PHOTO,
+
+    /**
+     * Равномерный шум: худший случай для сжатия и гистограммных алгоритмов.
+     */
+    NOISE,
+
+    /**
+     * Чёрно-белая маска из пятен, как после порогового преобразования.
+     */
+    MASK
+}
@@ -0,0 +1,41 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.golovkov.multimediadataprocessing.BinaryImage;
+import ru.golovkov.multimediadataprocessing.ImageTransformer;
+import ru.golovkov.multimediadataprocessing.ImageWrapper;
+import ru.golovkov.multimediadataprocessing.TileScheduler;
+
+/**
+ * Входное изображение и преобразователь для одной комбинации размера и содержимого.
+ * Преобразователь работает на всех ядрах, как в приложении.
+ */
+@State(Scope.Benchmark)
+public class ImageState {
+
+    @Param({"1", "12", "50"})
+    public int megapixels;
+
+    @Param({"PHOTO", "NOISE", "MASK"})
+    public ImageContent content;
+
+    ImageTransformer imageTransformer;
+    ImageWrapper imageWrapper;
+    BinaryImage binaryImage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TileScheduler scheduler = TileScheduler.withAvailableProcessors();
+        imageTransformer = new ImageTransformer(scheduler);
+        imageWrapper = BenchmarkImages.create(megapixels, content, scheduler);
+        binaryImage = imageTransformer.toBinaryImage(imageWrapper, true);
+    }
+
+    long pixelCount() {
+        return (long) imageWrapper.getWidth() * imageWrapper.getHeight();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.golovkov.multimediadataprocessing.BinaryImage;
+import ru.golovkov.multimediadataprocessing.ConnectedComponents;
+import ru.golovkov.multimediadataprocessing.ImageWrapper;
+import ru.golovkov.multimediadataprocessing.StructuringElement;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Морфология; маской считается чёрный цвет, поэтому на фото и шуме операции работают
+ * с тёмными пикселами.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MorphologyBenchmark {
+
+    private static final int[][] CROSS = {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}};
+    private static final StructuringElement DISC = StructuringElement.disc(3);
+    private static final StructuringElement SQUARE = StructuringElement.rectangle(15, 15);
+
+    @Benchmark
+    public ImageWrapper dilateMatrix(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.dilate(state.imageWrapper, CROSS, true);
+    }
+
+    @Benchmark
+    public ImageWrapper dilateDisc(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.dilate(state.imageWrapper, DISC, true);
+    }
+
+    @Benchmark
+    public ImageWrapper erodeSquare(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.erode(state.imageWrapper, SQUARE, true);
+    }
+
+    @Benchmark
+    public ImageWrapper close(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.close(state.imageWrapper, DISC, true);
+    }
+
+    @Benchmark
+    public ImageWrapper open(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.open(state.imageWrapper, DISC, true);
+    }
+
+    @Benchmark
+    public ImageWrapper boundaryExtraction(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.boundaryExtraction(state.imageWrapper, DISC, true);
+    }
+
+    @Benchmark
+    public BinaryImage dilateBinary(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.dilate(state.binaryImage, DISC);
+    }
+
+    @Benchmark
+    public BinaryImage erodeBinary(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.erode(state.binaryImage, DISC);
+    }
+
+    @Benchmark
+    public BinaryImage toBinaryImage(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.toBinaryImage(state.imageWrapper, true);
+    }
+
+    @Benchmark
+    public ImageWrapper toImageWrapper(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.toImageWrapper(state.binaryImage, true);
+    }
+
+    @Benchmark
+    public ConnectedComponents labelComponents(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.labelComponents(state.binaryImage, true);
+    }
+
+    @Benchmark
+    public ImageWrapper skeletonize(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.skeletonize(state.imageWrapper, true);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Дополнительный счётчик JMH: обработанные мегапикселы. В режиме пропускной способности
+ * JMH делит его на время и выводит рядом с основным результатом как мегапикселы в секунду,
+ * что позволяет сравнивать операции на изображениях разного размера.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PixelCounter {
+
+    public double megapixels;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megapixels = 0;
+    }
+
+    void add(ImageState state) {
+        megapixels += state.pixelCount() / 1_000_000.0;
+    }
+}
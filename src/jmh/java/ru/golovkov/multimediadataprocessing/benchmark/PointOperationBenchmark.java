@@ -0,0 +1,61 @@
+package ru.golovkov.multimediadataprocessing.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.golovkov.multimediadataprocessing.ImageWrapper;
+import ru.golovkov.multimediadataprocessing.PointOperation;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PointOperationBenchmark {
+
+    private static final PointOperation CHAIN = PointOperation.negative()
+            .andThen(PointOperation.powerLaw(0.8))
+            .andThen(PointOperation.brightnessRangeCut(40, 220));
+
+    @Benchmark
+    public ImageWrapper negative(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createNegativeImage(state.imageWrapper);
+    }
+
+    @Benchmark
+    public ImageWrapper powerLaw(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createPowerLawTransformation(state.imageWrapper, 0.5);
+    }
+
+    @Benchmark
+    public ImageWrapper brightnessRangeCut(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createBrightnessRangeCut(state.imageWrapper, 50, 200);
+    }
+
+    @Benchmark
+    public ImageWrapper brightnessRangeCut2(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.createBrightnessRangeCut2(state.imageWrapper, 50, 200);
+    }
+
+    @Benchmark
+    public ImageWrapper pointOperationChain(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.applyPointOperation(state.imageWrapper, CHAIN);
+    }
+
+    @Benchmark
+    public ImageWrapper threshold(ImageState state, PixelCounter counter) {
+        counter.add(state);
+        return state.imageTransformer.applyThreshold(state.imageWrapper, 128);
+    }
+}
@@ -6,6 +6,9 @@ module ru.golovkov.multimediadataprocessing {
     requires org.kordamp.ikonli.javafx;
     requires static lombok;
     requires java.desktop;
+    requires jdk.jfr;
+    requires jdk.management;
+    requires static jdk.incubator.vector;
 
     opens ru.golovkov.multimediadataprocessing to javafx.fxml;
     exports ru.golovkov.multimediadataprocessing;
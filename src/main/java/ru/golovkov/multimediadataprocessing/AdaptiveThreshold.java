@@ -0,0 +1,113 @@
+package ru.golovkov.multimediadataprocessing;
+
+/**
+ * Адаптивная пороговая обработка по окну (2r + 1) x (2r + 1) вокруг каждого пиксела на
+ * таблицах сумм (integral image) серого и его квадрата, поэтому стоимость пиксела не
+ * зависит от радиуса.
+ * <p>
+ * Таблица строится в два параллельных прохода: префиксные суммы внутри строк полосами
+ * строк, затем накопление по столбцам полосами столбцов. Суммы хранятся в {@code long}:
+ * в {@code int} переполнилась бы сумма окна больше 4096x4096 пикселов, а такое окно у
+ * крупного изображения даёт уже радиус 2048. Суммы квадратов нужны только методу Саувола.
+ * У края изображения окно обрезается. Результат, как у {@link PointOperation#threshold}: непрозрачный чёрный для
+ * пикселов не светлее порога и белый для остальных.
+ */
+final class AdaptiveThreshold {
+
+    private static final double SAUVOLA_DYNAMIC_RANGE = 128;
+    private static final int MIN_STRIP_WIDTH = 64;
+
+    private AdaptiveThreshold() {
+    }
+
+    enum Method {
+
+        /**
+         * Порог — среднее окна минус {@code parameter}.
+         */
+        MEAN,
+
+        /**
+         * Брэдли–Рот: порог — среднее окна, уменьшенное на долю {@code parameter}, обычно 0.15.
+         */
+        BRADLEY,
+
+        /**
+         * Саувола: порог m·(1 + k·(s / 128 − 1)) по среднему m и отклонению s окна,
+         * k = {@code parameter}, обычно от 0.2 до 0.5.
+         */
+        SAUVOLA
+    }
+
+    static void apply(ImageWrapper imageWrapper, ImageWrapper result, Method method, int radius, double parameter,
+                      TileScheduler scheduler) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Радиус окна должен быть положительным: " + radius);
+        }
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        int[] target = result.getPixels();
+        int stride = width + 1;
+        long[] sums = new long[stride * (height + 1)];
+        long[] squares = method == Method.SAUVOLA ? new long[sums.length] : null;
+
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int row = (y + 1) * stride;
+                long sum = 0;
+                long square = 0;
+                for (int x = 0; x < width; x++) {
+                    int gray = ImageTransformer.gray(source[y * width + x]);
+                    sum += gray;
+                    sums[row + x + 1] = sum;
+                    if (squares != null) {
+                        square += gray * gray;
+                        squares[row + x + 1] = square;
+                    }
+                }
+            }
+        });
+        scheduler.forEachColumnStrip(stride, MIN_STRIP_WIDTH, (fromX, toX) -> {
+            for (int y = 2; y <= height; y++) {
+                int row = y * stride;
+                int previous = row - stride;
+                for (int x = fromX; x < toX; x++) {
+                    sums[row + x] += sums[previous + x];
+                }
+                if (squares != null) {
+                    for (int x = fromX; x < toX; x++) {
+                        squares[row + x] += squares[previous + x];
+                    }
+                }
+            }
+        });
+
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int top = Math.max(0, y - radius) * stride;
+                int bottom = (Math.min(height - 1, y + radius) + 1) * stride;
+                int rows = (bottom - top) / stride;
+                for (int x = 0; x < width; x++) {
+                    int left = Math.max(0, x - radius);
+                    int right = Math.min(width - 1, x + radius) + 1;
+                    int area = rows * (right - left);
+                    long sum = sums[bottom + right] - sums[bottom + left] - sums[top + right] + sums[top + left];
+                    int gray = ImageTransformer.gray(source[y * width + x]);
+                    boolean foreground = switch (method) {
+                        case MEAN -> gray <= (double) sum / area - parameter;
+                        case BRADLEY -> (double) gray * area <= sum * (1 - parameter);
+                        case SAUVOLA -> {
+                            long square = squares[bottom + right] - squares[bottom + left]
+                                    - squares[top + right] + squares[top + left];
+                            double mean = (double) sum / area;
+                            double deviation = Math.sqrt(Math.max(0, (double) square / area - mean * mean));
+                            yield gray <= mean * (1 + parameter * (deviation / SAUVOLA_DYNAMIC_RANGE - 1));
+                        }
+                    };
+                    target[y * width + x] = foreground ? 0xFF000000 : 0xFFFFFFFF;
+                }
+            }
+        });
+    }
+}
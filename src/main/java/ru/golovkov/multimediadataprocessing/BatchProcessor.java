@@ -0,0 +1,348 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная обработка каталога изображений без графического интерфейса и без запуска JavaFX.
+ * <pre>
+ * BatchProcessor &lt;каталог | шаблон&gt; &lt;операции&gt; &lt;выходной каталог&gt; [--threads N] [--format png] [--tiled]
+ *     [--tmp-dir каталог]
+ * </pre>
+ * Шаблон — glob относительно первого каталога пути без подстановочных символов, например
+ * {@code photos/**.jpg}. Синтаксис операций описан в {@link OperationChain}. Из Maven:
+ * {@code mvn javafx:run@batch -Djavafx.args="in median:2,otsu out"}.
+ * <p>
+ * Чтение, преобразование и запись идут конвейером: каждую стадию выполняет свой пул потоков,
+ * а между стадиями стоят ограниченные очереди, поэтому в памяти одновременно находится лишь
+ * несколько изображений. Каждый поток преобразования обрабатывает своё изображение
+ * последовательно, параллелизм достигается за счёт одновременной обработки нескольких файлов.
+ * <p>
+ * С {@code --tiled} файлы обрабатываются по одному через {@link TiledRaster}: изображение
+ * хранится в отображённом файле, операции идут по плиткам на всех потоках, а PNG пишется
+ * потоком, поэтому размер изображения не ограничен кучей. Файлы растров создаются в каталоге
+ * {@code --tmp-dir} (по умолчанию в системном каталоге временных файлов). Оба режима декодируют файлы
+ * одинаково (см. {@link ImageDecoder}), так что результат от {@code --tiled} не зависит.
+ * <p>
+ * Чтение, преобразование и запись каждого файла выдают события JFR {@link ProcessingEvent},
+ * так что медленный файл или этап виден в записи {@code -XX:StartFlightRecording}.
+ */
+public class BatchProcessor {
+
+    private static final List<String> EXTENSIONS = List.of("png", "jpg", "jpeg", "gif", "bmp");
+    private static final Job END = new Job(null, null);
+    private static final int METRICS_CAPACITY = 100;
+
+    private final OperationChain operations;
+    private final Path outputDirectory;
+    private final String format;
+    private final int threads;
+    private final int ioThreads;
+    private final Path temporaryDirectory;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private final AtomicLong pixels = new AtomicLong();
+    private final OperationMetrics metrics = new OperationMetrics(METRICS_CAPACITY);
+
+    public BatchProcessor(OperationChain operations, Path outputDirectory, String format, int threads) {
+        this(operations, outputDirectory, format, threads, null);
+    }
+
+    /**
+     * @param temporaryDirectory каталог для файлов {@link TiledRaster} в режиме {@code --tiled};
+     *                           {@code null} — системный каталог временных файлов
+     */
+    public BatchProcessor(OperationChain operations, Path outputDirectory, String format, int threads,
+                          Path temporaryDirectory) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Число потоков должно быть положительным: " + threads);
+        }
+        this.operations = operations;
+        this.outputDirectory = outputDirectory;
+        this.format = format;
+        this.threads = threads;
+        this.ioThreads = Math.max(1, threads / 2);
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Использование: BatchProcessor <каталог | шаблон> <операции> <выходной каталог>"
+                    + " [--threads N] [--format png] [--tiled] [--tmp-dir каталог]");
+            System.exit(2);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        String format = "png";
+        boolean tiled = false;
+        Path temporaryDirectory = null;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--format" -> format = args[++i].toLowerCase(Locale.ROOT);
+                case "--tiled" -> tiled = true;
+                case "--tmp-dir" -> temporaryDirectory = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            }
+        }
+        List<Path> files = findFiles(args[0]);
+        BatchProcessor processor = new BatchProcessor(OperationChain.parse(args[1]), Path.of(args[2]), format, threads,
+                temporaryDirectory);
+        if (tiled) {
+            processor.processTiled(files);
+        } else {
+            processor.process(files);
+        }
+        if (processor.failed.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    public static List<Path> findFiles(String input) throws IOException {
+        Path path = Path.of(input);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> stream = Files.list(path)) {
+                return stream.filter(Files::isRegularFile).filter(BatchProcessor::hasImageExtension).sorted().toList();
+            }
+        }
+        Path base = path.isAbsolute() ? path.getRoot() : Path.of("");
+        int firstPattern = 0;
+        while (firstPattern < path.getNameCount() - 1 && !isPattern(path.getName(firstPattern).toString())) {
+            base = base.resolve(path.getName(firstPattern));
+            firstPattern++;
+        }
+        Path root = base.toString().isEmpty() ? Path.of(".") : base;
+        PathMatcher matcher = FileSystems.getDefault()
+                .getPathMatcher("glob:" + path.subpath(firstPattern, path.getNameCount()));
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(root.relativize(file)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public void process(List<Path> files) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(2 * threads);
+        BlockingQueue<Job> transformed = new ArrayBlockingQueue<>(2 * ioThreads);
+        AtomicInteger nextFile = new AtomicInteger();
+        AtomicInteger activeDecoders = new AtomicInteger(ioThreads);
+        AtomicInteger activeTransformers = new AtomicInteger(threads);
+
+        long start = System.nanoTime();
+        ExecutorService decoders = Executors.newFixedThreadPool(ioThreads);
+        ExecutorService transformers = Executors.newFixedThreadPool(threads);
+        ExecutorService encoders = Executors.newFixedThreadPool(ioThreads);
+        for (int i = 0; i < ioThreads; i++) {
+            decoders.execute(() -> stage(() -> {
+                for (int index = nextFile.getAndIncrement(); index < files.size(); index = nextFile.getAndIncrement()) {
+                    Job job = decode(files.get(index));
+                    if (job != null) {
+                        decoded.put(job);
+                    }
+                }
+            }, () -> {
+                if (activeDecoders.decrementAndGet() == 0) {
+                    for (int j = 0; j < threads; j++) {
+                        decoded.put(END);
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < threads; i++) {
+            transformers.execute(() -> stage(() -> {
+                ImageTransformer imageTransformer = new ImageTransformer(TileScheduler.serial());
+                for (Job job = decoded.take(); job != END; job = decoded.take()) {
+                    Job result = transform(imageTransformer, job);
+                    if (result != null) {
+                        transformed.put(result);
+                    }
+                }
+            }, () -> {
+                if (activeTransformers.decrementAndGet() == 0) {
+                    for (int j = 0; j < ioThreads; j++) {
+                        transformed.put(END);
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < ioThreads; i++) {
+            encoders.execute(() -> stage(() -> {
+                for (Job job = transformed.take(); job != END; job = transformed.take()) {
+                    encode(job);
+                }
+            }));
+        }
+        for (ExecutorService executor : List.of(decoders, transformers, encoders)) {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        report(files.size(), System.nanoTime() - start);
+    }
+
+    public void processTiled(List<Path> files) throws IOException {
+        Files.createDirectories(outputDirectory);
+        TileScheduler scheduler = new TileScheduler(threads);
+        ImageTransformer imageTransformer = new ImageTransformer(scheduler);
+        long start = System.nanoTime();
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            try (TiledRaster source = read(file);
+                 TiledRaster result = transform(imageTransformer, source, fileName)) {
+                inputBytes.addAndGet(Files.size(file));
+                Path target = outputDirectory.resolve(baseName(file) + "." + format);
+                metrics.run(OperationMetrics.Phase.SAVE, fileName, format, result.getWidth(), result.getHeight(),
+                        () -> ImageEncoder.write(result, format, target, scheduler));
+                outputBytes.addAndGet(Files.size(target));
+                pixels.addAndGet((long) result.getWidth() * result.getHeight());
+                processed.incrementAndGet();
+            } catch (Throwable e) {
+                fail(file, e);
+            }
+        }
+        report(files.size(), System.nanoTime() - start);
+    }
+
+    private TiledRaster read(Path file) throws IOException {
+        try (OperationMetrics.Span span = metrics.start(OperationMetrics.Phase.LOAD, file.getFileName().toString(),
+                "", 0, 0)) {
+            TiledRaster raster = TiledRaster.read(file, temporaryDirectory);
+            span.setSize(raster.getWidth(), raster.getHeight());
+            return raster;
+        }
+    }
+
+    private TiledRaster transform(ImageTransformer imageTransformer, TiledRaster source, String fileName)
+            throws IOException {
+        return metrics.measure(OperationMetrics.Phase.TRANSFORM, operations.toString(), fileName,
+                source.getWidth(), source.getHeight(), () -> operations.apply(imageTransformer, source));
+    }
+
+    private Job decode(Path file) {
+        try (OperationMetrics.Span span = metrics.start(OperationMetrics.Phase.LOAD, file.getFileName().toString(),
+                "", 0, 0)) {
+            ImageWrapper image = ImageDecoder.read(file);
+            span.setSize(image.getWidth(), image.getHeight());
+            inputBytes.addAndGet(Files.size(file));
+            return new Job(file, image);
+        } catch (Throwable e) {
+            fail(file, e);
+            return null;
+        }
+    }
+
+    private Job transform(ImageTransformer imageTransformer, Job job) {
+        try {
+            return new Job(job.file, metrics.measure(OperationMetrics.Phase.TRANSFORM, operations.toString(),
+                    job.file.getFileName().toString(), job.image.getWidth(), job.image.getHeight(),
+                    () -> operations.apply(imageTransformer, job.image)));
+        } catch (Throwable e) {
+            fail(job.file, e);
+            return null;
+        }
+    }
+
+    private void encode(Job job) {
+        ImageWrapper image = job.image;
+        try {
+            Path target = outputDirectory.resolve(baseName(job.file) + "." + format);
+            metrics.run(OperationMetrics.Phase.SAVE, job.file.getFileName().toString(), format,
+                    image.getWidth(), image.getHeight(),
+                    () -> ImageEncoder.write(image, format, target, TileScheduler.serial()));
+            outputBytes.addAndGet(Files.size(target));
+            pixels.addAndGet((long) image.getWidth() * image.getHeight());
+            processed.incrementAndGet();
+        } catch (Throwable e) {
+            fail(job.file, e);
+        }
+    }
+
+    /**
+     * Учитывает сбой одного файла. Ловятся и ошибки вроде {@link OutOfMemoryError} на
+     * огромном изображении: после них память этого файла освобождается, и поток
+     * продолжает со следующим файлом, а не умирает, останавливая конвейер.
+     */
+    private void fail(Path file, Throwable e) {
+        failed.incrementAndGet();
+        System.err.println("Ошибка обработки " + file + ": " + (e.getMessage() != null ? e.getMessage() : e));
+    }
+
+    private void report(int total, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf(Locale.ROOT, "Операции: %s%n", operations);
+        System.out.printf(Locale.ROOT, "Обработано %d из %d изображений за %.2f с, ошибок: %d%n",
+                processed.get(), total, seconds, failed.get());
+        System.out.printf(Locale.ROOT, "%.2f изобр./с, %.2f Мп/с, чтение %.2f МБ/с, запись %.2f МБ/с%n",
+                processed.get() / seconds, pixels.get() / 1e6 / seconds,
+                inputBytes.get() / 1e6 / seconds, outputBytes.get() / 1e6 / seconds);
+    }
+
+    private static void stage(Stage stage) {
+        stage(stage, () -> {
+        });
+    }
+
+    /**
+     * Выполняет стадию конвейера и в любом случае, даже если поток стадии упал с ошибкой,
+     * выполняет {@code finish}, который передаёт END дальше, чтобы следующие стадии
+     * не ждали вечно.
+     */
+    private static void stage(Stage stage, Stage finish) {
+        try {
+            stage.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            boolean interrupted = Thread.interrupted();
+            try {
+                finish.run();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static boolean hasImageExtension(Path file) {
+        String name = file.getFileName().toString();
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex >= 0 && EXTENSIONS.contains(name.substring(dotIndex + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isPattern(String name) {
+        return name.contains("*") || name.contains("?") || name.contains("[") || name.contains("{");
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        int dotIndex = name.lastIndexOf('.');
+        return dotIndex > 0 ? name.substring(0, dotIndex) : name;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+
+        void run() throws InterruptedException;
+    }
+
+    private record Job(Path file, ImageWrapper image) {
+    }
+}
@@ -0,0 +1,141 @@
+package ru.golovkov.multimediadataprocessing;
+
+/**
+ * Бинарное изображение, упакованное по биту на пиксел: каждая строка занимает
+ * {@code wordsPerRow} слов {@code long}, пиксел x хранится в бите {@code x % 64}
+ * слова {@code x / 64}. Лишние биты в конце строки всегда нулевые.
+ */
+public final class BinaryImage {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    public BinaryImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    public static BinaryImage fromImage(ImageWrapper imageWrapper, int color, TileScheduler scheduler) {
+        int width = imageWrapper.getWidth();
+        int[] source = imageWrapper.getPixels();
+        BinaryImage binaryImage = new BinaryImage(width, imageWrapper.getHeight());
+        long[] words = binaryImage.words;
+        int wordsPerRow = binaryImage.wordsPerRow;
+        scheduler.forEachRowBand(imageWrapper.getHeight(), (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int row = y * width;
+                int wordRow = y * wordsPerRow;
+                for (int x = 0; x < width; x++) {
+                    if (source[row + x] == color) {
+                        words[wordRow + (x >>> 6)] |= 1L << x;
+                    }
+                }
+            }
+        });
+        return binaryImage;
+    }
+
+    public ImageWrapper toImageWrapper(int maskColor, int backgroundColor, TileScheduler scheduler) {
+        ImageWrapper result = new ImageWrapper(width, height);
+        int[] target = result.getPixels();
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int row = y * width;
+                int wordRow = y * wordsPerRow;
+                for (int x = 0; x < width; x++) {
+                    target[row + x] = (words[wordRow + (x >>> 6)] >>> x & 1L) != 0 ? maskColor : backgroundColor;
+                }
+            }
+        });
+        return result;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public boolean get(int x, int y) {
+        return (words[y * wordsPerRow + (x >>> 6)] >>> x & 1L) != 0;
+    }
+
+    public void set(int x, int y, boolean value) {
+        int index = y * wordsPerRow + (x >>> 6);
+        if (value) {
+            words[index] |= 1L << x;
+        } else {
+            words[index] &= ~(1L << x);
+        }
+    }
+
+    public long getWord(int y, int wordIndex) {
+        return words[y * wordsPerRow + wordIndex];
+    }
+
+    public void setWord(int y, int wordIndex, long word) {
+        words[y * wordsPerRow + wordIndex] = word & (wordIndex == wordsPerRow - 1 ? lastWordMask() : -1L);
+    }
+
+    public long countPixels() {
+        long count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    long lastWordMask() {
+        int tail = width & (Long.SIZE - 1);
+        return tail == 0 ? -1L : (1L << tail) - 1;
+    }
+
+    /**
+     * Слово строки {@code y}, в котором бит x равен пикселу (x + dx) этой строки. Пикселы
+     * за пределами изображения равны {@code fill}; при {@code invert} пикселы внутри
+     * изображения берутся инвертированными.
+     */
+    long shiftedWord(int y, int wordIndex, int dx, boolean invert, boolean fill) {
+        long fillWord = fill ? -1L : 0L;
+        if (y < 0 || y >= height) {
+            return fillWord;
+        }
+        int shift = dx & (Long.SIZE - 1);
+        int sourceIndex = wordIndex + (dx >> 6);
+        long low = sourceWord(y, sourceIndex, invert, fillWord);
+        if (shift == 0) {
+            return low;
+        }
+        long high = sourceWord(y, sourceIndex + 1, invert, fillWord);
+        return low >>> shift | high << (Long.SIZE - shift);
+    }
+
+    private long sourceWord(int y, int wordIndex, boolean invert, long fillWord) {
+        if (wordIndex < 0 || wordIndex >= wordsPerRow) {
+            return fillWord;
+        }
+        long word = words[y * wordsPerRow + wordIndex];
+        if (invert) {
+            word = ~word;
+        }
+        if (wordIndex == wordsPerRow - 1) {
+            long mask = lastWordMask();
+            word = word & mask | fillWord & ~mask;
+        }
+        return word;
+    }
+}
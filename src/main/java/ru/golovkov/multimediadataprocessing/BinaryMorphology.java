@@ -0,0 +1,139 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Дилатация и эрозия над {@link BinaryImage} по 64 пиксела за операцию.
+ * <p>
+ * Структурный элемент применяется покомпонентно: отрезки обрабатывает {@link LineMorphology},
+ * а для наборов смещений строка источника сдвигается на каждое смещение, и сдвинутые слова
+ * объединяются через OR (дилатация) или AND (эрозия). Смещение со значением 1 совпадает
+ * с пикселом маски, со значением 0 — с пикселом фона, любое другое значение не совпадает
+ * ни с чем. Пикселы за краем изображения не влияют на результат; чтобы это оставалось верным
+ * для составного элемента с диагоналями или наборами смещений, изображение на время операции
+ * дополняется нейтральной рамкой (для прямоугольника это не нужно).
+ */
+final class BinaryMorphology {
+
+    private BinaryMorphology() {
+    }
+
+    static BinaryImage dilate(BinaryImage image, StructuringElement structuringElement, TileScheduler scheduler) {
+        return apply(image, structuringElement, false, scheduler);
+    }
+
+    static BinaryImage erode(BinaryImage image, StructuringElement structuringElement, TileScheduler scheduler) {
+        return apply(image, structuringElement, true, scheduler);
+    }
+
+    /**
+     * Пиксел результата установлен там, где цвет расширенной маски отличается от цвета исходного
+     * изображения: {@code mask} и {@code background} — пикселы исходного изображения,
+     * в точности равные цвету маски и цвету фона.
+     */
+    static BinaryImage difference(BinaryImage dilated, BinaryImage mask, BinaryImage background, TileScheduler scheduler) {
+        BinaryImage result = new BinaryImage(dilated.getWidth(), dilated.getHeight());
+        int wordsPerRow = dilated.getWordsPerRow();
+        scheduler.forEachRowBand(dilated.getHeight(), (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                for (int k = 0; k < wordsPerRow; k++) {
+                    long dilatedWord = dilated.getWord(y, k);
+                    result.setWord(y, k, dilatedWord & ~mask.getWord(y, k) | ~dilatedWord & ~background.getWord(y, k));
+                }
+            }
+        });
+        return result;
+    }
+
+    private static BinaryImage apply(BinaryImage image, StructuringElement structuringElement, boolean erode,
+                                     TileScheduler scheduler) {
+        List<StructuringElement.Component> components = structuringElement.getComponents();
+        if (components.size() == 1 || components.stream().allMatch(BinaryMorphology::isAxisLine)) {
+            BinaryImage result = image;
+            for (StructuringElement.Component component : components) {
+                result = applyComponent(result, component, erode, scheduler);
+            }
+            return result;
+        }
+        int padX = structuringElement.getWidth();
+        int padY = structuringElement.getHeight();
+        BinaryImage result = pad(image, padX, padY, erode, scheduler);
+        for (StructuringElement.Component component : components) {
+            result = applyComponent(result, component, erode, scheduler);
+        }
+        return crop(result, image.getWidth(), image.getHeight(), padX, padY, scheduler);
+    }
+
+    private static BinaryImage applyComponent(BinaryImage image, StructuringElement.Component component, boolean erode,
+                                              TileScheduler scheduler) {
+        if (component.isLine()) {
+            if (component.length() == 1) {
+                return image;
+            }
+            return LineMorphology.apply(image, component.direction(), component.length(), erode, scheduler);
+        }
+        BinaryImage result = new BinaryImage(image.getWidth(), image.getHeight());
+        int wordsPerRow = image.getWordsPerRow();
+        int[] offsetsX = component.dx();
+        int[] offsetsY = component.dy();
+        int[] values = component.values();
+        scheduler.forEachRowBand(image.getHeight(), (fromY, toY) -> {
+            long[] accumulator = new long[wordsPerRow];
+            for (int y = fromY; y < toY; y++) {
+                Arrays.fill(accumulator, erode ? -1L : 0L);
+                for (int i = 0; i < values.length; i++) {
+                    int sourceY = y + offsetsY[i];
+                    for (int k = 0; k < wordsPerRow; k++) {
+                        long word = elementWord(image, sourceY, k, offsetsX[i], values[i], erode);
+                        accumulator[k] = erode ? accumulator[k] & word : accumulator[k] | word;
+                    }
+                }
+                for (int k = 0; k < wordsPerRow; k++) {
+                    result.setWord(y, k, accumulator[k]);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static boolean isAxisLine(StructuringElement.Component component) {
+        return component.direction() == StructuringElement.Direction.HORIZONTAL
+                || component.direction() == StructuringElement.Direction.VERTICAL;
+    }
+
+    private static BinaryImage pad(BinaryImage image, int padX, int padY, boolean fill, TileScheduler scheduler) {
+        BinaryImage padded = new BinaryImage(image.getWidth() + 2 * padX, image.getHeight() + 2 * padY);
+        int wordsPerRow = padded.getWordsPerRow();
+        scheduler.forEachRowBand(padded.getHeight(), (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                for (int k = 0; k < wordsPerRow; k++) {
+                    padded.setWord(y, k, image.shiftedWord(y - padY, k, -padX, false, fill));
+                }
+            }
+        });
+        return padded;
+    }
+
+    private static BinaryImage crop(BinaryImage padded, int width, int height, int padX, int padY,
+                                    TileScheduler scheduler) {
+        BinaryImage result = new BinaryImage(width, height);
+        int wordsPerRow = result.getWordsPerRow();
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                for (int k = 0; k < wordsPerRow; k++) {
+                    result.setWord(y, k, padded.shiftedWord(y + padY, k, padX, false, false));
+                }
+            }
+        });
+        return result;
+    }
+
+    private static long elementWord(BinaryImage image, int y, int wordIndex, int dx, int value, boolean fill) {
+        return switch (value) {
+            case 1 -> image.shiftedWord(y, wordIndex, dx, false, fill);
+            case 0 -> image.shiftedWord(y, wordIndex, dx, true, fill);
+            default -> image.shiftedWord(y, wordIndex, dx, false, fill) & image.shiftedWord(y, wordIndex, dx, true, fill);
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package ru.golovkov.multimediadataprocessing;
+
+public enum BorderMode {
+
+    CLAMP,
+    REFLECT,
+    WRAP,
+    ZERO;
+
+    /**
+     * Возвращает индекс пиксела, который подставляется вместо координаты {@code index}
+     * за пределами отрезка [0, size), либо -1, если за краем должен быть ноль.
+     */
+    int resolve(int index, int size) {
+        if (index >= 0 && index < size) {
+            return index;
+        }
+        return switch (this) {
+            case CLAMP -> Math.clamp(index, 0, size - 1);
+            case REFLECT -> reflect(index, size);
+            case WRAP -> Math.floorMod(index, size);
+            case ZERO -> -1;
+        };
+    }
+
+    private static int reflect(int index, int size) {
+        if (size == 1) {
+            return 0;
+        }
+        int period = 2 * size - 2;
+        int folded = Math.floorMod(index, period);
+        return folded < size ? folded : period - folded;
+    }
+}
@@ -0,0 +1,119 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Усредняющий фильтр с квадратным окном (2r + 1) x (2r + 1) на скользящих суммах.
+ * <p>
+ * Сначала для каждого столбца поддерживается сумма по вертикальному окну (строка входит,
+ * строка выходит), затем по этим суммам скользит горизонтальное окно. Суммы столбцов
+ * заново набираются в начале каждой полосы строк, поэтому полосы не ниже окна (2r + 1
+ * строк), и стоимость пиксела не зависит от радиуса. За краем изображения повторяются
+ * крайние пикселы. Альфа-канал берётся из центрального пиксела.
+ */
+final class BoxFilter {
+
+    private static final int BANDS_PER_WORKER = 4;
+
+    private BoxFilter() {
+    }
+
+    static void apply(ImageWrapper imageWrapper, ImageWrapper result, int radius, TileScheduler scheduler) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Радиус фильтра должен быть положительным: " + radius);
+        }
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        int[] target = result.getPixels();
+        int area = (2 * radius + 1) * (2 * radius + 1);
+        int half = area / 2;
+        int bandCount = Math.clamp(height / (2 * radius + 1), 1, scheduler.getParallelism() * BANDS_PER_WORKER);
+
+        scheduler.forEachChunk(bandCount, 1, (fromBand, toBand) -> {
+            int[] columnRed = new int[width];
+            int[] columnGreen = new int[width];
+            int[] columnBlue = new int[width];
+            for (int band = fromBand; band < toBand; band++) {
+                int fromY = TileScheduler.partBoundary(band, height, bandCount);
+                int toY = TileScheduler.partBoundary(band + 1, height, bandCount);
+                fillColumns(source, width, height, fromY, radius, columnRed, columnGreen, columnBlue);
+                for (int y = fromY; y < toY; y++) {
+                    if (y > fromY) {
+                        addRow(source, clampedRow(y + radius, height) * width, width,
+                                columnRed, columnGreen, columnBlue, 1);
+                        addRow(source, clampedRow(y - radius - 1, height) * width, width,
+                                columnRed, columnGreen, columnBlue, -1);
+                    }
+
+                    int sumRed = windowSum(columnRed, radius);
+                    int sumGreen = windowSum(columnGreen, radius);
+                    int sumBlue = windowSum(columnBlue, radius);
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        target[row + x] = ImageTransformer.argb(ImageTransformer.alpha(source[row + x]),
+                                (sumRed + half) / area, (sumGreen + half) / area, (sumBlue + half) / area);
+                        int entering = clampedColumn(x + radius + 1, width);
+                        int leaving = clampedColumn(x - radius, width);
+                        sumRed += columnRed[entering] - columnRed[leaving];
+                        sumGreen += columnGreen[entering] - columnGreen[leaving];
+                        sumBlue += columnBlue[entering] - columnBlue[leaving];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Заполняет суммы столбцов по окну строк [{@code y - radius}, {@code y + radius}].
+     * Повторы крайних строк за краем изображения прибавляются с весом, а не построчно.
+     */
+    private static void fillColumns(int[] source, int width, int height, int y, int radius,
+                                    int[] columnRed, int[] columnGreen, int[] columnBlue) {
+        Arrays.fill(columnRed, 0);
+        Arrays.fill(columnGreen, 0);
+        Arrays.fill(columnBlue, 0);
+        int fromY = Math.max(0, y - radius);
+        int toY = Math.min(height - 1, y + radius);
+        for (int row = fromY; row <= toY; row++) {
+            addRow(source, row * width, width, columnRed, columnGreen, columnBlue, 1);
+        }
+        addRow(source, 0, width, columnRed, columnGreen, columnBlue, Math.max(0, radius - y));
+        addRow(source, (height - 1) * width, width, columnRed, columnGreen, columnBlue,
+                Math.max(0, y + radius - (height - 1)));
+    }
+
+    /**
+     * Сумма столбцов по окну [{@code -radius}, {@code radius}] вокруг нулевого столбца
+     * с повтором крайних столбцов.
+     */
+    private static int windowSum(int[] columns, int radius) {
+        int last = columns.length - 1;
+        int sum = columns[0] * radius + columns[last] * Math.max(0, radius - last);
+        for (int x = 0; x <= Math.min(radius, last); x++) {
+            sum += columns[x];
+        }
+        return sum;
+    }
+
+    private static void addRow(int[] source, int rowOffset, int width,
+                               int[] columnRed, int[] columnGreen, int[] columnBlue, int weight) {
+        if (weight == 0) {
+            return;
+        }
+        for (int x = 0; x < width; x++) {
+            int argb = source[rowOffset + x];
+            columnRed[x] += weight * ImageTransformer.red(argb);
+            columnGreen[x] += weight * ImageTransformer.green(argb);
+            columnBlue[x] += weight * ImageTransformer.blue(argb);
+        }
+    }
+
+    private static int clampedRow(int y, int height) {
+        return Math.clamp(y, 0, height - 1);
+    }
+
+    private static int clampedColumn(int x, int width) {
+        return Math.clamp(x, 0, width - 1);
+    }
+}
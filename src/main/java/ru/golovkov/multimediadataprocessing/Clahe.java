@@ -0,0 +1,145 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Адаптивная эквализация гистограммы с ограничением контраста (CLAHE).
+ * <p>
+ * Изображение делится на сетку плиток, гистограммы серого плиток строятся параллельно.
+ * Каждая гистограмма обрезается на уровне {@code clipLimit} средних значений столбца,
+ * обрезанное раздаётся поровну всем столбцам, и по ней строится таблица эквализации плитки.
+ * Новый серый пиксела — билинейная интерполяция таблиц четырёх ближайших центров плиток;
+ * веса и смещения таблиц считаются заранее для каждого столбца и строки, поэтому на пиксел
+ * приходятся четыре обращения к таблицам и целочисленная интерполяция. У края изображения
+ * используются таблицы крайних плиток.
+ * <p>
+ * Как и {@link ImageTransformer#createHistogramEqualization}, по умолчанию результат серый.
+ * В режиме только яркости ко всем каналам прибавляется изменение серого, поэтому разности
+ * каналов, то есть цветность, сохраняются.
+ */
+final class Clahe {
+
+    private static final int LEVELS = 256;
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private Clahe() {
+    }
+
+    static void apply(ImageWrapper imageWrapper, ImageWrapper result, int tileCount, double clipLimit,
+                      boolean lumaOnly, TileScheduler scheduler) {
+        if (tileCount < 1) {
+            throw new IllegalArgumentException("Число плиток должно быть положительным: " + tileCount);
+        }
+        if (!(clipLimit >= 1)) {
+            throw new IllegalArgumentException("Предел контраста должен быть не меньше 1: " + clipLimit);
+        }
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int tilesX = Math.min(tileCount, width);
+        int tilesY = Math.min(tileCount, height);
+        int[] source = imageWrapper.getPixels();
+        int[] target = result.getPixels();
+
+        int[] tables = new int[tilesX * tilesY * LEVELS];
+        scheduler.forEachChunk(tilesX * tilesY, 1, (from, to) -> {
+            int[] histogram = new int[LEVELS];
+            for (int tile = from; tile < to; tile++) {
+                int tileX = tile % tilesX;
+                int tileY = tile / tilesX;
+                int fromX = TileScheduler.partBoundary(tileX, width, tilesX);
+                int toX = TileScheduler.partBoundary(tileX + 1, width, tilesX);
+                int fromY = TileScheduler.partBoundary(tileY, height, tilesY);
+                int toY = TileScheduler.partBoundary(tileY + 1, height, tilesY);
+                Arrays.fill(histogram, 0);
+                for (int y = fromY; y < toY; y++) {
+                    for (int i = y * width + fromX; i < y * width + toX; i++) {
+                        histogram[ImageTransformer.gray(source[i])]++;
+                    }
+                }
+                buildTable(histogram, (toX - fromX) * (toY - fromY), clipLimit, tables, tile * LEVELS);
+            }
+        });
+
+        int[] leftOffsets = new int[width];
+        int[] rightOffsets = new int[width];
+        int[] rightWeights = new int[width];
+        for (int x = 0; x < width; x++) {
+            double position = (x + 0.5) * tilesX / width - 0.5;
+            int left = (int) Math.floor(position);
+            rightWeights[x] = (int) Math.round((position - left) * WEIGHT_ONE);
+            leftOffsets[x] = Math.clamp(left, 0, tilesX - 1) * LEVELS;
+            rightOffsets[x] = Math.clamp(left + 1, 0, tilesX - 1) * LEVELS;
+        }
+
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                double position = (y + 0.5) * tilesY / height - 0.5;
+                int top = (int) Math.floor(position);
+                int bottomWeight = (int) Math.round((position - top) * WEIGHT_ONE);
+                int topWeight = WEIGHT_ONE - bottomWeight;
+                int topRow = Math.clamp(top, 0, tilesY - 1) * tilesX * LEVELS;
+                int bottomRow = Math.clamp(top + 1, 0, tilesY - 1) * tilesX * LEVELS;
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int argb = source[offset + x];
+                    int gray = ImageTransformer.gray(argb);
+                    int left = leftOffsets[x] + gray;
+                    int right = rightOffsets[x] + gray;
+                    int rightWeight = rightWeights[x];
+                    int leftWeight = WEIGHT_ONE - rightWeight;
+                    int upper = tables[topRow + left] * leftWeight + tables[topRow + right] * rightWeight;
+                    int lower = tables[bottomRow + left] * leftWeight + tables[bottomRow + right] * rightWeight;
+                    int newGray = (upper * topWeight + lower * bottomWeight + (1 << (2 * WEIGHT_BITS - 1)))
+                            >> (2 * WEIGHT_BITS);
+                    target[offset + x] = lumaOnly
+                            ? shift(argb, newGray - gray)
+                            : ImageTransformer.argb(ImageTransformer.alpha(argb), newGray, newGray, newGray);
+                }
+            }
+        });
+    }
+
+    /**
+     * Обрезает гистограмму, раздаёт обрезанное по столбцам, как в OpenCV, и записывает
+     * таблицу эквализации с позиции {@code offset}.
+     */
+    private static void buildTable(int[] histogram, int area, double clipLimit, int[] tables, int offset) {
+        int limit = (int) Math.max(1, clipLimit * area / LEVELS);
+        int clipped = 0;
+        for (int i = 0; i < LEVELS; i++) {
+            if (histogram[i] > limit) {
+                clipped += histogram[i] - limit;
+                histogram[i] = limit;
+            }
+        }
+        int share = clipped / LEVELS;
+        int residual = clipped - share * LEVELS;
+        for (int i = 0; i < LEVELS; i++) {
+            histogram[i] += share;
+        }
+        if (residual > 0) {
+            int step = Math.max(LEVELS / residual, 1);
+            for (int i = 0; i < LEVELS && residual > 0; i += step, residual--) {
+                histogram[i]++;
+            }
+        }
+        long cumulative = 0;
+        for (int i = 0; i < LEVELS; i++) {
+            cumulative += histogram[i];
+            tables[offset + i] = (int) Math.min(255, (cumulative * 255 + area / 2) / area);
+        }
+    }
+
+    private static int shift(int argb, int delta) {
+        int red = ImageTransformer.red(argb) + delta;
+        int green = ImageTransformer.green(argb) + delta;
+        int blue = ImageTransformer.blue(argb) + delta;
+        if (((red | green | blue) & ~0xFF) != 0) {
+            red = Math.clamp(red, 0, 255);
+            green = Math.clamp(green, 0, 255);
+            blue = Math.clamp(blue, 0, 255);
+        }
+        return ImageTransformer.argb(ImageTransformer.alpha(argb), red, green, blue);
+    }
+}
@@ -0,0 +1,216 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Разметка связных компонент {@link BinaryImage} в два прохода по сериям пикселов.
+ * <p>
+ * Первый проход идёт параллельно по полосам строк: каждая строка упакованной маски
+ * разбирается на серии установленных битов поиском по словам, и серия объединяется в
+ * системе непересекающихся множеств с пересекающимися сериями предыдущей строки той же
+ * полосы (при 8-связности — и с касающимися по диагонали). Корень множества — серия
+ * с наименьшим номером, поэтому после сдвига номеров полосы склеиваются последовательным
+ * объединением серий на каждом шве. Второй проход нумерует компоненты в порядке первой
+ * серии, собирает статистику по сериям и параллельно заполняет плоскость меток. Всё время
+ * линейно по числу пикселов, а работа с множествами — по числу серий.
+ */
+final class ComponentLabeling {
+
+    private static final int BANDS_PER_WORKER = 4;
+
+    private ComponentLabeling() {
+    }
+
+    static ConnectedComponents apply(BinaryImage image, boolean eightConnected, TileScheduler scheduler) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int reach = eightConnected ? 1 : 0;
+        int bandCount = Math.min(height, scheduler.getParallelism() * BANDS_PER_WORKER);
+        Runs[] bands = new Runs[bandCount];
+        scheduler.forEachChunk(bandCount, 1, (from, to) -> {
+            for (int band = from; band < to; band++) {
+                bands[band] = Runs.of(image, TileScheduler.partBoundary(band, height, bandCount),
+                        TileScheduler.partBoundary(band + 1, height, bandCount), reach);
+            }
+        });
+
+        int[] offsets = new int[bandCount + 1];
+        for (int band = 0; band < bandCount; band++) {
+            offsets[band + 1] = offsets[band] + bands[band].size;
+        }
+        int runCount = offsets[bandCount];
+        int[] starts = new int[runCount];
+        int[] ends = new int[runCount];
+        int[] parents = new int[runCount];
+        int[] rowFirst = new int[height + 1];
+        rowFirst[height] = runCount;
+        scheduler.forEachChunk(bandCount, 1, (from, to) -> {
+            for (int band = from; band < to; band++) {
+                Runs runs = bands[band];
+                int offset = offsets[band];
+                System.arraycopy(runs.starts, 0, starts, offset, runs.size);
+                System.arraycopy(runs.ends, 0, ends, offset, runs.size);
+                for (int i = 0; i < runs.size; i++) {
+                    parents[offset + i] = runs.parents[i] + offset;
+                }
+                for (int y = runs.fromY; y < runs.toY; y++) {
+                    rowFirst[y] = runs.rowFirst[y - runs.fromY] + offset;
+                }
+            }
+        });
+        for (int band = 1; band < bandCount; band++) {
+            int y = bands[band].fromY;
+            connectRows(starts, ends, parents, rowFirst[y - 1], rowFirst[y], rowFirst[y + 1], reach);
+        }
+
+        int[] components = new int[runCount];
+        int count = 0;
+        for (int i = 0; i < runCount; i++) {
+            components[i] = parents[i] == i ? count++ : components[find(parents, i)];
+        }
+        int[] areas = new int[count];
+        int[] minX = new int[count];
+        int[] minY = new int[count];
+        int[] maxX = new int[count];
+        int[] maxY = new int[count];
+        long[] sumX = new long[count];
+        long[] sumY = new long[count];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        for (int y = 0; y < height; y++) {
+            for (int i = rowFirst[y]; i < rowFirst[y + 1]; i++) {
+                int component = components[i];
+                int length = ends[i] - starts[i];
+                areas[component] += length;
+                minX[component] = Math.min(minX[component], starts[i]);
+                maxX[component] = Math.max(maxX[component], ends[i] - 1);
+                minY[component] = Math.min(minY[component], y);
+                maxY[component] = y;
+                sumX[component] += (long) length * (starts[i] + ends[i] - 1) / 2;
+                sumY[component] += (long) length * y;
+            }
+        }
+
+        int[] labels = new int[width * height];
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int offset = y * width;
+                for (int i = rowFirst[y]; i < rowFirst[y + 1]; i++) {
+                    Arrays.fill(labels, offset + starts[i], offset + ends[i], components[i] + 1);
+                }
+            }
+        });
+        return new ConnectedComponents(width, height, labels, count, areas, minX, minY, maxX, maxY, sumX, sumY);
+    }
+
+    /**
+     * Объединяет серии строки [{@code from}, {@code to}) с сериями предыдущей строки
+     * [{@code previousFrom}, {@code from}), которые с ними пересекаются с учётом {@code reach}.
+     */
+    private static void connectRows(int[] starts, int[] ends, int[] parents, int previousFrom, int from, int to,
+                                    int reach) {
+        int first = previousFrom;
+        for (int i = from; i < to; i++) {
+            while (first < from && ends[first] + reach <= starts[i]) {
+                first++;
+            }
+            for (int j = first; j < from && starts[j] < ends[i] + reach; j++) {
+                union(parents, i, j);
+            }
+        }
+    }
+
+    private static int find(int[] parents, int run) {
+        while (parents[run] != run) {
+            parents[run] = parents[parents[run]];
+            run = parents[run];
+        }
+        return run;
+    }
+
+    private static void union(int[] parents, int first, int second) {
+        int firstRoot = find(parents, first);
+        int secondRoot = find(parents, second);
+        if (firstRoot < secondRoot) {
+            parents[secondRoot] = firstRoot;
+        } else if (secondRoot < firstRoot) {
+            parents[firstRoot] = secondRoot;
+        }
+    }
+
+    /**
+     * Серии полосы строк [{@code fromY}, {@code toY}) с локальной нумерацией и уже
+     * объединёнными внутри полосы множествами.
+     */
+    private static final class Runs {
+
+        private final int fromY;
+        private final int toY;
+        private final int[] rowFirst;
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int[] parents = new int[64];
+        private int size;
+
+        private Runs(int fromY, int toY) {
+            this.fromY = fromY;
+            this.toY = toY;
+            this.rowFirst = new int[toY - fromY + 1];
+        }
+
+        static Runs of(BinaryImage image, int fromY, int toY, int reach) {
+            Runs runs = new Runs(fromY, toY);
+            long[] words = image.words();
+            int wordsPerRow = image.getWordsPerRow();
+            int width = image.getWidth();
+            for (int y = fromY; y < toY; y++) {
+                int row = y * wordsPerRow;
+                runs.rowFirst[y - fromY] = runs.size;
+                int x = 0;
+                while (x < width) {
+                    int start = nextBit(words, row, wordsPerRow, x, false, width);
+                    if (start == width) {
+                        break;
+                    }
+                    x = nextBit(words, row, wordsPerRow, start, true, width);
+                    runs.add(start, x);
+                }
+                if (y > fromY) {
+                    connectRows(runs.starts, runs.ends, runs.parents, runs.rowFirst[y - fromY - 1],
+                            runs.rowFirst[y - fromY], runs.size, reach);
+                }
+            }
+            runs.rowFirst[toY - fromY] = runs.size;
+            return runs;
+        }
+
+        /**
+         * Первый пиксел строки начиная с {@code from}, который установлен (или, при
+         * {@code clear}, сброшен); {@code width}, если такого нет. Лишние биты в конце строки
+         * нулевые, поэтому сброшенный пиксел всегда находится не дальше {@code width}.
+         */
+        private static int nextBit(long[] words, int row, int wordsPerRow, int from, boolean clear, int width) {
+            int index = from >>> 6;
+            long word = (clear ? ~words[row + index] : words[row + index]) & (-1L << from);
+            while (word == 0) {
+                if (++index == wordsPerRow) {
+                    return width;
+                }
+                word = clear ? ~words[row + index] : words[row + index];
+            }
+            return Math.min(width, (index << 6) + Long.numberOfTrailingZeros(word));
+        }
+
+        private void add(int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            parents[size] = size;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ru.golovkov.multimediadataprocessing;
+
+/**
+ * Разметка связных компонент бинарного изображения: плоскость меток и статистика областей.
+ * <p>
+ * Метка фона — 0, компоненты пронумерованы от 1 до {@link #getCount()} в порядке первого
+ * пиксела при обходе по строкам. Статистика запрашивается по метке; рамка включает обе
+ * границы. Массив меток не копируется и не должен изменяться.
+ */
+public final class ConnectedComponents {
+
+    private final int width;
+    private final int height;
+    private final int[] labels;
+    private final int count;
+    private final int[] areas;
+    private final int[] minX;
+    private final int[] minY;
+    private final int[] maxX;
+    private final int[] maxY;
+    private final long[] sumX;
+    private final long[] sumY;
+
+    ConnectedComponents(int width, int height, int[] labels, int count, int[] areas, int[] minX, int[] minY,
+                        int[] maxX, int[] maxY, long[] sumX, long[] sumY) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.count = count;
+        this.areas = areas;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.sumX = sumX;
+        this.sumY = sumY;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Метки пикселов по строкам, {@code width * height} элементов.
+     */
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public int getLabel(int x, int y) {
+        return labels[y * width + x];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getArea(int label) {
+        return areas[index(label)];
+    }
+
+    public int getMinX(int label) {
+        return minX[index(label)];
+    }
+
+    public int getMinY(int label) {
+        return minY[index(label)];
+    }
+
+    public int getMaxX(int label) {
+        return maxX[index(label)];
+    }
+
+    public int getMaxY(int label) {
+        return maxY[index(label)];
+    }
+
+    public double getCentroidX(int label) {
+        int index = index(label);
+        return (double) sumX[index] / areas[index];
+    }
+
+    public double getCentroidY(int label) {
+        int index = index(label);
+        return (double) sumY[index] / areas[index];
+    }
+
+    private int index(int label) {
+        if (label < 1 || label > count) {
+            throw new IllegalArgumentException("Нет компоненты с меткой " + label + ", всего " + count);
+        }
+        return label - 1;
+    }
+}
@@ -0,0 +1,139 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Свёртка канала изображения с произвольным ядром.
+ * <p>
+ * Канал один раз переносится в целочисленную плоскость с полями по краям, заполненными
+ * согласно {@link BorderMode}, поэтому во внутреннем цикле нет проверок границ. Строки
+ * считаются полосами через {@link TileScheduler}; если модуль {@code jdk.incubator.vector}
+ * подключён, строка считается векторно, иначе — скалярным циклом с тем же результатом.
+ */
+final class Convolution {
+
+    static final boolean VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("ru.golovkov.multimediadataprocessing.scalarConvolution");
+
+    private Convolution() {
+    }
+
+    static Plane pad(ImageWrapper imageWrapper, IntUnaryOperator channel, BorderMode borderMode,
+                     TileScheduler scheduler, ConvolutionKernel... kernels) {
+        int padX = 0;
+        int padY = 0;
+        for (ConvolutionKernel kernel : kernels) {
+            padX = Math.max(padX, Math.max(kernel.getAnchorX(), kernel.getWidth() - 1 - kernel.getAnchorX()));
+            padY = Math.max(padY, Math.max(kernel.getAnchorY(), kernel.getHeight() - 1 - kernel.getAnchorY()));
+        }
+        return pad(imageWrapper, channel, padX, padY, borderMode, scheduler);
+    }
+
+    static Plane pad(ImageWrapper imageWrapper, IntUnaryOperator channel, int padX, int padY,
+                     BorderMode borderMode, TileScheduler scheduler) {
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        Plane plane = new Plane(width, height, padX, padY);
+        int[] data = plane.data;
+        int stride = plane.stride;
+        scheduler.forEachRowBand(height + 2 * padY, (fromY, toY) -> {
+            for (int py = fromY; py < toY; py++) {
+                int sourceY = borderMode.resolve(py - padY, height);
+                if (sourceY < 0) {
+                    continue;
+                }
+                int sourceRow = sourceY * width;
+                int row = py * stride;
+                for (int px = 0; px < padX; px++) {
+                    int sourceX = borderMode.resolve(px - padX, width);
+                    data[row + px] = sourceX < 0 ? 0 : channel.applyAsInt(source[sourceRow + sourceX]);
+                }
+                for (int x = 0; x < width; x++) {
+                    data[row + padX + x] = channel.applyAsInt(source[sourceRow + x]);
+                }
+                for (int px = padX + width; px < stride; px++) {
+                    int sourceX = borderMode.resolve(px - padX, width);
+                    data[row + px] = sourceX < 0 ? 0 : channel.applyAsInt(source[sourceRow + sourceX]);
+                }
+            }
+        });
+        return plane;
+    }
+
+    static int[] convolve(Plane plane, ConvolutionKernel kernel, TileScheduler scheduler) {
+        int width = plane.width;
+        int[] result = new int[width * plane.height];
+        scheduler.forEachRowBand(plane.height, (fromY, toY) -> {
+            int[] rowBases = new int[kernel.getHeight()];
+            for (int y = fromY; y < toY; y++) {
+                for (int ky = 0; ky < rowBases.length; ky++) {
+                    rowBases[ky] = plane.rowBase(y, ky, kernel);
+                }
+                convolveRow(plane.data, rowBases, width, kernel, result, y * width);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Строка свёртки шириной {@code width}: строка ядра ky читается из {@code data}, начиная
+     * с {@code rowBases[ky]} (уже с учётом якоря и полей).
+     */
+    static void convolveRow(int[] data, int[] rowBases, int width, ConvolutionKernel kernel, int[] result, int offset) {
+        if (VECTOR_API_AVAILABLE) {
+            VectorConvolution.convolveRow(data, rowBases, width, kernel, result, offset);
+        } else {
+            scalarConvolveRow(data, rowBases, width, kernel, result, offset);
+        }
+    }
+
+    static void scalarConvolveRow(int[] data, int[] rowBases, int width, ConvolutionKernel kernel, int[] result,
+                                  int offset) {
+        Arrays.fill(result, offset, offset + width, 0);
+        for (int ky = 0; ky < kernel.getHeight(); ky++) {
+            int rowBase = rowBases[ky];
+            for (int kx = 0; kx < kernel.getWidth(); kx++) {
+                int weight = kernel.getWeight(kx, ky);
+                if (weight == 0) {
+                    continue;
+                }
+                int base = rowBase + kx;
+                for (int x = 0; x < width; x++) {
+                    result[offset + x] += weight * data[base + x];
+                }
+            }
+        }
+        int shift = kernel.getShift();
+        if (shift > 0) {
+            int half = 1 << (shift - 1);
+            for (int x = 0; x < width; x++) {
+                result[offset + x] = (result[offset + x] + half) >> shift;
+            }
+        }
+    }
+
+    static final class Plane {
+
+        final int width;
+        final int height;
+        final int padX;
+        final int padY;
+        final int stride;
+        final int[] data;
+
+        Plane(int width, int height, int padX, int padY) {
+            this.width = width;
+            this.height = height;
+            this.padX = padX;
+            this.padY = padY;
+            this.stride = width + 2 * padX;
+            this.data = new int[stride * (height + 2 * padY)];
+        }
+
+        int rowBase(int y, int ky, ConvolutionKernel kernel) {
+            return (y + padY - kernel.getAnchorY() + ky) * stride + padX - kernel.getAnchorX();
+        }
+    }
+}
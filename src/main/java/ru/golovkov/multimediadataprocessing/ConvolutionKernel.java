@@ -0,0 +1,115 @@
+package ru.golovkov.multimediadataprocessing;
+
+/**
+ * Ядро свёртки с целыми весами. Дробные веса хранятся в фиксированной точке:
+ * сумма произведений сдвигается вправо на {@code shift} бит с округлением.
+ */
+public final class ConvolutionKernel {
+
+    private static final int FRACTION_BITS = 12;
+    private static final int MAX_INPUT = 3 * 255;
+
+    private final int width;
+    private final int height;
+    private final int anchorX;
+    private final int anchorY;
+    private final int[] weights;
+    private final int shift;
+
+    private ConvolutionKernel(int[] weights, int width, int height, int anchorX, int anchorY, int shift) {
+        if (anchorX < 0 || anchorX >= width || anchorY < 0 || anchorY >= height) {
+            throw new IllegalArgumentException("Центр ядра вне ядра: (" + anchorX + ", " + anchorY + ")");
+        }
+        long maxSum = 0;
+        for (int weight : weights) {
+            maxSum += (long) Math.abs(weight) * MAX_INPUT;
+        }
+        if (maxSum + (1L << shift) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Веса ядра слишком велики для 32-битного накопления");
+        }
+        this.weights = weights;
+        this.width = width;
+        this.height = height;
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.shift = shift;
+    }
+
+    public static ConvolutionKernel of(int[][] weights) {
+        int height = weights.length;
+        int width = rowLength(weights);
+        int[] flat = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(weights[y], 0, flat, y * width, width);
+        }
+        return new ConvolutionKernel(flat, width, height, (width - 1) / 2, (height - 1) / 2, 0);
+    }
+
+    public static ConvolutionKernel of(double[][] weights) {
+        int height = weights.length;
+        int width = rowLength(weights);
+        int[] flat = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                flat[y * width + x] = (int) Math.round(weights[y][x] * (1 << FRACTION_BITS));
+            }
+        }
+        return new ConvolutionKernel(flat, width, height, (width - 1) / 2, (height - 1) / 2, FRACTION_BITS);
+    }
+
+    public ConvolutionKernel withAnchor(int anchorX, int anchorY) {
+        return new ConvolutionKernel(weights, width, height, anchorX, anchorY, shift);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getAnchorX() {
+        return anchorX;
+    }
+
+    public int getAnchorY() {
+        return anchorY;
+    }
+
+    int getWeight(int x, int y) {
+        return weights[y * width + x];
+    }
+
+    int getShift() {
+        return shift;
+    }
+
+    private static int rowLength(int[][] rows) {
+        int[] lengths = new int[rows.length];
+        for (int y = 0; y < rows.length; y++) {
+            lengths[y] = rows[y].length;
+        }
+        return commonLength(lengths);
+    }
+
+    private static int rowLength(double[][] rows) {
+        int[] lengths = new int[rows.length];
+        for (int y = 0; y < rows.length; y++) {
+            lengths[y] = rows[y].length;
+        }
+        return commonLength(lengths);
+    }
+
+    private static int commonLength(int[] lengths) {
+        if (lengths.length == 0 || lengths[0] == 0) {
+            throw new IllegalArgumentException("Пустое ядро свёртки");
+        }
+        for (int length : lengths) {
+            if (length != lengths[0]) {
+                throw new IllegalArgumentException("Ядро свёртки должно быть прямоугольным");
+            }
+        }
+        return lengths[0];
+    }
+}
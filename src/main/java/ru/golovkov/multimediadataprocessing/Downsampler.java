@@ -0,0 +1,69 @@
+package ru.golovkov.multimediadataprocessing;
+
+/**
+ * Уменьшение изображения в целое число раз усреднением блоков factor x factor.
+ * <p>
+ * Блоки у правого и нижнего края могут быть неполными, тогда среднее берётся по реально
+ * попавшим в них пикселам. Все четыре канала, включая альфа, усредняются независимо.
+ */
+final class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Наименьший множитель, при котором изображение помещается в maxWidth x maxHeight.
+     */
+    static int factor(int width, int height, int maxWidth, int maxHeight) {
+        if (maxWidth < 1 || maxHeight < 1) {
+            throw new IllegalArgumentException("Размер уменьшенного изображения должен быть положительным");
+        }
+        return Math.max(1, Math.max(Math.ceilDiv(width, maxWidth), Math.ceilDiv(height, maxHeight)));
+    }
+
+    static ImageWrapper apply(ImageWrapper imageWrapper, int factor, TileScheduler scheduler) {
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        int resultWidth = Math.ceilDiv(width, factor);
+        int resultHeight = Math.ceilDiv(height, factor);
+        ImageWrapper result = new ImageWrapper(resultWidth, resultHeight);
+        int[] target = result.getPixels();
+
+        scheduler.forEachRowBand(resultHeight, (fromY, toY) -> {
+            int[] alpha = new int[resultWidth];
+            int[] red = new int[resultWidth];
+            int[] green = new int[resultWidth];
+            int[] blue = new int[resultWidth];
+            for (int y = fromY; y < toY; y++) {
+                int fromSourceY = y * factor;
+                int toSourceY = Math.min(height, fromSourceY + factor);
+                for (int sourceY = fromSourceY; sourceY < toSourceY; sourceY++) {
+                    int offset = sourceY * width;
+                    for (int x = 0; x < resultWidth; x++) {
+                        int toSourceX = Math.min(width, (x + 1) * factor);
+                        for (int sourceX = x * factor; sourceX < toSourceX; sourceX++) {
+                            int argb = source[offset + sourceX];
+                            alpha[x] += argb >>> 24;
+                            red[x] += (argb >> 16) & 0xFF;
+                            green[x] += (argb >> 8) & 0xFF;
+                            blue[x] += argb & 0xFF;
+                        }
+                    }
+                }
+                int rows = toSourceY - fromSourceY;
+                for (int x = 0; x < resultWidth; x++) {
+                    int count = rows * (Math.min(width, (x + 1) * factor) - x * factor);
+                    int half = count / 2;
+                    target[y * resultWidth + x] = ImageTransformer.argb((alpha[x] + half) / count,
+                            (red[x] + half) / count, (green[x] + half) / count, (blue[x] + half) / count);
+                    alpha[x] = 0;
+                    red[x] = 0;
+                    green[x] = 0;
+                    blue[x] = 0;
+                }
+            }
+        });
+        return result;
+    }
+}
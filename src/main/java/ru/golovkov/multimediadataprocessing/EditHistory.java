@@ -0,0 +1,384 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * История правок изображения для отмены и повтора с ограниченным расходом памяти.
+ * <p>
+ * Версия хранится как сетка неизменяемых плиток {@value #TILE_SIZE}x{@value #TILE_SIZE}.
+ * При добавлении версии плитка, совпадающая с плиткой предыдущей версии, не копируется,
+ * а используется повторно, поэтому локальная правка стоит только изменённых плиток.
+ * Плитки, нужные лишь версиям дальше соседних с текущей, по желанию сжимаются. Пока
+ * уникальные плитки всех версий не помещаются в бюджет, выбрасываются самые старые версии
+ * (текущая — никогда).
+ * <p>
+ * {@link #push} только запоминает изображение: разбиение на плитки, сжатие холодных плиток
+ * и соблюдение бюджета выполняются по порядку в отдельном фоновом потоке, а пока версия не
+ * разбита, она хранится целиком. Переход по истории ничего не пересчитывает и не сжимает:
+ * {@link #undo} и {@link #redo} только переставляют текущую версию, а изображение собирает
+ * из плиток {@link Version#toImageWrapper()} вне блокировки истории, обычно в фоновом потоке.
+ * Если собранное ранее ещё не собрано сборщиком мусора и не менялось, возвращается оно само.
+ */
+public class EditHistory {
+
+    static final int TILE_SIZE = 256;
+
+    private final long memoryBudget;
+    private final boolean compressColdSnapshots;
+    private final TileScheduler scheduler;
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "edit-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Snapshot> snapshots = new ArrayList<>();
+    private int current = -1;
+    private long memoryUsage;
+
+    public EditHistory(long memoryBudget, boolean compressColdSnapshots, TileScheduler scheduler) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Бюджет памяти должен быть положительным: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+        this.compressColdSnapshots = compressColdSnapshots;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Добавляет новую текущую версию; версии, отменённые до этого, пропадают.
+     */
+    public synchronized void push(ImageWrapper imageWrapper) {
+        Snapshot previous = current >= 0 ? snapshots.get(current) : null;
+        snapshots.subList(current + 1, snapshots.size()).clear();
+        Snapshot snapshot = new Snapshot(imageWrapper);
+        snapshots.add(snapshot);
+        current = snapshots.size() - 1;
+        maintenance.execute(() -> maintain(snapshot, previous));
+    }
+
+    public synchronized void clear() {
+        snapshots.clear();
+        current = -1;
+        memoryUsage = 0;
+    }
+
+    public synchronized boolean canUndo() {
+        return current > 0;
+    }
+
+    public synchronized boolean canRedo() {
+        return current >= 0 && current < snapshots.size() - 1;
+    }
+
+    public synchronized Version undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Нечего отменять");
+        }
+        current--;
+        return new Version(snapshots.get(current));
+    }
+
+    public synchronized Version redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Нечего повторять");
+        }
+        current++;
+        return new Version(snapshots.get(current));
+    }
+
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * Байты, занятые уникальными плитками всех версий (и ещё не разбитыми версиями целиком)
+     * по последнему фоновому замеру.
+     */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * Фоновая работа после {@link #push}. Задачи выполняются по одной в порядке добавления,
+     * поэтому предыдущая версия к этому моменту уже разбита на плитки. Тяжёлая работа идёт
+     * без блокировки истории, под ней — только выбор плиток и обрезка списка версий.
+     */
+    private void maintain(Snapshot snapshot, Snapshot previous) {
+        snapshot.split(previous, scheduler);
+        if (compressColdSnapshots) {
+            compressColdTiles();
+        }
+        enforceBudget();
+    }
+
+    /**
+     * Пока какая-то версия ждёт разбиения, она учитывается целиком, и бюджет только
+     * замеряется: версии выбрасываются задачей последней из них, когда все разбиты.
+     */
+    private synchronized void enforceBudget() {
+        memoryUsage = measure();
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.tiles == null) {
+                return;
+            }
+        }
+        while (memoryUsage > memoryBudget && current > 0) {
+            snapshots.removeFirst();
+            current--;
+            memoryUsage = measure();
+        }
+    }
+
+    private void compressColdTiles() {
+        Tile[] tiles = selectColdTiles();
+        scheduler.forEachChunk(tiles.length, 1, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                tiles[i].compress();
+            }
+        });
+    }
+
+    private synchronized Tile[] selectColdTiles() {
+        Set<Tile> hot = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = Math.max(0, current - 1); i <= Math.min(snapshots.size() - 1, current + 1); i++) {
+            Tile[] tiles = snapshots.get(i).tiles;
+            if (tiles != null) {
+                hot.addAll(Arrays.asList(tiles));
+            }
+        }
+        Set<Tile> cold = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Snapshot snapshot : snapshots) {
+            Tile[] tiles = snapshot.tiles;
+            if (tiles == null) {
+                continue;
+            }
+            for (Tile tile : tiles) {
+                if (!hot.contains(tile) && !tile.isCompressed()) {
+                    cold.add(tile);
+                }
+            }
+        }
+        return cold.toArray(Tile[]::new);
+    }
+
+    private long measure() {
+        Set<Tile> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 0;
+        for (Snapshot snapshot : snapshots) {
+            Tile[] tiles = snapshot.tiles;
+            if (tiles == null) {
+                bytes += 4L * snapshot.width * snapshot.height;
+                continue;
+            }
+            for (Tile tile : tiles) {
+                if (counted.add(tile)) {
+                    bytes += tile.bytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Версия, ставшая текущей после {@link #undo} или {@link #redo}. Сборка изображения из
+     * плиток (и распаковка сжатых) занимает время, поэтому {@link #toImageWrapper()} стоит
+     * вызывать не в потоке интерфейса.
+     */
+    public final class Version {
+
+        private final Snapshot snapshot;
+
+        private Version(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public ImageWrapper toImageWrapper() {
+            return snapshot.toImageWrapper(scheduler);
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final int width;
+        private final int height;
+        private final int columns;
+        private volatile Tile[] tiles;
+        private volatile ImageWrapper whole;
+        private SoftReference<ImageWrapper> materialized;
+        private long materializedVersion;
+
+        Snapshot(ImageWrapper imageWrapper) {
+            this.width = imageWrapper.getWidth();
+            this.height = imageWrapper.getHeight();
+            this.columns = Math.ceilDiv(width, TILE_SIZE);
+            this.whole = imageWrapper;
+            remember(imageWrapper);
+        }
+
+        /**
+         * Разбивает версию на плитки, беря у предыдущей совпадающие, и отпускает изображение.
+         */
+        void split(Snapshot previous, TileScheduler scheduler) {
+            ImageWrapper imageWrapper = whole;
+            Tile[] tiles = new Tile[columns * Math.ceilDiv(height, TILE_SIZE)];
+            Tile[] previousTiles = previous != null && previous.width == width && previous.height == height
+                    ? previous.tiles : null;
+            int[] pixels = imageWrapper.getPixels();
+            scheduler.forEachChunk(tiles.length, 1, (from, to) -> {
+                for (int index = from; index < to; index++) {
+                    Tile tile = previousTiles != null ? previousTiles[index] : null;
+                    if (tile == null || !tile.matches(pixels, width)) {
+                        tile = Tile.copyOf(pixels, width, height, index % columns * TILE_SIZE, index / columns * TILE_SIZE);
+                    }
+                    tiles[index] = tile;
+                }
+            });
+            this.tiles = tiles;
+            whole = null;
+        }
+
+        synchronized ImageWrapper toImageWrapper(TileScheduler scheduler) {
+            ImageWrapper unsplit = whole;
+            if (unsplit != null) {
+                return unsplit;
+            }
+            ImageWrapper cached = materialized.get();
+            if (cached != null && cached.getVersion() == materializedVersion) {
+                return cached;
+            }
+            ImageWrapper imageWrapper = new ImageWrapper(width, height);
+            int[] pixels = imageWrapper.getPixels();
+            scheduler.forEachChunk(tiles.length, 1, (from, to) -> {
+                for (int index = from; index < to; index++) {
+                    tiles[index].copyTo(pixels, width);
+                }
+            });
+            remember(imageWrapper);
+            return imageWrapper;
+        }
+
+        private void remember(ImageWrapper imageWrapper) {
+            materialized = new SoftReference<>(imageWrapper);
+            materializedVersion = imageWrapper.getVersion();
+        }
+    }
+
+    /**
+     * Неизменяемая плитка; её пикселы хранятся как есть или сжатыми.
+     */
+    private static final class Tile {
+
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private int[] pixels;
+        private byte[] compressed;
+
+        private Tile(int x, int y, int width, int height, int[] pixels) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+
+        static Tile copyOf(int[] source, int imageWidth, int imageHeight, int x, int y) {
+            int width = Math.min(TILE_SIZE, imageWidth - x);
+            int height = Math.min(TILE_SIZE, imageHeight - y);
+            int[] pixels = new int[width * height];
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(source, (y + row) * imageWidth + x, pixels, row * width, width);
+            }
+            return new Tile(x, y, width, height, pixels);
+        }
+
+        boolean matches(int[] source, int imageWidth) {
+            int[] own = pixels();
+            for (int row = 0; row < height; row++) {
+                int offset = (y + row) * imageWidth + x;
+                if (!Arrays.equals(own, row * width, (row + 1) * width, source, offset, offset + width)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void copyTo(int[] target, int imageWidth) {
+            int[] own = pixels();
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(own, row * width, target, (y + row) * imageWidth + x, width);
+            }
+        }
+
+        synchronized boolean isCompressed() {
+            return compressed != null;
+        }
+
+        synchronized long bytes() {
+            return compressed != null ? compressed.length : 4L * pixels.length;
+        }
+
+        synchronized void compress() {
+            if (compressed != null) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(4 * pixels.length);
+            buffer.asIntBuffer().put(pixels);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(buffer.array());
+                deflater.finish();
+                byte[] output = new byte[buffer.capacity() + 64];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+                compressed = Arrays.copyOf(output, length);
+                pixels = null;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /**
+         * Пикселы плитки; сжатая плитка распаковывается во временный массив и остаётся сжатой.
+         */
+        synchronized int[] pixels() {
+            if (compressed == null) {
+                return pixels;
+            }
+            byte[] bytes = new byte[4 * width * height];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int length = 0;
+                while (length < bytes.length && !inflater.finished()) {
+                    length += inflater.inflate(bytes, length, bytes.length - length);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Повреждена сжатая плитка истории", e);
+            } finally {
+                inflater.end();
+            }
+            int[] unpacked = new int[width * height];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(unpacked);
+            return unpacked;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.golovkov.multimediadataprocessing;
+
+/**
+ * Гистограммы изображения на 256 уровней: серого ((r + g + b) / 3), яркости (максимум
+ * из каналов, по ней работает метод Оцу) и отдельно красного, зелёного и синего каналов.
+ * Массивы не копируются и не должны изменяться. Счётчики длинные, потому что растр
+ * {@link TiledRaster} может содержать больше 2<sup>31</sup> пикселов.
+ */
+public final class Histogram {
+
+    public static final int LEVELS = 256;
+
+    private final long[] gray;
+    private final long[] brightness;
+    private final long[] red;
+    private final long[] green;
+    private final long[] blue;
+    private final long total;
+
+    Histogram(long[] gray, long[] brightness, long[] red, long[] green, long[] blue, long total) {
+        this.gray = gray;
+        this.brightness = brightness;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.total = total;
+    }
+
+    public long[] getGray() {
+        return gray;
+    }
+
+    public long[] getBrightness() {
+        return brightness;
+    }
+
+    public long[] getRed() {
+        return red;
+    }
+
+    public long[] getGreen() {
+        return green;
+    }
+
+    public long[] getBlue() {
+        return blue;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Гистограмма объединения непересекающихся частей изображения.
+     */
+    static Histogram sum(Iterable<Histogram> histograms) {
+        long[][] sums = new long[5][LEVELS];
+        long total = 0;
+        for (Histogram histogram : histograms) {
+            long[][] parts = {histogram.gray, histogram.brightness, histogram.red, histogram.green, histogram.blue};
+            for (int channel = 0; channel < sums.length; channel++) {
+                for (int level = 0; level < LEVELS; level++) {
+                    sums[channel][level] += parts[channel][level];
+                }
+            }
+            total += histogram.total;
+        }
+        return new Histogram(sums[0], sums[1], sums[2], sums[3], sums[4], total);
+    }
+}
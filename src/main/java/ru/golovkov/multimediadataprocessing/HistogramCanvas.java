@@ -0,0 +1,162 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.List;
+
+/**
+ * Гистограмма, нарисованная прямо на {@link Canvas} вместо сотен узлов {@code BarChart}.
+ * <p>
+ * Каналы серого, красного, зелёного и синего накладываются полупрозрачными ступенчатыми
+ * силуэтами; высота считается по максимуму видимых каналов, линейно или по логарифму.
+ * Холст перерисовывается только при смене {@link Histogram} (кэш {@link HistogramService}
+ * отдаёт тот же объект для неизменённого изображения) или настроек отображения.
+ */
+public final class HistogramCanvas extends Canvas {
+
+    private static final double MARGIN_LEFT = 60;
+    private static final double MARGIN_RIGHT = 10;
+    private static final double MARGIN_TOP = 30;
+    private static final double MARGIN_BOTTOM = 25;
+    private static final int[] LEVEL_TICKS = {0, 64, 128, 192, 255};
+
+    private final BooleanProperty grayVisible = new SimpleBooleanProperty(this, "grayVisible", true);
+    private final BooleanProperty redVisible = new SimpleBooleanProperty(this, "redVisible");
+    private final BooleanProperty greenVisible = new SimpleBooleanProperty(this, "greenVisible");
+    private final BooleanProperty blueVisible = new SimpleBooleanProperty(this, "blueVisible");
+    private final BooleanProperty logScale = new SimpleBooleanProperty(this, "logScale");
+
+    private String title = "";
+    private Histogram histogram;
+
+    public HistogramCanvas() {
+        for (BooleanProperty property : List.of(grayVisible, redVisible, greenVisible, blueVisible, logScale)) {
+            property.addListener((observable, oldValue, newValue) -> redraw());
+        }
+        widthProperty().addListener((observable, oldValue, newValue) -> redraw());
+        heightProperty().addListener((observable, oldValue, newValue) -> redraw());
+    }
+
+    public void setHistogram(Histogram histogram) {
+        if (histogram != this.histogram) {
+            this.histogram = histogram;
+            redraw();
+        }
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+        redraw();
+    }
+
+    public BooleanProperty grayVisibleProperty() {
+        return grayVisible;
+    }
+
+    public BooleanProperty redVisibleProperty() {
+        return redVisible;
+    }
+
+    public BooleanProperty greenVisibleProperty() {
+        return greenVisible;
+    }
+
+    public BooleanProperty blueVisibleProperty() {
+        return blueVisible;
+    }
+
+    public BooleanProperty logScaleProperty() {
+        return logScale;
+    }
+
+    private void redraw() {
+        GraphicsContext graphics = getGraphicsContext2D();
+        double width = getWidth();
+        double height = getHeight();
+        graphics.setFill(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setFill(Color.BLACK);
+        graphics.setTextAlign(TextAlignment.CENTER);
+        graphics.setTextBaseline(VPos.CENTER);
+        graphics.fillText(title, width / 2, MARGIN_TOP / 2);
+
+        double plotWidth = width - MARGIN_LEFT - MARGIN_RIGHT;
+        double plotHeight = height - MARGIN_TOP - MARGIN_BOTTOM;
+        if (plotWidth <= 0 || plotHeight <= 0) {
+            return;
+        }
+        double baseline = MARGIN_TOP + plotHeight;
+        graphics.setStroke(Color.GRAY);
+        graphics.setLineWidth(1);
+        graphics.strokeLine(MARGIN_LEFT, baseline, MARGIN_LEFT + plotWidth, baseline);
+        graphics.strokeLine(MARGIN_LEFT, MARGIN_TOP, MARGIN_LEFT, baseline);
+        graphics.setTextBaseline(VPos.TOP);
+        for (int level : LEVEL_TICKS) {
+            graphics.fillText(String.valueOf(level), MARGIN_LEFT + (level + 0.5) * plotWidth / Histogram.LEVELS,
+                    baseline + 4);
+        }
+        if (histogram == null) {
+            return;
+        }
+
+        List<Channel> channels = List.of(
+                new Channel(grayVisible.get(), histogram.getGray(), Color.gray(0.3, 0.45)),
+                new Channel(redVisible.get(), histogram.getRed(), Color.rgb(220, 40, 40, 0.35)),
+                new Channel(greenVisible.get(), histogram.getGreen(), Color.rgb(40, 170, 40, 0.35)),
+                new Channel(blueVisible.get(), histogram.getBlue(), Color.rgb(40, 80, 220, 0.35)));
+        long maximum = 0;
+        for (Channel channel : channels) {
+            if (channel.visible()) {
+                for (long count : channel.counts()) {
+                    maximum = Math.max(maximum, count);
+                }
+            }
+        }
+        graphics.setTextAlign(TextAlignment.RIGHT);
+        graphics.setTextBaseline(VPos.CENTER);
+        graphics.fillText(String.valueOf(maximum), MARGIN_LEFT - 4, MARGIN_TOP);
+        graphics.fillText("0", MARGIN_LEFT - 4, baseline);
+        if (maximum == 0) {
+            return;
+        }
+        boolean logarithmic = logScale.get();
+        double scale = plotHeight / (logarithmic ? Math.log1p(maximum) : maximum);
+        double step = plotWidth / Histogram.LEVELS;
+        for (Channel channel : channels) {
+            if (!channel.visible()) {
+                continue;
+            }
+            long[] counts = channel.counts();
+            graphics.beginPath();
+            graphics.moveTo(MARGIN_LEFT, baseline);
+            for (int level = 0; level < Histogram.LEVELS; level++) {
+                double y = baseline - scale * (logarithmic ? Math.log1p(counts[level]) : counts[level]);
+                graphics.lineTo(MARGIN_LEFT + level * step, y);
+                graphics.lineTo(MARGIN_LEFT + (level + 1) * step, y);
+            }
+            graphics.lineTo(MARGIN_LEFT + plotWidth, baseline);
+            graphics.closePath();
+            graphics.setFill(channel.color());
+            graphics.fill();
+            graphics.setStroke(channel.color().deriveColor(0, 1, 0.8, 1 / channel.color().getOpacity()));
+            graphics.stroke();
+        }
+    }
+
+    private record Channel(boolean visible, long[] counts, Color color) {
+    }
+}
@@ -0,0 +1,144 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Строит все гистограммы изображения за один параллельный проход и кэширует их.
+ * <p>
+ * Каждая полоса строк считает собственные гистограммы, которые складываются в общие
+ * по завершении полосы. Результат запоминается для изображения (по ссылке, без удержания
+ * его в памяти) и его {@link ImageWrapper#getVersion() версии}, поэтому график, эквализация
+ * и метод Оцу для одного и того же изображения используют одни данные.
+ */
+public class HistogramService {
+
+    private static final int CACHE_SIZE = 8;
+
+    private final TileScheduler scheduler;
+    private final List<Entry> cache = new ArrayList<>();
+
+    public HistogramService(TileScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Гистограммы изображения из кэша или посчитанные заново. Блокировка держится только на
+     * время поиска и вставки записи; подсчёт идёт вне её, поэтому вызов ждёт лишь подсчёта
+     * того же изображения той же версии, уже начатого другим потоком. Если тот подсчёт
+     * завершился ошибкой или отменой, гистограммы считаются заново в этом потоке.
+     */
+    public Histogram histogramOf(ImageWrapper imageWrapper) {
+        return histogramOf(imageWrapper, scheduler);
+    }
+
+    /**
+     * То же с подсчётом на {@code scheduler}, например связанном с {@link TaskMonitor}
+     * преобразования: тогда проход гистограммы виден в ходе операции и прерывается отменой.
+     */
+    Histogram histogramOf(ImageWrapper imageWrapper, TileScheduler scheduler) {
+        long version = imageWrapper.getVersion();
+        while (true) {
+            CompletableFuture<Histogram> computation = new CompletableFuture<>();
+            CompletableFuture<Histogram> histogram = findOrAdd(imageWrapper, version, computation);
+            if (histogram == computation) {
+                return compute(imageWrapper, scheduler, computation);
+            }
+            try {
+                return histogram.join();
+            } catch (CompletionException | CancellationException e) {
+                // Подсчёт в другом потоке не удался, его запись уже удалена.
+            }
+        }
+    }
+
+    private Histogram compute(ImageWrapper imageWrapper, TileScheduler scheduler,
+                              CompletableFuture<Histogram> computation) {
+        try {
+            Histogram histogram = compute(imageWrapper, scheduler);
+            computation.complete(histogram);
+            return histogram;
+        } catch (Throwable e) {
+            remove(computation);
+            computation.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Запись изображения и версии, поднятая в конец очереди, или, если её нет, новая запись
+     * с {@code computation}.
+     */
+    private synchronized CompletableFuture<Histogram> findOrAdd(ImageWrapper imageWrapper, long version,
+                                                                CompletableFuture<Histogram> computation) {
+        Iterator<Entry> iterator = cache.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            ImageWrapper cached = entry.image.get();
+            if (cached == null) {
+                iterator.remove();
+            } else if (cached == imageWrapper) {
+                iterator.remove();
+                if (entry.version == version) {
+                    cache.add(entry);
+                    return entry.histogram;
+                }
+            }
+        }
+        if (cache.size() == CACHE_SIZE) {
+            cache.remove(0);
+        }
+        cache.add(new Entry(new WeakReference<>(imageWrapper), version, computation));
+        return computation;
+    }
+
+    private synchronized void remove(CompletableFuture<Histogram> computation) {
+        cache.removeIf(entry -> entry.histogram == computation);
+    }
+
+    static Histogram compute(ImageWrapper imageWrapper, TileScheduler scheduler) {
+        int[] source = imageWrapper.getPixels();
+        int width = imageWrapper.getWidth();
+        long[][] merged = new long[5][Histogram.LEVELS];
+        scheduler.forEachRowBand(imageWrapper.getHeight(), (fromY, toY) -> {
+            int[] gray = new int[Histogram.LEVELS];
+            int[] brightness = new int[Histogram.LEVELS];
+            int[] red = new int[Histogram.LEVELS];
+            int[] green = new int[Histogram.LEVELS];
+            int[] blue = new int[Histogram.LEVELS];
+            for (int i = fromY * width; i < toY * width; i++) {
+                int argb = source[i];
+                int r = ImageTransformer.red(argb);
+                int g = ImageTransformer.green(argb);
+                int b = ImageTransformer.blue(argb);
+                gray[(r + g + b) / 3]++;
+                brightness[Math.max(r, Math.max(g, b))]++;
+                red[r]++;
+                green[g]++;
+                blue[b]++;
+            }
+            synchronized (merged) {
+                add(merged[0], gray);
+                add(merged[1], brightness);
+                add(merged[2], red);
+                add(merged[3], green);
+                add(merged[4], blue);
+            }
+        });
+        return new Histogram(merged[0], merged[1], merged[2], merged[3], merged[4], source.length);
+    }
+
+    private static void add(long[] target, int[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    private record Entry(WeakReference<ImageWrapper> image, long version, CompletableFuture<Histogram> histogram) {
+    }
+}
@@ -1,27 +1,49 @@
 package ru.golovkov.multimediadataprocessing;
 
+import javafx.animation.PauseTransition;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
-import javafx.scene.chart.BarChart;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.function.Function;
 
 public class ImageController implements Initializable {
 
+    /**
+     * Преобразования, которые при включённом предпросмотре пересчитываются на уменьшенной
+     * копии прямо во время движения ползунков.
+     */
+    private static final Set<String> PREVIEW_TRANSFORMATIONS = Set.of(
+            "Степенное преобразование",
+            "Вырезание диапазона яркостей",
+            "Вырезание диапазона яркостей 2",
+            "Пороговая обработка"
+    );
+    private static final int PREVIEW_SIZE = 1000;
+    private static final double PREVIEW_DELAY_MILLIS = 40;
+    private static final int HISTORY_MEMORY_SHARE = 4;
+    private static final int METRICS_CAPACITY = 500;
+    private static final int RESULT_CACHE_MEMORY_SHARE = 8;
+    private static final int CLAHE_TILE_COUNT = 8;
+    private static final double CLAHE_CLIP_LIMIT = 2.0;
+    private static final double MEAN_THRESHOLD_OFFSET = 10;
+    private static final double BRADLEY_SENSITIVITY = 0.15;
+    private static final double SAUVOLA_K = 0.34;
+
     @FXML
     private ImageView originalImageView;
 
@@ -32,10 +54,25 @@ public class ImageController implements Initializable {
     private ComboBox<String> transformationComboBox;
 
     @FXML
-    private BarChart<String, Number> originalHistogramChart;
+    private HistogramCanvas originalHistogramCanvas;
+
+    @FXML
+    private HistogramCanvas transformedHistogramCanvas;
+
+    @FXML
+    private CheckBox grayHistogramCheckBox;
+
+    @FXML
+    private CheckBox redHistogramCheckBox;
+
+    @FXML
+    private CheckBox greenHistogramCheckBox;
 
     @FXML
-    private BarChart<String, Number> transformedHistogramChart;
+    private CheckBox blueHistogramCheckBox;
+
+    @FXML
+    private CheckBox logScaleHistogramCheckBox;
 
     @FXML
     private Slider minBrightnessSlider;
@@ -46,24 +83,78 @@ public class ImageController implements Initializable {
     @FXML
     private Slider gammaSlider;
 
+    @FXML
+    private Slider radiusSlider;
+
+    @FXML
+    private ComboBox<String> structuringElementComboBox;
+
+    @FXML
+    private Slider structuringElementSizeSlider;
+
     @FXML
     private CheckBox maskColorCheckBox;
 
     @FXML
     private CheckBox replaceOriginalCheckBox;
 
+    @FXML
+    private CheckBox livePreviewCheckBox;
+
+    @FXML
+    private Button undoButton;
+
+    @FXML
+    private Button redoButton;
+
+    @FXML
+    private ProgressBar transformationProgressBar;
+
+    @FXML
+    private Label transformationStatusLabel;
+
+    @FXML
+    private Button cancelTransformationButton;
+
     private ImageTransformer imageTransformer;
 
-    private Image originalImage;
+    private Task<?> currentTask;
+    private Task<ImageLoadTask.Result> originalPyramidTask;
+
+    private ImageWrapper previewSourceWrapper;
+
+    private EditHistory editHistory;
+
+    private OperationMetrics metrics;
+
+    private MetricsWindow metricsWindow;
+
+    private ResultCache resultCache;
+
+    /**
+     * Сколько проходов сделало преобразование в прошлый раз: оценка хода для следующего запуска.
+     */
+    private final Map<String, Integer> passCounts = new HashMap<>();
+
+    private final PauseTransition previewDelay = new PauseTransition(Duration.millis(PREVIEW_DELAY_MILLIS));
+
+    private ImagePyramid originalPyramid;
 
     private ImageWrapper originalImageWrapper;
 
-    private Image transformedImage;
+    private ImagePyramid transformedPyramid;
+
+    private ImageWrapper transformedImageWrapper;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         makeAllSlidersInvisible();
         imageTransformer = new ImageTransformer();
+        editHistory = new EditHistory(Runtime.getRuntime().maxMemory() / HISTORY_MEMORY_SHARE, true,
+                imageTransformer.getScheduler());
+        metrics = new OperationMetrics(METRICS_CAPACITY);
+        metricsWindow = new MetricsWindow(metrics);
+        resultCache = new ResultCache(Runtime.getRuntime().maxMemory() / RESULT_CACHE_MEMORY_SHARE);
         transformationComboBox.getItems().addAll(
                 "Негатив",
                 "Степенное преобразование",
@@ -76,8 +167,13 @@ public class ImageController implements Initializable {
                 "Лапласиан 90",
                 "Лапласиан 45",
                 "Эквализация гистограммы",
+                "Адаптивная эквализация (CLAHE)",
+                "Адаптивная эквализация яркости (CLAHE)",
                 "Пороговая обработка",
                 "Метод Оцу",
+                "Адаптивный порог (среднее)",
+                "Адаптивный порог (Брэдли–Рот)",
+                "Адаптивный порог (Саувола)",
                 "Дилатация",
                 "Эрозия",
                 "Замыкание",
@@ -85,6 +181,45 @@ public class ImageController implements Initializable {
                 "Выделение границ",
                 "Остов"
         );
+        structuringElementComboBox.getItems().addAll(
+                "Квадрат",
+                "Горизонтальная линия",
+                "Вертикальная линия",
+                "Диагональ 45°",
+                "Диагональ 135°",
+                "Ромб",
+                "Диск"
+        );
+        structuringElementComboBox.setValue("Квадрат");
+        previewDelay.setOnFinished(event -> {
+            if (isPreviewSliderChanging()) {
+                renderPreview();
+            } else if (isPreviewActive()) {
+                handleApplyTransformation();
+            }
+        });
+        originalImageView.fitWidthProperty().addListener(observable -> showPyramid(originalImageView, originalPyramid));
+        originalImageView.fitHeightProperty().addListener(observable -> showPyramid(originalImageView, originalPyramid));
+        transformedImageView.fitWidthProperty()
+                .addListener(observable -> showPyramid(transformedImageView, transformedPyramid));
+        transformedImageView.fitHeightProperty()
+                .addListener(observable -> showPyramid(transformedImageView, transformedPyramid));
+        for (HistogramCanvas histogramCanvas : List.of(originalHistogramCanvas, transformedHistogramCanvas)) {
+            histogramCanvas.grayVisibleProperty().bind(grayHistogramCheckBox.selectedProperty());
+            histogramCanvas.redVisibleProperty().bind(redHistogramCheckBox.selectedProperty());
+            histogramCanvas.greenVisibleProperty().bind(greenHistogramCheckBox.selectedProperty());
+            histogramCanvas.blueVisibleProperty().bind(blueHistogramCheckBox.selectedProperty());
+            histogramCanvas.logScaleProperty().bind(logScaleHistogramCheckBox.selectedProperty());
+        }
+        for (Slider slider : previewSliders()) {
+            slider.valueProperty().addListener((observable, oldValue, newValue) -> schedulePreview());
+            slider.valueChangingProperty().addListener((observable, wasChanging, isChanging) -> {
+                if (!isChanging && isPreviewActive()) {
+                    previewDelay.stop();
+                    handleApplyTransformation();
+                }
+            });
+        }
     }
 
     @FXML
@@ -95,39 +230,270 @@ public class ImageController implements Initializable {
                 new FileChooser.ExtensionFilter("Изображения", "*.png", "*.jpg", "*.jpeg", "*.gif")
         );
         File selectedFile = fileChooser.showOpenDialog(new Stage());
-        if (selectedFile != null) {
-            originalImage = new Image(selectedFile.toURI().toString());
-            originalImageView.setImage(originalImage);
-            displayHistogram(originalImage, originalHistogramChart);
+        if (selectedFile == null) {
+            return;
         }
-        originalImageWrapper = new ImageWrapper(originalImage);
+        cancelCurrentTask();
+        ImageLoadTask task = new ImageLoadTask(selectedFile, PREVIEW_SIZE, imageTransformer, metrics,
+                originalImageView::setImage);
+        task.setOnSucceeded(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("");
+                ImageLoadTask.Result result = task.getValue();
+                cancelOriginalPyramidTask();
+                originalImageWrapper = result.imageWrapper();
+                originalPyramid = result.pyramid();
+                showPyramid(originalImageView, originalPyramid);
+                previewSourceWrapper = null;
+                editHistory.clear();
+                editHistory.push(originalImageWrapper);
+                updateHistoryButtons();
+                displayHistogram(originalImageWrapper, originalHistogramCanvas);
+            }
+        });
+        task.setOnFailed(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("Ошибка: " + task.getException().getMessage());
+                showPyramid(originalImageView, originalPyramid);
+            }
+        });
+        task.setOnCancelled(event -> {
+            if (!(currentTask instanceof ImageLoadTask)) {
+                showPyramid(originalImageView, originalPyramid);
+            }
+        });
+        startTask(task, "image-loading");
     }
 
     @FXML
     private void handleApplyTransformation() {
         makeAllSlidersInvisible();
-        if (originalImage == null) {
+        if (originalImageWrapper == null) {
             return;
         }
         String selectedTransformation = transformationComboBox.getValue();
         if (selectedTransformation == null) {
             return;
         }
-        applyTransformation(selectedTransformation);
-        transformedImageView.setImage(transformedImage);
-        displayHistogram(transformedImage, transformedHistogramChart);
+        cancelCurrentTask();
+        ImageWrapper source = originalImageWrapper;
+        String parameters = describeParameters(selectedTransformation);
+        Function<ImageTransformer, ImageWrapper> transformation = createTransformation(selectedTransformation, source);
+        TransformationTask.Result cached = resultCache.get(source, selectedTransformation, parameters);
+        if (cached != null) {
+            finishProgress("Из кэша (попаданий: " + resultCache.getHits()
+                    + ", промахов: " + resultCache.getMisses() + ")");
+            showTransformationResult(cached);
+            return;
+        }
+        TransformationTask task = new TransformationTask(imageTransformer, transformation, metrics,
+                selectedTransformation, parameters, source, passCounts.getOrDefault(selectedTransformation, 1));
+        task.setOnSucceeded(event -> {
+            passCounts.put(selectedTransformation, task.getPassCount());
+            resultCache.put(source, selectedTransformation, parameters, task.getValue());
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("");
+                showTransformationResult(task.getValue());
+            }
+        });
+        task.setOnFailed(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("Ошибка: " + task.getException().getMessage());
+            }
+        });
+        startTask(task, "image-transformation");
+    }
+
+    private void startTask(Task<?> task, String threadName) {
+        currentTask = task;
+        transformationProgressBar.progressProperty().bind(task.progressProperty());
+        transformationStatusLabel.textProperty().bind(task.messageProperty());
+        cancelTransformationButton.setDisable(false);
+        Thread thread = new Thread(task, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @FXML
+    private void handleCancelTransformation() {
+        cancelCurrentTask();
+    }
+
+    private void cancelCurrentTask() {
+        if (currentTask != null) {
+            currentTask.cancel();
+            currentTask = null;
+            finishProgress("Отменено");
+        }
+    }
+
+    private void finishProgress(String message) {
+        transformationProgressBar.progressProperty().unbind();
+        transformationStatusLabel.textProperty().unbind();
+        transformationProgressBar.setProgress(0);
+        transformationStatusLabel.setText(message);
+        cancelTransformationButton.setDisable(true);
+    }
+
+    private boolean isPreviewActive() {
+        return livePreviewCheckBox.isSelected() && originalImageWrapper != null
+                && PREVIEW_TRANSFORMATIONS.contains(transformationComboBox.getValue());
+    }
+
+    private List<Slider> previewSliders() {
+        return List.of(gammaSlider, minBrightnessSlider, maxBrightnessSlider);
+    }
+
+    /**
+     * Ползунок тянут мышью. Клавиатура и щелчок по дорожке меняют значение, не выставляя
+     * {@code valueChanging}, поэтому такое изменение сразу применяется к полному изображению.
+     */
+    private boolean isPreviewSliderChanging() {
+        for (Slider slider : previewSliders()) {
+            if (slider.isValueChanging()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void schedulePreview() {
+        if (isPreviewActive()) {
+            previewDelay.playFromStart();
+        }
+    }
+
+    /**
+     * Показывает результат на копии размером с окно просмотра; полное изображение и
+     * гистограммы пересчитываются, когда ползунок отпущен, изменён без перетаскивания
+     * или нажато «Применить».
+     */
+    private void renderPreview() {
+        if (!isPreviewActive()) {
+            return;
+        }
+        cancelCurrentTask();
+        if (previewSourceWrapper == null) {
+            previewSourceWrapper = imageTransformer.createDownsampled(originalImageWrapper, PREVIEW_SIZE, PREVIEW_SIZE);
+        }
+        String selectedTransformation = transformationComboBox.getValue();
+        ImageWrapper preview = metrics.measure(OperationMetrics.Phase.TRANSFORM,
+                selectedTransformation + " (предпросмотр)", describeParameters(selectedTransformation),
+                previewSourceWrapper.getWidth(), previewSourceWrapper.getHeight(),
+                () -> createTransformation(selectedTransformation, previewSourceWrapper).apply(imageTransformer));
+        transformedImageView.setImage(preview.toImage());
+        transformationStatusLabel.setText("Предпросмотр");
+    }
+
+    private void showTransformationResult(TransformationTask.Result result) {
+        transformedImageWrapper = result.imageWrapper();
+        transformedPyramid = result.pyramid();
+        showPyramid(transformedImageView, transformedPyramid);
+        displayHistogram(transformedImageWrapper, transformedHistogramCanvas);
 
         if (replaceOriginalCheckBox.isSelected()) {
-            originalImage = transformedImage;
-            originalImageView.setImage(originalImage);
-            displayHistogram(originalImage, originalHistogramChart);
-            originalImageWrapper = new ImageWrapper(originalImage);
+            cancelOriginalPyramidTask();
+            originalPyramid = transformedPyramid;
+            showPyramid(originalImageView, originalPyramid);
+            originalImageWrapper = transformedImageWrapper;
+            previewSourceWrapper = null;
+            editHistory.push(originalImageWrapper);
+            updateHistoryButtons();
+            displayHistogram(originalImageWrapper, originalHistogramCanvas);
+        }
+    }
+
+    @FXML
+    private void handleUndo() {
+        if (editHistory.canUndo()) {
+            showOriginal(editHistory.undo());
         }
     }
 
+    @FXML
+    private void handleRedo() {
+        if (editHistory.canRedo()) {
+            showOriginal(editHistory.redo());
+        }
+    }
+
+    /**
+     * Делает версию из истории исходной. Изображение собирается из плиток истории, а пирамида
+     * и гистограмма готовятся в фоне, как в {@link TransformationTask}; до этого показывается
+     * прежняя пирамида, а исходного изображения нет, так что операции к нему не применяются.
+     * Результат устаревшей задачи (после следующего шага по истории) отбрасывается.
+     */
+    private void showOriginal(EditHistory.Version version) {
+        cancelCurrentTask();
+        originalImageWrapper = null;
+        previewSourceWrapper = null;
+        updateHistoryButtons();
+        cancelOriginalPyramidTask();
+        TileScheduler scheduler = imageTransformer.getScheduler();
+        HistogramService histogramService = imageTransformer.getHistogramService();
+        Task<ImageLoadTask.Result> task = new Task<>() {
+            @Override
+            protected ImageLoadTask.Result call() {
+                ImageWrapper imageWrapper = version.toImageWrapper();
+                histogramService.histogramOf(imageWrapper);
+                return new ImageLoadTask.Result(imageWrapper, ImagePyramid.build(imageWrapper, scheduler));
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (task == originalPyramidTask) {
+                originalPyramidTask = null;
+                originalImageWrapper = task.getValue().imageWrapper();
+                originalPyramid = task.getValue().pyramid();
+                showPyramid(originalImageView, originalPyramid);
+                displayHistogram(originalImageWrapper, originalHistogramCanvas);
+            }
+        });
+        task.setOnFailed(event -> {
+            if (task == originalPyramidTask) {
+                originalPyramidTask = null;
+                if (!transformationStatusLabel.textProperty().isBound()) {
+                    transformationStatusLabel.setText("Ошибка: " + task.getException().getMessage());
+                }
+            }
+        });
+        originalPyramidTask = task;
+        Thread thread = new Thread(task, "original-pyramid");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void cancelOriginalPyramidTask() {
+        if (originalPyramidTask != null) {
+            originalPyramidTask.cancel();
+            originalPyramidTask = null;
+        }
+    }
+
+    /**
+     * Показывает уровень пирамиды, подходящий к размеру окна просмотра в физических пикселах.
+     */
+    private void showPyramid(ImageView imageView, ImagePyramid pyramid) {
+        if (pyramid == null) {
+            imageView.setImage(null);
+            return;
+        }
+        Window window = imageView.getScene() != null ? imageView.getScene().getWindow() : null;
+        double scale = window != null ? Math.max(window.getRenderScaleX(), window.getRenderScaleY()) : 1;
+        imageView.setImage(pyramid.imageFor(imageView.getFitWidth() * scale, imageView.getFitHeight() * scale));
+    }
+
+    private void updateHistoryButtons() {
+        undoButton.setDisable(!editHistory.canUndo());
+        redoButton.setDisable(!editHistory.canRedo());
+    }
+
     @FXML
     private void handleSaveImage() {
-        if (transformedImage == null) {
+        if (transformedImageWrapper == null) {
             return;
         }
         FileChooser fileChooser = new FileChooser();
@@ -139,15 +505,81 @@ public class ImageController implements Initializable {
                 new FileChooser.ExtensionFilter("GIF", "*.gif")
         );
         File selectedFile = fileChooser.showSaveDialog(new Stage());
-        if (selectedFile != null) {
-            try {
-                BufferedImage bufferedImage = convertToBufferedImage(transformedImage);
-                String formatName = getFormatName(selectedFile);
-                ImageIO.write(bufferedImage, formatName, selectedFile);
-            } catch (IOException e) {
-                e.printStackTrace();
+        if (selectedFile == null) {
+            return;
+        }
+        cancelCurrentTask();
+        ImageSaveTask task = new ImageSaveTask(transformedImageWrapper, selectedFile.toPath(),
+                getFormatName(selectedFile), imageTransformer.getScheduler(), metrics);
+        task.setOnSucceeded(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("Сохранено: " + selectedFile.getName());
+            }
+        });
+        task.setOnFailed(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("Ошибка сохранения: " + task.getException().getMessage());
+            }
+        });
+        startTask(task, "image-saving");
+    }
+
+    /**
+     * Считает объекты маски на результате (или на исходном изображении, пока результата нет)
+     * с 8-связностью; цвет маски берётся из флажка морфологии.
+     */
+    @FXML
+    private void handleCountComponents() {
+        ImageWrapper source = transformedImageWrapper != null ? transformedImageWrapper : originalImageWrapper;
+        if (source == null) {
+            return;
+        }
+        cancelCurrentTask();
+        boolean isMaskColorBlack = maskColorCheckBox.isSelected();
+        Task<ConnectedComponents> task = new Task<>() {
+            @Override
+            protected ConnectedComponents call() {
+                updateMessage("Разметка объектов");
+                return metrics.measure(OperationMetrics.Phase.TRANSFORM, "Связные компоненты",
+                        isMaskColorBlack ? "mask=black" : "mask=white", source.getWidth(), source.getHeight(),
+                        () -> imageTransformer.labelComponents(source, true, isMaskColorBlack));
             }
+        };
+        task.setOnSucceeded(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress(describeComponents(task.getValue()));
+            }
+        });
+        task.setOnFailed(event -> {
+            if (task == currentTask) {
+                currentTask = null;
+                finishProgress("Ошибка: " + task.getException().getMessage());
+            }
+        });
+        startTask(task, "component-labeling");
+    }
+
+    private static String describeComponents(ConnectedComponents components) {
+        int count = components.getCount();
+        if (count == 0) {
+            return "Объектов нет";
         }
+        long total = 0;
+        int largest = 0;
+        for (int label = 1; label <= count; label++) {
+            total += components.getArea(label);
+            largest = Math.max(largest, components.getArea(label));
+        }
+        return String.format(Locale.ROOT, "Объектов: %d, средняя площадь: %.1f, наибольшая: %d",
+                count, (double) total / count, largest);
+    }
+
+    @FXML
+    private void handleShowMetrics() {
+        metricsWindow.show();
     }
 
     private String getFormatName(File file) {
@@ -159,128 +591,148 @@ public class ImageController implements Initializable {
         return "png"; // Default format
     }
 
-    private BufferedImage convertToBufferedImage(Image image) {
-        int width = (int) image.getWidth();
-        int height = (int) image.getHeight();
-        WritableImage writableImage = new WritableImage(width, height);
-        PixelReader pixelReader = image.getPixelReader();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = pixelReader.getColor(x, y);
-                writableImage.getPixelWriter().setColor(x, y, color);
-            }
-        }
-        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = writableImage.getPixelReader().getColor(x, y);
-                int r = (int) (color.getRed() * 255);
-                int g = (int) (color.getGreen() * 255);
-                int b = (int) (color.getBlue() * 255);
-                int a = (int) (color.getOpacity() * 255);
-                int rgba = (a << 24) | (r << 16) | (g << 8) | b;
-                bufferedImage.setRGB(x, y, rgba);
-            }
-        }
-        return bufferedImage;
-    }
-
-    private void applyTransformation(String selectedTransformation) {
-        int[][] structuringElement = {{1, 1, 1}, {1, 1, 1}, {1, 1, 1}};
+    /**
+     * Читает параметры из элементов управления в потоке JavaFX и возвращает преобразование
+     * source, которое можно выполнить в любом потоке.
+     */
+    private Function<ImageTransformer, ImageWrapper> createTransformation(String selectedTransformation,
+                                                                          ImageWrapper source) {
+        StructuringElement structuringElement = createStructuringElement();
         boolean isMaskColorBlack = maskColorCheckBox.isSelected();
+        double gamma = gammaSlider.getValue();
+        int minBrightness = (int) minBrightnessSlider.getValue();
+        int maxBrightness = (int) maxBrightnessSlider.getValue();
+        int radius = (int) radiusSlider.getValue();
 
-        switch (selectedTransformation) {
-            case "Негатив" -> transformedImage = imageTransformer.createNegativeImage(originalImageWrapper);
+        return switch (selectedTransformation) {
+            case "Негатив" -> transformer -> transformer.createNegativeImage(source);
             case "Степенное преобразование" -> {
                 makeControlsVisible(gammaSlider);
-                transformedImage = imageTransformer.createPowerLawTransformation(originalImageWrapper, gammaSlider.getValue());
+                yield transformer -> transformer.createPowerLawTransformation(source, gamma);
             }
             case "Вырезание диапазона яркостей" -> {
                 makeControlsVisible(minBrightnessSlider, maxBrightnessSlider);
-                transformedImage = imageTransformer.createBrightnessRangeCut(originalImageWrapper,
-                        (int) minBrightnessSlider.getValue(), (int) maxBrightnessSlider.getValue());
+                yield transformer -> transformer.createBrightnessRangeCut(source,
+                        minBrightness, maxBrightness);
             }
             case "Вырезание диапазона яркостей 2" -> {
                 makeControlsVisible(minBrightnessSlider, maxBrightnessSlider);
-                transformedImage = imageTransformer.createBrightnessRangeCut2(originalImageWrapper,
-                        (int) minBrightnessSlider.getValue(), (int) maxBrightnessSlider.getValue());
+                yield transformer -> transformer.createBrightnessRangeCut2(source,
+                        minBrightness, maxBrightness);
+            }
+            case "Линейный сглаживающий (усредняющий) фильтр" -> {
+                makeControlsVisible(radiusSlider);
+                yield transformer -> transformer.createAverageFilter(source, radius);
+            }
+            case "Медианный фильтр" -> {
+                makeControlsVisible(radiusSlider);
+                yield transformer -> transformer.createMedianFilter(source, radius);
             }
-            case "Линейный сглаживающий (усредняющий) фильтр" ->
-                    transformedImage = imageTransformer.createAverageFilter(originalImageWrapper);
-            case "Медианный фильтр" -> transformedImage = imageTransformer.createMedianFilter(originalImageWrapper);
-            case "Градиент Робертса" ->
-                    transformedImage = imageTransformer.createRobertsGradient(originalImageWrapper);
-            case "Градиент Собеля" -> transformedImage = imageTransformer.createSobelGradient(originalImageWrapper);
-            case "Лапласиан 90" -> transformedImage = imageTransformer.createLaplacian90(originalImageWrapper);
-            case "Лапласиан 45" -> transformedImage = imageTransformer.createLaplacian45(originalImageWrapper);
-            case "Эквализация гистограммы" -> transformedImage = imageTransformer.createHistogramEqualization(originalImageWrapper);
+            case "Градиент Робертса" -> transformer -> transformer.createRobertsGradient(source);
+            case "Градиент Собеля" -> transformer -> transformer.createSobelGradient(source);
+            case "Лапласиан 90" -> transformer -> transformer.createLaplacian90(source);
+            case "Лапласиан 45" -> transformer -> transformer.createLaplacian45(source);
+            case "Эквализация гистограммы" -> transformer -> transformer.createHistogramEqualization(source);
+            case "Адаптивная эквализация (CLAHE)" -> transformer ->
+                    transformer.createAdaptiveHistogramEqualization(source, CLAHE_TILE_COUNT, CLAHE_CLIP_LIMIT, false);
+            case "Адаптивная эквализация яркости (CLAHE)" -> transformer ->
+                    transformer.createAdaptiveHistogramEqualization(source, CLAHE_TILE_COUNT, CLAHE_CLIP_LIMIT, true);
             case "Пороговая обработка" -> {
                 makeControlsVisible(minBrightnessSlider);
-                transformedImage = imageTransformer.applyThreshold(originalImageWrapper, (int) minBrightnessSlider.getValue());
+                yield transformer -> transformer.applyThreshold(source, minBrightness);
+            }
+            case "Метод Оцу" -> transformer -> transformer.applyOtsuThreshold(source);
+            case "Адаптивный порог (среднее)" -> {
+                makeControlsVisible(radiusSlider);
+                yield transformer -> transformer.applyMeanThreshold(source, radius, MEAN_THRESHOLD_OFFSET);
+            }
+            case "Адаптивный порог (Брэдли–Рот)" -> {
+                makeControlsVisible(radiusSlider);
+                yield transformer -> transformer.applyBradleyThreshold(source, radius, BRADLEY_SENSITIVITY);
+            }
+            case "Адаптивный порог (Саувола)" -> {
+                makeControlsVisible(radiusSlider);
+                yield transformer -> transformer.applySauvolaThreshold(source, radius, SAUVOLA_K);
             }
-            case "Метод Оцу" -> transformedImage = imageTransformer.applyOtsuThreshold(originalImageWrapper);
             case "Дилатация" -> {
-                makeControlsVisible(maskColorCheckBox);
-                transformedImage = imageTransformer.dilate(originalImageWrapper, structuringElement, isMaskColorBlack);
+                makeControlsVisible(maskColorCheckBox, structuringElementComboBox, structuringElementSizeSlider);
+                yield transformer -> transformer.dilate(source, structuringElement, isMaskColorBlack);
             }
             case "Эрозия" -> {
-                makeControlsVisible(maskColorCheckBox);
-                transformedImage = imageTransformer.erode(originalImageWrapper, structuringElement, isMaskColorBlack);
+                makeControlsVisible(maskColorCheckBox, structuringElementComboBox, structuringElementSizeSlider);
+                yield transformer -> transformer.erode(source, structuringElement, isMaskColorBlack);
             }
             case "Замыкание" -> {
-                makeControlsVisible(maskColorCheckBox);
-                transformedImage = imageTransformer.close(originalImageWrapper, structuringElement, isMaskColorBlack);
+                makeControlsVisible(maskColorCheckBox, structuringElementComboBox, structuringElementSizeSlider);
+                yield transformer -> transformer.close(source, structuringElement, isMaskColorBlack);
             }
             case "Размыкание" -> {
-                makeControlsVisible(maskColorCheckBox);
-                transformedImage = imageTransformer.open(originalImageWrapper, structuringElement, isMaskColorBlack);
+                makeControlsVisible(maskColorCheckBox, structuringElementComboBox, structuringElementSizeSlider);
+                yield transformer -> transformer.open(source, structuringElement, isMaskColorBlack);
             }
             case "Выделение границ" -> {
-                makeControlsVisible(maskColorCheckBox);
-                transformedImage = imageTransformer.boundaryExtraction(originalImageWrapper, structuringElement, isMaskColorBlack);
+                makeControlsVisible(maskColorCheckBox, structuringElementComboBox, structuringElementSizeSlider);
+                yield transformer -> transformer.boundaryExtraction(source, structuringElement, isMaskColorBlack);
             }
             case "Остов" -> {
                 makeControlsVisible(maskColorCheckBox);
-                transformedImage = imageTransformer.skeletonize(originalImageWrapper, isMaskColorBlack);
+                yield transformer -> transformer.skeletonize(source, isMaskColorBlack);
             }
             default -> throw new IllegalArgumentException("Ничего не выбрано");
-        }
+        };
     }
 
-    private void displayHistogram(Image image, BarChart<String, Number> histogramChart) {
-        ImageWrapper imageWrapper = new ImageWrapper(image);
-        int[] histogram = gatherHistogramData(imageWrapper);
-        int[] extendedHistogram = new int[300];
-        System.arraycopy(histogram, 0, extendedHistogram, 0, 256);
-        XYChart.Series<String, Number> series = new XYChart.Series<>();
-        for (int i = 0; i < extendedHistogram.length; i++) {
-            series.getData().add(new XYChart.Data<>(String.valueOf(i), extendedHistogram[i]));
-        }
-        histogramChart.getData().clear();
-        histogramChart.getData().add(series);
+    /**
+     * Параметры преобразования в том виде, в каком они попадают в замеры.
+     */
+    private String describeParameters(String selectedTransformation) {
+        String mask = maskColorCheckBox.isSelected() ? "mask=black" : "mask=white";
+        return switch (selectedTransformation) {
+            case "Степенное преобразование" -> String.format(Locale.ROOT, "gamma=%.2f", gammaSlider.getValue());
+            case "Вырезание диапазона яркостей", "Вырезание диапазона яркостей 2" ->
+                    "min=" + (int) minBrightnessSlider.getValue() + ", max=" + (int) maxBrightnessSlider.getValue();
+            case "Линейный сглаживающий (усредняющий) фильтр", "Медианный фильтр", "Адаптивный порог (среднее)",
+                 "Адаптивный порог (Брэдли–Рот)", "Адаптивный порог (Саувола)" ->
+                    "radius=" + (int) radiusSlider.getValue();
+            case "Пороговая обработка" -> "threshold=" + (int) minBrightnessSlider.getValue();
+            case "Дилатация", "Эрозия", "Замыкание", "Размыкание", "Выделение границ" ->
+                    "element=" + structuringElementComboBox.getValue()
+                            + ", size=" + (int) structuringElementSizeSlider.getValue() + ", " + mask;
+            case "Остов" -> mask;
+            default -> "";
+        };
     }
 
-    private int[] gatherHistogramData(ImageWrapper imageWrapper) {
-        int[] histogram = new int[256];
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = color.getRed() * 255;
-                double green = color.getGreen() * 255;
-                double blue = color.getBlue() * 255;
-                int gray = (int) ((red + green + blue) / 3);
-                histogram[gray]++;
-            }
-        }
-        return histogram;
+    private StructuringElement createStructuringElement() {
+        int size = (int) structuringElementSizeSlider.getValue();
+        return switch (structuringElementComboBox.getValue()) {
+            case "Горизонтальная линия" -> StructuringElement.line(size, 0);
+            case "Вертикальная линия" -> StructuringElement.line(size, 90);
+            case "Диагональ 45°" -> StructuringElement.line(size, 45);
+            case "Диагональ 135°" -> StructuringElement.line(size, 135);
+            case "Ромб" -> StructuringElement.diamond(size / 2);
+            case "Диск" -> StructuringElement.disc(size / 2);
+            default -> StructuringElement.rectangle(size, size);
+        };
+    }
+
+    private void displayHistogram(ImageWrapper imageWrapper, HistogramCanvas histogramCanvas) {
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        Histogram histogram = metrics.measure(OperationMetrics.Phase.HISTOGRAM, histogramCanvas.getTitle(), "",
+                width, height, () -> imageTransformer.getHistogramService().histogramOf(imageWrapper));
+        metrics.run(OperationMetrics.Phase.CHART, histogramCanvas.getTitle(), "", width, height,
+                () -> histogramCanvas.setHistogram(histogram));
     }
 
     private void makeAllSlidersInvisible() {
         gammaSlider.setVisible(false);
+        radiusSlider.setVisible(false);
         minBrightnessSlider.setVisible(false);
         maxBrightnessSlider.setVisible(false);
         maskColorCheckBox.setVisible(false);
+        structuringElementComboBox.setVisible(false);
+        structuringElementSizeSlider.setVisible(false);
     }
 
     private void makeControlsVisible(Control... controls) {
@@ -0,0 +1,79 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Чтение файла в {@link ImageWrapper} теми же декодерами, что и {@link TiledRaster#read}.
+ * <p>
+ * PNG без чересстрочной развёртки декодирует {@link PngDecoder}, остальное — ImageIO.
+ * Серые растры ImageIO переводятся в ARGB по самим отсчётам (серый v даёт v, v, v), как
+ * в {@link PngDecoder} и JavaFX: {@link BufferedImage#getRGB} считает серое пространство
+ * линейным и осветляет изображение. Поэтому обработка в памяти и по плиткам получает
+ * одни и те же пикселы.
+ */
+final class ImageDecoder {
+
+    private ImageDecoder() {
+    }
+
+    static ImageWrapper read(Path file) throws IOException {
+        if (PngDecoder.isPng(file)) {
+            try (PngDecoder decoder = PngDecoder.open(file)) {
+                if (!decoder.isInterlaced()) {
+                    ImageWrapper imageWrapper = new ImageWrapper(decoder.getWidth(), decoder.getHeight());
+                    decoder.readRows(imageWrapper.getPixels(), decoder.getHeight());
+                    return imageWrapper;
+                }
+            }
+        }
+        BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) {
+            throw new IOException("Формат не поддерживается: " + file);
+        }
+        return new ImageWrapper(image.getWidth(), image.getHeight(), toArgb(image));
+    }
+
+    /**
+     * Пикселы изображения ImageIO в ARGB по строкам; серые отсчёты не пересчитываются
+     * из линейного пространства.
+     */
+    static int[] toArgb(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ColorModel colorModel = image.getColorModel();
+        if (colorModel instanceof IndexColorModel || colorModel.isAlphaPremultiplied()
+                || colorModel.getColorSpace().getType() != ColorSpace.TYPE_GRAY) {
+            return image.getRGB(0, 0, width, height, null, 0, width);
+        }
+        Raster raster = image.getRaster();
+        boolean hasAlpha = colorModel.hasAlpha();
+        int grayMax = (1 << colorModel.getComponentSize(0)) - 1;
+        int alphaMax = hasAlpha ? (1 << colorModel.getComponentSize(1)) - 1 : 0;
+        int[] gray = new int[width];
+        int[] alpha = new int[width];
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            raster.getSamples(0, y, width, 1, 0, gray);
+            if (hasAlpha) {
+                raster.getSamples(0, y, width, 1, 1, alpha);
+            }
+            for (int x = 0; x < width; x++) {
+                int value = scale(gray[x], grayMax);
+                int opacity = hasAlpha ? scale(alpha[x], alphaMax) : 255;
+                pixels[y * width + x] = ImageTransformer.argb(opacity, value, value, value);
+            }
+        }
+        return pixels;
+    }
+
+    private static int scale(int sample, int max) {
+        return (sample * 255 + max / 2) / max;
+    }
+}
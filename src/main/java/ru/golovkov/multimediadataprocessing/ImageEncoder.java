@@ -0,0 +1,80 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Запись {@link ImageWrapper} в файл без промежуточных копий растра.
+ * <p>
+ * PNG кодируется прямо из растра параллельным {@link PngEncoder}. Для остальных форматов
+ * {@link BufferedImage} строится поверх того же массива пикселов через {@link DataBufferInt},
+ * поэтому ImageIO читает растр без копирования. Форматы без альфа-канала (JPEG, BMP)
+ * получают модель цвета RGB над тем же массивом. Растр {@link TiledRaster} кодируется в PNG
+ * потоком по блокам строк; другие форматы ImageIO требуют всё изображение в памяти.
+ */
+final class ImageEncoder {
+
+    private ImageEncoder() {
+    }
+
+    static void write(ImageWrapper imageWrapper, String format, Path target, TileScheduler scheduler)
+            throws IOException {
+        String formatName = format.toLowerCase(Locale.ROOT);
+        if (formatName.equals("png")) {
+            try (OutputStream outputStream = Files.newOutputStream(target)) {
+                new PngEncoder(scheduler).write(imageWrapper, outputStream);
+            }
+            return;
+        }
+        BufferedImage bufferedImage = toBufferedImage(imageWrapper, !supportsAlpha(formatName));
+        if (!ImageIO.write(bufferedImage, formatName, target.toFile())) {
+            throw new IOException("Нет записи в формате " + format);
+        }
+    }
+
+    static void write(TiledRaster raster, String format, Path target, TileScheduler scheduler) throws IOException {
+        if (format.toLowerCase(Locale.ROOT).equals("png")) {
+            try (OutputStream outputStream = Files.newOutputStream(target)) {
+                new PngEncoder(scheduler).write(raster, outputStream);
+            }
+            return;
+        }
+        if ((long) raster.getWidth() * raster.getHeight() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Растр " + raster.getWidth() + "x" + raster.getHeight()
+                    + " записывается только в формате PNG");
+        }
+        write(raster.toImageWrapper(), format, target, scheduler);
+    }
+
+    /**
+     * {@link BufferedImage}, разделяющий массив пикселов с изображением: изменения в одном
+     * видны в другом.
+     */
+    static BufferedImage toBufferedImage(ImageWrapper imageWrapper, boolean opaque) {
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        DataBufferInt dataBuffer = new DataBufferInt(imageWrapper.getPixels(), width * height);
+        ColorModel colorModel = opaque
+                ? new DirectColorModel(24, 0x00FF0000, 0x0000FF00, 0x000000FF)
+                : ColorModel.getRGBdefault();
+        int[] masks = opaque
+                ? new int[]{0x00FF0000, 0x0000FF00, 0x000000FF}
+                : new int[]{0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000};
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width, masks, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static boolean supportsAlpha(String formatName) {
+        return !formatName.equals("jpg") && !formatName.equals("jpeg") && !formatName.equals("bmp");
+    }
+}
@@ -0,0 +1,76 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.image.Image;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Открытие изображения в фоновом потоке.
+ * <p>
+ * Сначала файл декодируется сразу в размер предпросмотра, и этот предпросмотр передаётся
+ * в поток JavaFX, пока идёт полное декодирование. Затем готовятся растр полного размера,
+ * его {@link ImagePyramid} и гистограмма, чтобы поток JavaFX только подставил готовое.
+ */
+class ImageLoadTask extends Task<ImageLoadTask.Result> {
+
+    private final File file;
+    private final int previewSize;
+    private final ImageTransformer imageTransformer;
+    private final OperationMetrics metrics;
+    private final Consumer<Image> previewListener;
+
+    ImageLoadTask(File file, int previewSize, ImageTransformer imageTransformer, OperationMetrics metrics,
+                  Consumer<Image> previewListener) {
+        this.file = file;
+        this.previewSize = previewSize;
+        this.imageTransformer = imageTransformer;
+        this.metrics = metrics;
+        this.previewListener = previewListener;
+    }
+
+    @Override
+    protected Result call() throws IOException {
+        String url = file.toURI().toString();
+        updateMessage("Загрузка");
+        Image preview = new Image(url, previewSize, previewSize, true, true);
+        if (!preview.isError()) {
+            Platform.runLater(() -> {
+                if (!isDone()) {
+                    previewListener.accept(preview);
+                }
+            });
+        }
+        if (isCancelled()) {
+            return null;
+        }
+        ImageWrapper imageWrapper = load(url);
+        if (isCancelled()) {
+            return null;
+        }
+        updateMessage("Подготовка к показу");
+        ImagePyramid pyramid = ImagePyramid.build(imageWrapper, imageTransformer.getScheduler());
+        metrics.measure(OperationMetrics.Phase.HISTOGRAM, file.getName(), "",
+                imageWrapper.getWidth(), imageWrapper.getHeight(),
+                () -> imageTransformer.getHistogramService().histogramOf(imageWrapper));
+        return new Result(imageWrapper, pyramid);
+    }
+
+    private ImageWrapper load(String url) throws IOException {
+        try (OperationMetrics.Span span = metrics.start(OperationMetrics.Phase.LOAD, file.getName(), "", 0, 0)) {
+            Image image = new Image(url);
+            if (image.isError()) {
+                throw new IOException("Не удалось прочитать " + file.getName(), image.getException());
+            }
+            ImageWrapper imageWrapper = new ImageWrapper(image);
+            span.setSize(imageWrapper.getWidth(), imageWrapper.getHeight());
+            return imageWrapper;
+        }
+    }
+
+    record Result(ImageWrapper imageWrapper, ImagePyramid pyramid) {
+    }
+}
@@ -0,0 +1,73 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javafx.scene.image.Image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пирамида уменьшенных вдвое копий изображения для показа.
+ * <p>
+ * Окно просмотра берёт наименьший уровень, который не меньше области показа в физических
+ * пикселах, поэтому большое изображение не выводится через полноразмерную текстуру.
+ * Уровни строятся {@link Downsampler} из предыдущего уровня, пока сторона больше
+ * {@value #MIN_LEVEL_SIZE}. Изображения JavaFX уровней готовятся при построении, обычно в
+ * фоновом потоке; полноразмерное — только при первом запросе, если уровней несколько.
+ */
+final class ImagePyramid {
+
+    private static final int MIN_LEVEL_SIZE = 256;
+
+    private final ImageWrapper[] levels;
+    private final Image[] images;
+
+    private ImagePyramid(ImageWrapper[] levels, Image[] images) {
+        this.levels = levels;
+        this.images = images;
+    }
+
+    static ImagePyramid build(ImageWrapper imageWrapper, TileScheduler scheduler) {
+        List<ImageWrapper> levels = new ArrayList<>();
+        levels.add(imageWrapper);
+        for (ImageWrapper level = imageWrapper; Math.max(level.getWidth(), level.getHeight()) > MIN_LEVEL_SIZE; ) {
+            level = Downsampler.apply(level, 2, scheduler);
+            levels.add(level);
+        }
+        Image[] images = new Image[levels.size()];
+        for (int i = levels.size() == 1 ? 0 : 1; i < images.length; i++) {
+            images[i] = levels.get(i).toImage();
+        }
+        return new ImagePyramid(levels.toArray(ImageWrapper[]::new), images);
+    }
+
+    /**
+     * Изображение уровня, которого хватает для показа в области width x height без
+     * увеличения; если такого нет, полноразмерное.
+     */
+    Image imageFor(double width, double height) {
+        int index = levels.length - 1;
+        while (index > 0 && (levels[index].getWidth() < width && levels[index].getHeight() < height)) {
+            index--;
+        }
+        if (images[index] == null) {
+            images[index] = levels[index].toImage();
+        }
+        return images[index];
+    }
+
+    int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Байты растров и изображений уровней, кроме самого исходного растра.
+     */
+    long getByteSize() {
+        long pixels = 0;
+        for (int i = 0; i < levels.length; i++) {
+            long levelPixels = (long) levels[i].getWidth() * levels[i].getHeight();
+            pixels += (i > 0 ? levelPixels : 0) + (images[i] != null ? levelPixels : 0);
+        }
+        return Integer.BYTES * pixels;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Запись изображения в файл в фоновом потоке с отчётом о ходе и кооперативной отменой.
+ * <p>
+ * {@link ImageEncoder} получает планировщик, связанный с {@link TaskMonitor} задачи, поэтому
+ * ход PNG считается по блокам сжатия, а {@link #cancel()} останавливает выдачу новых блоков.
+ * Файл сначала пишется во временный рядом с целевым и только потом переносится на его место,
+ * так что при ошибке или отмене прежний файл остаётся нетронутым.
+ */
+class ImageSaveTask extends Task<Path> {
+
+    private final ImageWrapper imageWrapper;
+    private final Path target;
+    private final String format;
+    private final TileScheduler scheduler;
+    private final OperationMetrics metrics;
+    private final TaskMonitor monitor;
+
+    ImageSaveTask(ImageWrapper imageWrapper, Path target, String format, TileScheduler scheduler,
+                  OperationMetrics metrics) {
+        this.imageWrapper = imageWrapper;
+        this.target = target.toAbsolutePath();
+        this.format = format;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        int passes = format.equalsIgnoreCase("png")
+                ? new PngEncoder(scheduler).getPassCount(imageWrapper.getWidth(), imageWrapper.getHeight()) : 1;
+        this.monitor = new TaskMonitor(passes, (pass, passCount, progress) -> updateProgress(progress, 1));
+    }
+
+    @Override
+    protected Path call() throws IOException {
+        updateMessage("Сохранение " + target.getFileName());
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            metrics.run(OperationMetrics.Phase.SAVE, target.getFileName().toString(), format,
+                    imageWrapper.getWidth(), imageWrapper.getHeight(),
+                    () -> ImageEncoder.write(imageWrapper, format, temporary, scheduler.withMonitor(monitor)));
+            monitor.checkCancelled();
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        return target;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        monitor.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
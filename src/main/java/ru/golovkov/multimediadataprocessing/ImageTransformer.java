@@ -1,377 +1,290 @@
 package ru.golovkov.multimediadataprocessing;
 
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
-
-import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 public class ImageTransformer {
 
-    private static final double[][] LAPLACIAN_90 = {{0, -1, 0}, {-1, 4, -1}, {0, -1, 0}};
-    private static final double[][] LAPLACIAN_45 = {{-1, -1, -1}, {-1, 8, -1}, {-1, -1, -1}};
-
-    public Image createNegativeImage(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = 1.0 - color.getRed();
-                double green = 1.0 - color.getGreen();
-                double blue = 1.0 - color.getBlue();
-                double opacity = color.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createPowerLawTransformation(ImageWrapper imageWrapper, double gamma) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = Math.pow(color.getRed(), gamma);
-                double green = Math.pow(color.getGreen(), gamma);
-                double blue = Math.pow(color.getBlue(), gamma);
-                double opacity = color.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createBrightnessRangeCut(ImageWrapper imageWrapper, int minBrightness, int maxBrightness) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = color.getRed() * 255;
-                double green = color.getGreen() * 255;
-                double blue = color.getBlue() * 255;
-                if (red < minBrightness || red > maxBrightness || green < minBrightness || green > maxBrightness || blue < minBrightness || blue > maxBrightness) {
-                    red = green = blue = 0;
-                } else {
-                    red /= 255;
-                    green /= 255;
-                    blue /= 255;
-                }
-                double opacity = color.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createBrightnessRangeCut2(ImageWrapper imageWrapper, int minBrightness, int maxBrightness) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = color.getRed() * 255;
-                double green = color.getGreen() * 255;
-                double blue = color.getBlue() * 255;
-                if (minBrightness == 0 && maxBrightness == 255) {
-                    red /= 255;
-                    green /= 255;
-                    blue /= 255;
-                } else {
-                    if (red < minBrightness || green < minBrightness || blue < minBrightness) {
-                        red = green = blue = 0; // Черный цвет
-                    } else if (red > maxBrightness || green > maxBrightness || blue > maxBrightness) {
-                        red = green = blue = 1; // Белый цвет
-                    } else {
-                        red /= 255;
-                        green /= 255;
-                        blue /= 255;
-                    }
-                }
+    static final ConvolutionKernel LAPLACIAN_90 = ConvolutionKernel.of(new int[][]{{0, -1, 0}, {-1, 4, -1}, {0, -1, 0}});
+    static final ConvolutionKernel LAPLACIAN_45 = ConvolutionKernel.of(new int[][]{{-1, -1, -1}, {-1, 8, -1}, {-1, -1, -1}});
+    static final ConvolutionKernel ROBERTS_X = ConvolutionKernel.of(new int[][]{{1, 0}, {0, -1}});
+    static final ConvolutionKernel ROBERTS_Y = ConvolutionKernel.of(new int[][]{{0, 1}, {-1, 0}});
+    static final ConvolutionKernel SOBEL_X = ConvolutionKernel.of(new int[][]{{-1, 0, 1}, {-1, 0, 1}, {-1, 0, 1}});
+    static final ConvolutionKernel SOBEL_Y = ConvolutionKernel.of(new int[][]{{-1, -1, -1}, {0, 0, 0}, {1, 1, 1}});
 
-                double opacity = color.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createAverageFilter(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 1; y < imageWrapper.getHeight() - 1; y++) {
-            for (int x = 1; x < imageWrapper.getWidth() - 1; x++) {
-                double sumRed = 0;
-                double sumGreen = 0;
-                double sumBlue = 0;
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        Color color = pixelReader.getColor(x + kx, y + ky);
-                        sumRed += color.getRed();
-                        sumGreen += color.getGreen();
-                        sumBlue += color.getBlue();
-                    }
-                }
-                double opacity = pixelReader.getColor(x, y).getOpacity();
-                double red = sumRed / 9;
-                double green = sumGreen / 9;
-                double blue = sumBlue / 9;
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createMedianFilter(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 1; y < imageWrapper.getHeight() - 1; y++) {
-            for (int x = 1; x < imageWrapper.getWidth() - 1; x++) {
-                double[] redValues = new double[9];
-                double[] greenValues = new double[9];
-                double[] blueValues = new double[9];
-                int index = 0;
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        Color color = pixelReader.getColor(x + kx, y + ky);
-                        redValues[index] = color.getRed();
-                        greenValues[index] = color.getGreen();
-                        blueValues[index] = color.getBlue();
-                        index++;
-                    }
-                }
-                Arrays.sort(redValues);
-                Arrays.sort(greenValues);
-                Arrays.sort(blueValues);
-                double opacity = pixelReader.getColor(x, y).getOpacity();
-                double red = redValues[4];
-                double green = greenValues[4];
-                double blue = blueValues[4];
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createRobertsGradient(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 0; y < imageWrapper.getHeight() - 1; y++) {
-            for (int x = 0; x < imageWrapper.getWidth() - 1; x++) {
-                Color color1 = pixelReader.getColor(x, y);
-                Color color2 = pixelReader.getColor(x + 1, y);
-                Color color3 = pixelReader.getColor(x, y + 1);
-                Color color4 = pixelReader.getColor(x + 1, y + 1);
-
-                double red1 = color1.getRed();
-                double green1 = color1.getGreen();
-                double blue1 = color1.getBlue();
-
-                double red2 = color2.getRed();
-                double green2 = color2.getGreen();
-                double blue2 = color2.getBlue();
-
-                double red3 = color3.getRed();
-                double green3 = color3.getGreen();
-                double blue3 = color3.getBlue();
-
-                double red4 = color4.getRed();
-                double green4 = color4.getGreen();
-                double blue4 = color4.getBlue();
-
-                double red = Math.sqrt((red1 - red4) * (red1 - red4) + (red2 - red3) * (red2 - red3));
-                if (red > 1.0) red = 1;
-                double green = Math.sqrt((green1 - green4) * (green1 - green4) + (green2 - green3) * (green2 - green3));
-                if (green > 1.0) green = 1;
-                double blue = Math.sqrt((blue1 - blue4) * (blue1 - blue4) + (blue2 - blue3) * (blue2 - blue3));
-                if (blue > 1.0) blue = 1;
-
-                double opacity = color1.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createSobelGradient(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        for (int y = 1; y < imageWrapper.getHeight() - 1; y++) {
-            for (int x = 1; x < imageWrapper.getWidth() - 1; x++) {
-                double gradientX = 0;
-                double gradientY = 0;
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        Color color = pixelReader.getColor(x + kx, y + ky);
-                        double red = color.getRed();
-                        double green = color.getGreen();
-                        double blue = color.getBlue();
-                        gradientX += kx * (red + green + blue);
-                        gradientY += ky * (red + green + blue);
-                    }
-                }
-                double gradient = Math.sqrt(gradientX * gradientX + gradientY * gradientY);
-                double red = Math.min(gradient, 1.0);
-                double opacity = pixelReader.getColor(x, y).getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, red, red, opacity));
-            }
-        }
-        return writableImage;
-    }
-
-    public Image createLaplacian90(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-
-        for (int y = 1; y < imageWrapper.getHeight() - 1; y++) {
-            for (int x = 1; x < imageWrapper.getWidth() - 1; x++) {
-                double sumRed = 0;
-                double sumGreen = 0;
-                double sumBlue = 0;
-
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        Color color = pixelReader.getColor(x + kx, y + ky);
-                        sumRed += color.getRed() * LAPLACIAN_90[ky + 1][kx + 1];
-                        sumGreen += color.getGreen() * LAPLACIAN_90[ky + 1][kx + 1];
-                        sumBlue += color.getBlue() * LAPLACIAN_90[ky + 1][kx + 1];
-                    }
-                }
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
 
-                double red = Math.clamp(sumRed, 0, 1);
-                double green = Math.clamp(sumGreen, 0, 1);
-                double blue = Math.clamp(sumBlue, 0, 1);
+    private final TileScheduler scheduler;
+    private final HistogramService histogramService;
+
+    public ImageTransformer() {
+        this(TileScheduler.withAvailableProcessors());
+    }
+
+    public ImageTransformer(TileScheduler scheduler) {
+        this(scheduler, new HistogramService(scheduler));
+    }
+
+    private ImageTransformer(TileScheduler scheduler, HistogramService histogramService) {
+        this.scheduler = scheduler;
+        this.histogramService = histogramService;
+    }
 
-                Color centerColor = pixelReader.getColor(x, y);
-                double opacity = centerColor.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
+    /**
+     * Преобразователь с другим планировщиком (например, {@link TileScheduler#withMonitor}),
+     * но общим кэшем гистограмм.
+     */
+    public ImageTransformer withScheduler(TileScheduler scheduler) {
+        return new ImageTransformer(scheduler, histogramService);
+    }
+
+    public TileScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public HistogramService getHistogramService() {
+        return histogramService;
+    }
+
+    public ImageWrapper createNegativeImage(ImageWrapper imageWrapper) {
+        return applyPointOperation(imageWrapper, PointOperation.negative());
+    }
+
+    public ImageWrapper createPowerLawTransformation(ImageWrapper imageWrapper, double gamma) {
+        return applyPointOperation(imageWrapper, PointOperation.powerLaw(gamma));
+    }
+
+    public ImageWrapper createBrightnessRangeCut(ImageWrapper imageWrapper, int minBrightness, int maxBrightness) {
+        return applyPointOperation(imageWrapper, PointOperation.brightnessRangeCut(minBrightness, maxBrightness));
+    }
+
+    public ImageWrapper createBrightnessRangeCut2(ImageWrapper imageWrapper, int minBrightness, int maxBrightness) {
+        return applyPointOperation(imageWrapper, PointOperation.brightnessRangeCut2(minBrightness, maxBrightness));
+    }
+
+    public ImageWrapper applyPointOperation(ImageWrapper imageWrapper, PointOperation operation) {
+        ImageWrapper result = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        applyPointOperation(imageWrapper, operation, result);
+        return result;
+    }
+
+    private void applyPointOperation(ImageWrapper imageWrapper, PointOperation operation, ImageWrapper result) {
+        int width = imageWrapper.getWidth();
+        int[] source = imageWrapper.getPixels();
+        int[] target = result.getPixels();
+        scheduler.forEachRowBand(imageWrapper.getHeight(),
+                (fromY, toY) -> operation.apply(source, target, fromY * width, toY * width));
+    }
+
+    /**
+     * Уменьшенная копия, помещающаяся в maxWidth x maxHeight, например для предпросмотра.
+     * Если изображение уже помещается, возвращается оно само.
+     */
+    public ImageWrapper createDownsampled(ImageWrapper imageWrapper, int maxWidth, int maxHeight) {
+        int factor = Downsampler.factor(imageWrapper.getWidth(), imageWrapper.getHeight(), maxWidth, maxHeight);
+        return factor == 1 ? imageWrapper : Downsampler.apply(imageWrapper, factor, scheduler);
+    }
+
+    public ImageWrapper createAverageFilter(ImageWrapper imageWrapper) {
+        return createAverageFilter(imageWrapper, 1);
+    }
+
+    public ImageWrapper createAverageFilter(ImageWrapper imageWrapper, int radius) {
+        ImageWrapper result = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        BoxFilter.apply(imageWrapper, result, radius, scheduler);
+        return result;
+    }
+
+    public ImageWrapper createMedianFilter(ImageWrapper imageWrapper) {
+        return createMedianFilter(imageWrapper, 1);
+    }
+
+    public ImageWrapper createMedianFilter(ImageWrapper imageWrapper, int radius) {
+        ImageWrapper result = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        MedianFilter.apply(imageWrapper, result, radius, scheduler);
+        return result;
+    }
+
+    public ImageWrapper createRobertsGradient(ImageWrapper imageWrapper) {
+        return createGradientMagnitude(imageWrapper, ROBERTS_X, ROBERTS_Y, BorderMode.CLAMP);
+    }
+
+    public ImageWrapper createSobelGradient(ImageWrapper imageWrapper) {
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        Convolution.Plane plane = Convolution.pad(imageWrapper, argb -> red(argb) + green(argb) + blue(argb),
+                BorderMode.CLAMP, scheduler, SOBEL_X, SOBEL_Y);
+        int[] gradientX = Convolution.convolve(plane, SOBEL_X, scheduler);
+        int[] gradientY = Convolution.convolve(plane, SOBEL_Y, scheduler);
+        ImageWrapper result = new ImageWrapper(width, height);
+        int[] target = result.getPixels();
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int i = fromY * width; i < toY * width; i++) {
+                int gray = magnitude(gradientX[i], gradientY[i]);
+                target[i] = argb(alpha(source[i]), gray, gray, gray);
             }
-        }
-        return writableImage;
-    }
-
-    public Image createLaplacian45(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-
-        for (int y = 1; y < imageWrapper.getHeight() - 1; y++) {
-            for (int x = 1; x < imageWrapper.getWidth() - 1; x++) {
-                double sumRed = 0;
-                double sumGreen = 0;
-                double sumBlue = 0;
-
-                for (int ky = -1; ky <= 1; ky++) {
-                    for (int kx = -1; kx <= 1; kx++) {
-                        Color color = pixelReader.getColor(x + kx, y + ky);
-                        sumRed += color.getRed() * LAPLACIAN_45[ky + 1][kx + 1];
-                        sumGreen += color.getGreen() * LAPLACIAN_45[ky + 1][kx + 1];
-                        sumBlue += color.getBlue() * LAPLACIAN_45[ky + 1][kx + 1];
-                    }
-                }
+        });
+        return result;
+    }
 
-                double red = Math.clamp(sumRed, 0, 1);
-                double green = Math.clamp(sumGreen, 0, 1);
-                double blue = Math.clamp(sumBlue, 0, 1);
+    public ImageWrapper createLaplacian90(ImageWrapper imageWrapper) {
+        return convolve(imageWrapper, LAPLACIAN_90, BorderMode.CLAMP);
+    }
+
+    public ImageWrapper createLaplacian45(ImageWrapper imageWrapper) {
+        return convolve(imageWrapper, LAPLACIAN_45, BorderMode.CLAMP);
+    }
 
-                Color centerColor = pixelReader.getColor(x, y);
-                double opacity = centerColor.getOpacity();
-                pixelWriter.setColor(x, y, new Color(red, green, blue, opacity));
+    public ImageWrapper convolve(ImageWrapper imageWrapper, ConvolutionKernel kernel, BorderMode borderMode) {
+        int width = imageWrapper.getWidth();
+        int[] source = imageWrapper.getPixels();
+        int[] red = convolveChannel(imageWrapper, ImageTransformer::red, borderMode, kernel)[0];
+        int[] green = convolveChannel(imageWrapper, ImageTransformer::green, borderMode, kernel)[0];
+        int[] blue = convolveChannel(imageWrapper, ImageTransformer::blue, borderMode, kernel)[0];
+        ImageWrapper result = new ImageWrapper(width, imageWrapper.getHeight());
+        int[] target = result.getPixels();
+        scheduler.forEachRowBand(imageWrapper.getHeight(), (fromY, toY) -> {
+            for (int i = fromY * width; i < toY * width; i++) {
+                target[i] = argb(alpha(source[i]),
+                        Math.clamp(red[i], 0, 255), Math.clamp(green[i], 0, 255), Math.clamp(blue[i], 0, 255));
             }
-        }
-        return writableImage;
-    }
-
-    public Image createHistogramEqualization(ImageWrapper imageWrapper) {
-        WritableImage writableImage = new WritableImage(imageWrapper.getWidth(), imageWrapper.getHeight());
-        PixelWriter pixelWriter = writableImage.getPixelWriter();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        int[] histogram = new int[256];
-        int totalPixels = imageWrapper.getWidth() * imageWrapper.getHeight();
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = color.getRed() * 255;
-                double green = color.getGreen() * 255;
-                double blue = color.getBlue() * 255;
-                int gray = (int) ((red + green + blue) / 3);
-                histogram[gray]++;
+        });
+        return result;
+    }
+
+    public ImageWrapper createGradientMagnitude(ImageWrapper imageWrapper, ConvolutionKernel kernelX, ConvolutionKernel kernelY,
+                                         BorderMode borderMode) {
+        int width = imageWrapper.getWidth();
+        int[] source = imageWrapper.getPixels();
+        int[][] red = convolveChannel(imageWrapper, ImageTransformer::red, borderMode, kernelX, kernelY);
+        int[][] green = convolveChannel(imageWrapper, ImageTransformer::green, borderMode, kernelX, kernelY);
+        int[][] blue = convolveChannel(imageWrapper, ImageTransformer::blue, borderMode, kernelX, kernelY);
+        ImageWrapper result = new ImageWrapper(width, imageWrapper.getHeight());
+        int[] target = result.getPixels();
+        scheduler.forEachRowBand(imageWrapper.getHeight(), (fromY, toY) -> {
+            for (int i = fromY * width; i < toY * width; i++) {
+                target[i] = argb(alpha(source[i]), magnitude(red[0][i], red[1][i]),
+                        magnitude(green[0][i], green[1][i]), magnitude(blue[0][i], blue[1][i]));
             }
+        });
+        return result;
+    }
+
+    private int[][] convolveChannel(ImageWrapper imageWrapper, IntUnaryOperator channel, BorderMode borderMode,
+                                    ConvolutionKernel... kernels) {
+        Convolution.Plane plane = Convolution.pad(imageWrapper, channel, borderMode, scheduler, kernels);
+        int[][] results = new int[kernels.length][];
+        for (int i = 0; i < kernels.length; i++) {
+            results[i] = Convolution.convolve(plane, kernels[i], scheduler);
         }
-        int[] cumulativeHistogram = new int[256];
-        cumulativeHistogram[0] = histogram[0];
+        return results;
+    }
+
+    static int magnitude(int gradientX, int gradientY) {
+        long magnitude = Math.round(Math.sqrt((double) gradientX * gradientX + (double) gradientY * gradientY));
+        return (int) Math.min(magnitude, 255);
+    }
+
+    public ImageWrapper createHistogramEqualization(ImageWrapper imageWrapper) {
+        int[] source = imageWrapper.getPixels();
+        ImageWrapper result = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        int[] target = result.getPixels();
+        int[] equalizedGray = equalizationTable(histogramService.histogramOf(imageWrapper, scheduler));
+        int width = imageWrapper.getWidth();
+        scheduler.forEachRowBand(imageWrapper.getHeight(), (fromY, toY) -> {
+            for (int i = fromY * width; i < toY * width; i++) {
+                int argb = source[i];
+                int newGray = equalizedGray[gray(argb)];
+                target[i] = argb(alpha(argb), newGray, newGray, newGray);
+            }
+        });
+        return result;
+    }
+
+    static int[] equalizationTable(Histogram histogram) {
+        long[] gray = histogram.getGray();
+        long totalPixels = histogram.getTotal();
+        long[] cumulativeHistogram = new long[256];
+        cumulativeHistogram[0] = gray[0];
         for (int i = 1; i < 256; i++) {
-            cumulativeHistogram[i] = cumulativeHistogram[i - 1] + histogram[i];
+            cumulativeHistogram[i] = cumulativeHistogram[i - 1] + gray[i];
         }
-        double[] normalizedHistogram = new double[256];
+        int[] equalizedGray = new int[256];
         for (int i = 0; i < 256; i++) {
-            normalizedHistogram[i] = (double) cumulativeHistogram[i] / totalPixels * 255;
-        }
-        for (int y = 0; y < imageWrapper.getHeight(); y++) {
-            for (int x = 0; x < imageWrapper.getWidth(); x++) {
-                Color color = pixelReader.getColor(x, y);
-                double red = color.getRed() * 255;
-                double green = color.getGreen() * 255;
-                double blue = color.getBlue() * 255;
-                int gray = (int) ((red + green + blue) / 3);
-                double newGray = normalizedHistogram[gray];
-                double newRed = newGray / 255;
-                double newGreen = newGray / 255;
-                double newBlue = newGray / 255;
-                double opacity = color.getOpacity();
-                pixelWriter.setColor(x, y, new Color(newRed, newGreen, newBlue, opacity));
-            }
+            equalizedGray[i] = (int) Math.round((double) cumulativeHistogram[i] / totalPixels * 255);
         }
-        return writableImage;
+        return equalizedGray;
     }
 
-    public Image applyThreshold(ImageWrapper imageWrapper, int threshold) {
-        int width = imageWrapper.getWidth();
-        int height = imageWrapper.getHeight();
+    /**
+     * Адаптивная эквализация с ограничением контраста (CLAHE) по сетке
+     * {@code tileCount} x {@code tileCount} плиток; {@code clipLimit} — во сколько раз столбец
+     * гистограммы плитки может превышать средний. Если {@code lumaOnly}, меняется только
+     * яркость и цвет сохраняется, иначе результат серый, как у
+     * {@link #createHistogramEqualization}.
+     */
+    public ImageWrapper createAdaptiveHistogramEqualization(ImageWrapper imageWrapper, int tileCount, double clipLimit,
+                                                            boolean lumaOnly) {
+        ImageWrapper result = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        Clahe.apply(imageWrapper, result, tileCount, clipLimit, lumaOnly, scheduler);
+        return result;
+    }
+
+    public ImageWrapper applyThreshold(ImageWrapper imageWrapper, int threshold) {
         threshold = 255 - threshold;
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        WritableImage binaryImage = new WritableImage(width, height);
-        PixelWriter pixelWriter = binaryImage.getPixelWriter();
+        ImageWrapper binaryImage = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
 
-        writeImageWithThreshold(height, width, pixelReader, threshold, pixelWriter);
+        applyPointOperation(imageWrapper, PointOperation.threshold(threshold), binaryImage);
 
         return binaryImage;
     }
 
-    public Image applyOtsuThreshold(ImageWrapper imageWrapper) {
-        int width = imageWrapper.getWidth();
-        int height = imageWrapper.getHeight();
-        PixelReader pixelReader = imageWrapper.getPixelReader();
-        WritableImage binaryImage = new WritableImage(width, height);
-        PixelWriter pixelWriter = binaryImage.getPixelWriter();
+    public ImageWrapper applyOtsuThreshold(ImageWrapper imageWrapper) {
+        ImageWrapper binaryImage = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        int threshold = otsuThreshold(histogramService.histogramOf(imageWrapper, scheduler));
+        applyPointOperation(imageWrapper, PointOperation.threshold(threshold), binaryImage);
+        return binaryImage;
+    }
 
-        int[] histogram = new int[256];
+    /**
+     * Адаптивный порог: пиксел чёрный, если его серый не больше среднего по окну
+     * (2r + 1) x (2r + 1) минус {@code offset}.
+     */
+    public ImageWrapper applyMeanThreshold(ImageWrapper imageWrapper, int radius, double offset) {
+        return applyAdaptiveThreshold(imageWrapper, AdaptiveThreshold.Method.MEAN, radius, offset);
+    }
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int brightness = (int) (pixelReader.getColor(x, y).getBrightness() * 255);
-                histogram[brightness]++;
-            }
-        }
-        double total = width * (double) height;
+    /**
+     * Адаптивный порог Брэдли–Рота: пиксел чёрный, если он темнее среднего по окну больше
+     * чем на долю {@code sensitivity} (обычно 0.15).
+     */
+    public ImageWrapper applyBradleyThreshold(ImageWrapper imageWrapper, int radius, double sensitivity) {
+        return applyAdaptiveThreshold(imageWrapper, AdaptiveThreshold.Method.BRADLEY, radius, sensitivity);
+    }
+
+    /**
+     * Адаптивный порог Саувола для документов с неровным освещением; {@code k} обычно от 0.2
+     * до 0.5.
+     */
+    public ImageWrapper applySauvolaThreshold(ImageWrapper imageWrapper, int radius, double k) {
+        return applyAdaptiveThreshold(imageWrapper, AdaptiveThreshold.Method.SAUVOLA, radius, k);
+    }
+
+    private ImageWrapper applyAdaptiveThreshold(ImageWrapper imageWrapper, AdaptiveThreshold.Method method,
+                                                int radius, double parameter) {
+        ImageWrapper binaryImage = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        AdaptiveThreshold.apply(imageWrapper, binaryImage, method, radius, parameter, scheduler);
+        return binaryImage;
+    }
+
+    static int otsuThreshold(Histogram brightnessHistogram) {
+        long[] histogram = brightnessHistogram.getBrightness();
+        double total = brightnessHistogram.getTotal();
         double sumB = 0;
         double wB = 0;
         double maximum = 0.0;
-        double threshold = 0.0;
+        int threshold = 0;
 
         for (int i = 0; i < 256; i++) {
             wB += histogram[i];
@@ -390,202 +303,134 @@ public class ImageTransformer {
                 }
             }
         }
-        writeImageWithThreshold(height, width, pixelReader, threshold, pixelWriter);
-        return binaryImage;
+        return threshold;
     }
 
-    private void writeImageWithThreshold(int height, int width, PixelReader pixelReader, double threshold, PixelWriter pixelWriter) {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int brightness = (int) (pixelReader.getColor(x, y).getBrightness() * 255);
-                if (brightness >= threshold) {
-                    pixelWriter.setColor(x, y, Color.WHITE);
-                } else {
-                    pixelWriter.setColor(x, y, Color.BLACK);
-                }
-            }
-        }
+    public ImageWrapper dilate(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
+        return dilate(imageWrapper, StructuringElement.of(structuringElement), isMaskColorBlack);
     }
 
-    public Image dilate(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
-        int width = imageWrapper.getWidth();
-        int height = imageWrapper.getHeight();
-        WritableImage outputImage = new WritableImage(width, height);
-        PixelReader reader = imageWrapper.getPixelReader();
-        PixelWriter writer = outputImage.getPixelWriter();
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                boolean result = false;
-
-                for (int i = 0; i < structuringElement.length; i++) {
-                    for (int j = 0; j < structuringElement[0].length; j++) {
-                        int offsetX = x + i - structuringElement.length / 2;
-                        int offsetY = y + j - structuringElement[0].length / 2;
-                        if (offsetX >= 0 && offsetY >= 0 && offsetX < width && offsetY < height) {
-                            int pixelValue = reader.getArgb(offsetX, offsetY) == (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF) ? 1 : 0;
-                            result = result || (pixelValue == structuringElement[i][j]);
-                        }
-                    }
-                }
-                writer.setArgb(x, y, result ? (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF) : (isMaskColorBlack ? 0xFFFFFFFF : 0xFF000000));
-            }
-        }
-        return outputImage;
+    public ImageWrapper dilate(ImageWrapper imageWrapper, StructuringElement structuringElement, boolean isMaskColorBlack) {
+        BinaryImage dilated = dilate(toBinaryImage(imageWrapper, isMaskColorBlack), structuringElement);
+        return toImageWrapper(dilated, isMaskColorBlack);
     }
 
-    public Image erode(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
-        int width = imageWrapper.getWidth();
-        int height = imageWrapper.getHeight();
-        WritableImage outputImage = new WritableImage(width, height);
-        PixelReader reader = imageWrapper.getPixelReader();
-        PixelWriter writer = outputImage.getPixelWriter();
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                boolean result = true;
-
-                for (int i = 0; i < structuringElement.length; i++) {
-                    for (int j = 0; j < structuringElement[0].length; j++) {
-                        int offsetX = x + i - structuringElement.length / 2;
-                        int offsetY = y + j - structuringElement[0].length / 2;
-                        if (offsetX >= 0 && offsetY >= 0 && offsetX < width && offsetY < height) {
-                            int pixelValue = reader.getArgb(offsetX, offsetY) == (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF) ? 1 : 0;
-                            result = result && (pixelValue == structuringElement[i][j]);
-                        }
-                    }
-                }
-                writer.setArgb(x, y, result ? (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF) : (isMaskColorBlack ? 0xFFFFFFFF : 0xFF000000));
-            }
-        }
-        return outputImage;
+    public ImageWrapper erode(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
+        return erode(imageWrapper, StructuringElement.of(structuringElement), isMaskColorBlack);
     }
 
-    public Image close(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
-        Image dilated = dilate(imageWrapper, structuringElement, isMaskColorBlack);
-        return erode(new ImageWrapper(dilated), structuringElement, isMaskColorBlack);
+    public ImageWrapper erode(ImageWrapper imageWrapper, StructuringElement structuringElement, boolean isMaskColorBlack) {
+        BinaryImage eroded = erode(toBinaryImage(imageWrapper, isMaskColorBlack), structuringElement);
+        return toImageWrapper(eroded, isMaskColorBlack);
     }
 
-    public Image open(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
-        Image eroded = erode(imageWrapper, structuringElement, isMaskColorBlack);
-        return dilate(new ImageWrapper(eroded), structuringElement, isMaskColorBlack);
+    public ImageWrapper close(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
+        return close(imageWrapper, StructuringElement.of(structuringElement), isMaskColorBlack);
     }
 
-    public Image boundaryExtraction(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
-        Image dilated = dilate(imageWrapper, structuringElement, isMaskColorBlack);
-        return subtractImages(new ImageWrapper(dilated), imageWrapper, isMaskColorBlack);
+    public ImageWrapper close(ImageWrapper imageWrapper, StructuringElement structuringElement, boolean isMaskColorBlack) {
+        BinaryImage dilated = dilate(toBinaryImage(imageWrapper, isMaskColorBlack), structuringElement);
+        return toImageWrapper(erode(dilated, structuringElement), isMaskColorBlack);
     }
 
-    public Image skeletonize(ImageWrapper imageWrapper, boolean isMaskColorBlack) {
-        int width = imageWrapper.getWidth();
-        int height = imageWrapper.getHeight();
-        WritableImage outputImage = new WritableImage(width, height);
-        PixelReader reader = imageWrapper.getPixelReader();
-        PixelWriter writer = outputImage.getPixelWriter();
+    public ImageWrapper open(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
+        return open(imageWrapper, StructuringElement.of(structuringElement), isMaskColorBlack);
+    }
 
-        boolean[][] image = new boolean[height][width];
-        boolean[][] marker = new boolean[height][width];
+    public ImageWrapper open(ImageWrapper imageWrapper, StructuringElement structuringElement, boolean isMaskColorBlack) {
+        BinaryImage eroded = erode(toBinaryImage(imageWrapper, isMaskColorBlack), structuringElement);
+        return toImageWrapper(dilate(eroded, structuringElement), isMaskColorBlack);
+    }
 
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                image[y][x] = reader.getArgb(x, y) == (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF);
-                marker[y][x] = false;
-            }
-        }
+    public ImageWrapper boundaryExtraction(ImageWrapper imageWrapper, int[][] structuringElement, boolean isMaskColorBlack) {
+        return boundaryExtraction(imageWrapper, StructuringElement.of(structuringElement), isMaskColorBlack);
+    }
 
-        boolean hasChanged;
-        do {
-            hasChanged = false;
+    public ImageWrapper boundaryExtraction(ImageWrapper imageWrapper, StructuringElement structuringElement,
+                                    boolean isMaskColorBlack) {
+        BinaryImage mask = toBinaryImage(imageWrapper, isMaskColorBlack);
+        BinaryImage background = BinaryImage.fromImage(imageWrapper, backgroundColor(isMaskColorBlack), scheduler);
+        BinaryImage dilated = dilate(mask, structuringElement);
+        return toImageWrapper(BinaryMorphology.difference(dilated, mask, background, scheduler), isMaskColorBlack);
+    }
 
-            for (int y = 1; y < height - 1; y++) {
-                for (int x = 1; x < width - 1; x++) {
-                    if (image[y][x] && canBeRemoved(image, x, y, true)) {
-                        marker[y][x] = true;
-                        hasChanged = true;
-                    }
-                }
-            }
+    public BinaryImage dilate(BinaryImage binaryImage, int[][] structuringElement) {
+        return dilate(binaryImage, StructuringElement.of(structuringElement));
+    }
 
-            for (int y = 1; !(height - 1 <= y); y++) {
-                for (int x = 1; x < width - 1; x++) {
-                    if (marker[y][x]) {
-                        image[y][x] = false;
-                        marker[y][x] = false;
-                    }
-                }
-            }
-            for (int y = 1; y < height - 1; y++) {
-                for (int x = 1; x < width - 1; x++) {
-                    if (image[y][x] && canBeRemoved(image, x, y, false)) {
-                        marker[y][x] = true;
-                        hasChanged = true;
-                    }
-                }
-            }
+    public BinaryImage dilate(BinaryImage binaryImage, StructuringElement structuringElement) {
+        return BinaryMorphology.dilate(binaryImage, structuringElement, scheduler);
+    }
 
-            for (int y = 1; y < height - 1; y++) {
-                for (int x = 1; x < width - 1; x++) {
-                    if (marker[y][x]) {
-                        image[y][x] = false;
-                        marker[y][x] = false;
-                    }
-                }
-            }
-        } while (hasChanged);
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                writer.setArgb(x, y, image[y][x] ? (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF) : (isMaskColorBlack ? 0xFFFFFFFF : 0xFF000000));
-            }
-        }
+    public BinaryImage erode(BinaryImage binaryImage, int[][] structuringElement) {
+        return erode(binaryImage, StructuringElement.of(structuringElement));
+    }
 
-        return outputImage;
-    }
-
-    private boolean canBeRemoved(boolean[][] image, int x, int y, boolean firstStep) {
-        int p2 = image[y - 1][x] ? 1 : 0;
-        int p3 = image[y - 1][x + 1] ? 1 : 0;
-        int p4 = image[y][x + 1] ? 1 : 0;
-        int p5 = image[y + 1][x + 1] ? 1 : 0;
-        int p6 = image[y + 1][x] ? 1 : 0;
-        int p7 = image[y + 1][x - 1] ? 1 : 0;
-        int p8 = image[y][x - 1] ? 1 : 0;
-        int p9 = image[y - 1][x - 1] ? 1 : 0;
-
-        int B = p2 + p3 + p4 + p5 + p6 + p7 + p8 + p9;
-        int A = (p2 == 0 && p3 == 1) ? 1 : 0;
-        A += !(p3 != 0 || p4 != 1) ? 1 : 0;
-        A += !(p4 != 0 || p5 != 1) ? 1 : 0;
-        A += (p5 == 0 && p6 == 1) ? 1 : 0;
-        A += (p6 == 0 && p7 == 1) ? 1 : 0;
-        A += (p7 == 0 && p8 == 1) ? 1 : 0;
-        A += (p8 == 0 && p9 == 1) ? 1 : 0;
-        A += (p9 == 0 && p2 == 1) ? 1 : 0;
-
-        if (B >= 2 && B <= 6 && A == 1) {
-            if (firstStep) {
-                return p2 * p4 * p6 == 0 && p4 * p6 * p8 == 0;
-            } else {
-                return p2 * p4 * p8 == 0 && p2 * p6 * p8 == 0;
-            }
-        }
-        return false;
-    }
-
-    private Image subtractImages(ImageWrapper img1Wrapper, ImageWrapper img2Wrapper, boolean isMaskColorBlack) {
-        int width = img1Wrapper.getWidth();
-        int height = img1Wrapper.getHeight();
-        WritableImage outputImage = new WritableImage(width, height);
-        PixelReader reader1 = img1Wrapper.getPixelReader();
-        PixelReader reader2 = img2Wrapper.getPixelReader();
-        PixelWriter writer = outputImage.getPixelWriter();
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int pixel1 = reader1.getArgb(x, y);
-                int pixel2 = reader2.getArgb(x, y);
-                writer.setArgb(x, y, pixel1 != pixel2 ? (isMaskColorBlack ? 0xFF000000 : 0xFFFFFFFF) : (isMaskColorBlack ? 0xFFFFFFFF : 0xFF000000));
-            }
-        }
-        return outputImage;
+    public BinaryImage erode(BinaryImage binaryImage, StructuringElement structuringElement) {
+        return BinaryMorphology.erode(binaryImage, structuringElement, scheduler);
+    }
+
+    public BinaryImage toBinaryImage(ImageWrapper imageWrapper, boolean isMaskColorBlack) {
+        return BinaryImage.fromImage(imageWrapper, maskColor(isMaskColorBlack), scheduler);
+    }
+
+    public ImageWrapper toImageWrapper(BinaryImage binaryImage, boolean isMaskColorBlack) {
+        return binaryImage.toImageWrapper(maskColor(isMaskColorBlack), backgroundColor(isMaskColorBlack), scheduler);
+    }
+
+    public ImageWrapper skeletonize(ImageWrapper imageWrapper, boolean isMaskColorBlack) {
+        ImageWrapper result = new ImageWrapper(imageWrapper.getWidth(), imageWrapper.getHeight());
+        Skeletonizer.apply(imageWrapper, result, maskColor(isMaskColorBlack), backgroundColor(isMaskColorBlack), scheduler);
+        return result;
+    }
+
+    /**
+     * Связные компоненты маски после пороговой обработки или морфологии: плоскость меток,
+     * площадь, рамка и центр каждой области. При {@code eightConnected} пикселы, касающиеся
+     * углами, принадлежат одной компоненте.
+     */
+    public ConnectedComponents labelComponents(ImageWrapper imageWrapper, boolean eightConnected,
+                                               boolean isMaskColorBlack) {
+        return labelComponents(toBinaryImage(imageWrapper, isMaskColorBlack), eightConnected);
+    }
+
+    public ConnectedComponents labelComponents(BinaryImage binaryImage, boolean eightConnected) {
+        return ComponentLabeling.apply(binaryImage, eightConnected, scheduler);
+    }
+
+    private static int maskColor(boolean isMaskColorBlack) {
+        return isMaskColorBlack ? BLACK : WHITE;
+    }
+
+    private static int backgroundColor(boolean isMaskColorBlack) {
+        return isMaskColorBlack ? WHITE : BLACK;
+    }
+
+    static int alpha(int argb) {
+        return argb >>> 24;
+    }
+
+    static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    static int gray(int argb) {
+        return (red(argb) + green(argb) + blue(argb)) / 3;
+    }
+
+    static int brightness(int argb) {
+        return Math.max(red(argb), Math.max(green(argb), blue(argb)));
     }
 }
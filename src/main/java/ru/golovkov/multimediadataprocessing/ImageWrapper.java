@@ -1,19 +1,80 @@
 package ru.golovkov.multimediadataprocessing;
 
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import lombok.Data;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+import lombok.Getter;
 
-@Data
+/**
+ * Изображение в памяти: растр упакованных ARGB-пикселов по строкам.
+ * <p>
+ * Размер задаётся при создании и не меняется; длина растра всегда равна
+ * {@code width * height}. Растр не копируется, поэтому равенство — по ссылке, а не по
+ * содержимому: сравнение многомегапиксельных массивов в {@code equals} и {@code hashCode}
+ * было бы и дорогим, и неверным для изменяемого растра.
+ */
+@Getter
 public class ImageWrapper {
 
-    private int width;
-    private int height;
-    private PixelReader pixelReader;
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Растёт при каждом изменении растра; по нему кэши, например {@link HistogramService},
+     * понимают, что посчитанные данные устарели. Кто пишет напрямую в {@link #getPixels()},
+     * должен вызвать {@link #markModified()}.
+     */
+    private long version;
 
     public ImageWrapper(Image image) {
-        pixelReader = image.getPixelReader();
-        height = (int) image.getHeight();
-        width = (int) image.getWidth();
+        this((int) image.getWidth(), (int) image.getHeight(), readPixels(image));
+    }
+
+    public ImageWrapper(int width, int height) {
+        this(width, height, new int[Math.multiplyExact(width, height)]);
+    }
+
+    public ImageWrapper(int width, int height, int[] pixels) {
+        if (width < 0 || height < 0 || pixels.length != (long) width * height) {
+            throw new IllegalArgumentException("Размер растра " + pixels.length
+                    + " не совпадает с размером изображения " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public int getArgb(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    public void setArgb(int x, int y, int argb) {
+        pixels[y * width + x] = argb;
+        version++;
+    }
+
+    public void markModified() {
+        version++;
+    }
+
+    private static int[] readPixels(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[Math.multiplyExact(width, height)];
+        image.getPixelReader().getPixels(0, 0, width, height, WritablePixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return pixels;
+    }
+
+    public WritableImage toImage() {
+        WritableImage writableImage = new WritableImage(width, height);
+        writableImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return writableImage;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageWrapper[" + width + "x" + height + ", версия " + version + "]";
     }
 }
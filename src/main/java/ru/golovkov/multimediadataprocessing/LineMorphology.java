@@ -0,0 +1,181 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Дилатация и эрозия отрезком за постоянное число операций на пиксел независимо от длины
+ * отрезка (алгоритм ван Херка — Гиля — Вермана).
+ * <p>
+ * Последовательность делится на блоки длины окна; внутри блоков считаются префиксные
+ * и суффиксные OR (AND для эрозии), и окно, начинающееся в позиции i, равно суффиксу в i,
+ * объединённому с префиксом в i + length - 1. Вертикальный проход работает сразу со
+ * словами {@link BinaryImage}, то есть с 64 столбцами за операцию, горизонтальный —
+ * с распакованной строкой (окна не длиннее 64 пикселов собираются из сдвинутых слов).
+ * Диагональный отрезок сводится к вертикальному сдвигом каждой строки на её номер:
+ * диагонали становятся столбцами. Пикселы за краем изображения не влияют на результат.
+ */
+final class LineMorphology {
+
+    private static final int MIN_WORDS_PER_STRIP = 4;
+
+    private LineMorphology() {
+    }
+
+    static BinaryImage apply(BinaryImage image, StructuringElement.Direction direction, int length, boolean erode,
+                             TileScheduler scheduler) {
+        int from = -(length / 2);
+        int to = length - 1 - length / 2;
+        return switch (direction) {
+            case HORIZONTAL -> horizontal(image, from, to, erode, scheduler);
+            case VERTICAL -> vertical(image, from, to, erode, scheduler);
+            case FALLING -> unshear(vertical(shear(image, true, erode, scheduler), from, to, erode, scheduler),
+                    image.getWidth(), true, scheduler);
+            case RISING -> unshear(vertical(shear(image, false, erode, scheduler), -to, -from, erode, scheduler),
+                    image.getWidth(), false, scheduler);
+        };
+    }
+
+    /**
+     * Окно строк [y + from, y + to] для каждой строки y.
+     */
+    private static BinaryImage vertical(BinaryImage image, int from, int to, boolean erode, TileScheduler scheduler) {
+        int height = image.getHeight();
+        int wordsPerRow = image.getWordsPerRow();
+        int window = to - from + 1;
+        int rows = height + window - 1;
+        long neutral = erode ? -1L : 0L;
+        BinaryImage result = new BinaryImage(image.getWidth(), height);
+        scheduler.forEachColumnStrip(wordsPerRow, MIN_WORDS_PER_STRIP, (fromWord, toWord) -> {
+            int words = toWord - fromWord;
+            long[] prefix = new long[rows * words];
+            long[] suffix = new long[rows * words];
+            for (int r = 0; r < rows; r++) {
+                int sourceY = r + from;
+                boolean inside = sourceY >= 0 && sourceY < height;
+                int offset = r * words;
+                boolean blockStart = r % window == 0;
+                for (int k = 0; k < words; k++) {
+                    long word = inside ? image.getWord(sourceY, fromWord + k) : neutral;
+                    prefix[offset + k] = blockStart ? word : combine(prefix[offset - words + k], word, erode);
+                }
+            }
+            for (int r = rows - 1; r >= 0; r--) {
+                int sourceY = r + from;
+                boolean inside = sourceY >= 0 && sourceY < height;
+                int offset = r * words;
+                boolean blockEnd = r == rows - 1 || (r + 1) % window == 0;
+                for (int k = 0; k < words; k++) {
+                    long word = inside ? image.getWord(sourceY, fromWord + k) : neutral;
+                    suffix[offset + k] = blockEnd ? word : combine(suffix[offset + words + k], word, erode);
+                }
+            }
+            for (int y = 0; y < height; y++) {
+                int suffixOffset = y * words;
+                int prefixOffset = (y + window - 1) * words;
+                for (int k = 0; k < words; k++) {
+                    result.setWord(y, fromWord + k, combine(suffix[suffixOffset + k], prefix[prefixOffset + k], erode));
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Окно столбцов [x + from, x + to] для каждого столбца x. Окно не длиннее слова дешевле
+     * собрать из сдвинутых слов, длинное — проходом ван Херка — Гиля — Вермана по распакованной строке.
+     */
+    private static BinaryImage horizontal(BinaryImage image, int from, int to, boolean erode, TileScheduler scheduler) {
+        int width = image.getWidth();
+        int wordsPerRow = image.getWordsPerRow();
+        int window = to - from + 1;
+        BinaryImage result = new BinaryImage(width, image.getHeight());
+        if (window <= Long.SIZE) {
+            scheduler.forEachRowBand(image.getHeight(), (fromY, toY) -> {
+                for (int y = fromY; y < toY; y++) {
+                    for (int k = 0; k < wordsPerRow; k++) {
+                        long word = erode ? -1L : 0L;
+                        for (int dx = from; dx <= to; dx++) {
+                            word = combine(word, image.shiftedWord(y, k, dx, false, erode), erode);
+                        }
+                        result.setWord(y, k, word);
+                    }
+                }
+            });
+            return result;
+        }
+        int columns = width + window - 1;
+        scheduler.forEachRowBand(image.getHeight(), (fromY, toY) -> {
+            boolean[] pixels = new boolean[columns];
+            boolean[] prefix = new boolean[columns];
+            boolean[] suffix = new boolean[columns];
+            long[] row = new long[wordsPerRow];
+            Arrays.fill(pixels, erode);
+            for (int y = fromY; y < toY; y++) {
+                for (int x = 0; x < width; x++) {
+                    pixels[x - from] = (image.getWord(y, x >>> 6) >>> x & 1L) != 0;
+                }
+                for (int blockStart = 0; blockStart < columns; blockStart += window) {
+                    int blockEnd = Math.min(columns, blockStart + window) - 1;
+                    prefix[blockStart] = pixels[blockStart];
+                    for (int c = blockStart + 1; c <= blockEnd; c++) {
+                        prefix[c] = erode ? prefix[c - 1] & pixels[c] : prefix[c - 1] | pixels[c];
+                    }
+                    suffix[blockEnd] = pixels[blockEnd];
+                    for (int c = blockEnd - 1; c >= blockStart; c--) {
+                        suffix[c] = erode ? suffix[c + 1] & pixels[c] : suffix[c + 1] | pixels[c];
+                    }
+                }
+                Arrays.fill(row, 0L);
+                for (int x = 0; x < width; x++) {
+                    boolean value = erode ? suffix[x] & prefix[x + window - 1] : suffix[x] | prefix[x + window - 1];
+                    if (value) {
+                        row[x >>> 6] |= 1L << x;
+                    }
+                }
+                for (int k = 0; k < wordsPerRow; k++) {
+                    result.setWord(y, k, row[k]);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Сдвигает строку y так, чтобы диагональ стала столбцом: при {@code falling} пиксел (x, y)
+     * попадает в столбец x - y + height - 1, иначе — в столбец x + y. Новые пикселы
+     * нейтральны для операции.
+     */
+    private static BinaryImage shear(BinaryImage image, boolean falling, boolean erode, TileScheduler scheduler) {
+        int height = image.getHeight();
+        BinaryImage sheared = new BinaryImage(image.getWidth() + height - 1, height);
+        int wordsPerRow = sheared.getWordsPerRow();
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int dx = falling ? y - height + 1 : -y;
+                for (int k = 0; k < wordsPerRow; k++) {
+                    sheared.setWord(y, k, image.shiftedWord(y, k, dx, false, erode));
+                }
+            }
+        });
+        return sheared;
+    }
+
+    private static BinaryImage unshear(BinaryImage sheared, int width, boolean falling, TileScheduler scheduler) {
+        int height = sheared.getHeight();
+        BinaryImage result = new BinaryImage(width, height);
+        int wordsPerRow = result.getWordsPerRow();
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                int dx = falling ? height - 1 - y : y;
+                for (int k = 0; k < wordsPerRow; k++) {
+                    result.setWord(y, k, sheared.shiftedWord(y, k, dx, false, false));
+                }
+            }
+        });
+        return result;
+    }
+
+    private static long combine(long a, long b, boolean erode) {
+        return erode ? a & b : a | b;
+    }
+}
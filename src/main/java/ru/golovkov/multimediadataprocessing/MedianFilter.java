@@ -0,0 +1,198 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Медианный фильтр с квадратным окном (2r + 1) x (2r + 1) за O(1) на пиксел
+ * (алгоритм Перро — Эбера).
+ * <p>
+ * Для каждого столбца полосы хранится гистограмма его вертикального окна, которая
+ * обновляется одной входящей и одной выходящей строкой. Гистограмма окна собирается из
+ * гистограмм столбцов и при сдвиге вправо меняется на два столбца. Гистограммы двухуровневые:
+ * грубые 16 корзин обновляются всегда, а точный 16-значный участок синхронизируется лениво,
+ * только когда медиана попадает в его корзину. Изображение делится на вертикальные полосы,
+ * узкие настолько, чтобы гистограммы столбцов помещались в кэш; полосы обрабатываются
+ * параллельно, за краем повторяются крайние пикселы. Все массивы выделяются один раз на полосу.
+ * Счётчики столбцов 16-битные (в столбце не больше 2r + 1 значений), поэтому радиус не больше
+ * {@value #MAX_RADIUS}.
+ */
+final class MedianFilter {
+
+    private static final int CHANNELS = 3;
+    private static final int LEVELS = 256;
+    private static final int COARSE_BINS = 16;
+    private static final int FINE_BINS = LEVELS / COARSE_BINS;
+    private static final int STALE = Integer.MIN_VALUE;
+    private static final int STRIP_WIDTH = 128;
+    private static final int MAX_RADIUS = (Short.MAX_VALUE - 1) / 2;
+
+    private MedianFilter() {
+    }
+
+    static void apply(ImageWrapper imageWrapper, ImageWrapper result, int radius, TileScheduler scheduler) {
+        if (radius < 1 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Радиус фильтра должен быть от 1 до " + MAX_RADIUS + ": " + radius);
+        }
+        int stripWidth = Math.max(STRIP_WIDTH, 4 * radius);
+        scheduler.forEachColumnStrip(imageWrapper.getWidth(), stripWidth, (fromX, toX) -> {
+            for (int stripX = fromX; stripX < toX; stripX += stripWidth) {
+                new Strip(imageWrapper, result, radius, stripX, Math.min(toX, stripX + stripWidth)).run();
+            }
+        });
+    }
+
+    private static final class Strip {
+
+        private final int[] source;
+        private final int[] target;
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final int fromX;
+        private final int toX;
+        private final int firstColumn;
+        private final int lastColumn;
+        private final int rank;
+
+        private final short[][] columnCoarse;
+        private final short[][] columnFine;
+        private final int[][] kernelCoarse = new int[CHANNELS][COARSE_BINS];
+        private final int[][] kernelFine = new int[CHANNELS][LEVELS];
+        private final int[][] syncedAt = new int[CHANNELS][COARSE_BINS];
+
+        Strip(ImageWrapper imageWrapper, ImageWrapper result, int radius, int fromX, int toX) {
+            this.source = imageWrapper.getPixels();
+            this.target = result.getPixels();
+            this.width = imageWrapper.getWidth();
+            this.height = imageWrapper.getHeight();
+            this.radius = radius;
+            this.fromX = fromX;
+            this.toX = toX;
+            this.firstColumn = Math.max(0, fromX - radius);
+            this.lastColumn = Math.min(width - 1, toX - 1 + radius);
+            this.rank = (2 * radius + 1) * (2 * radius + 1) / 2;
+            int columns = lastColumn - firstColumn + 1;
+            this.columnCoarse = new short[CHANNELS][columns * COARSE_BINS];
+            this.columnFine = new short[CHANNELS][columns * LEVELS];
+        }
+
+        void run() {
+            for (int ky = -radius; ky <= radius; ky++) {
+                updateColumns(clampRow(ky), 1);
+            }
+            for (int y = 0; y < height; y++) {
+                if (y > 0) {
+                    updateColumns(clampRow(y + radius), 1);
+                    updateColumns(clampRow(y - radius - 1), -1);
+                }
+                filterRow(y);
+            }
+        }
+
+        private void updateColumns(int row, int delta) {
+            int rowOffset = row * width;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int argb = source[rowOffset + column];
+                int local = column - firstColumn;
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    int value = channelValue(argb, channel);
+                    int fine = local * LEVELS + value;
+                    int coarse = local * COARSE_BINS + value / FINE_BINS;
+                    columnFine[channel][fine] = (short) (columnFine[channel][fine] + delta);
+                    columnCoarse[channel][coarse] = (short) (columnCoarse[channel][coarse] + delta);
+                }
+            }
+        }
+
+        private void filterRow(int y) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                int[] coarse = kernelCoarse[channel];
+                Arrays.fill(coarse, 0);
+                Arrays.fill(syncedAt[channel], STALE);
+                for (int kx = -radius; kx <= radius; kx++) {
+                    int offset = localColumn(fromX + kx) * COARSE_BINS;
+                    for (int bin = 0; bin < COARSE_BINS; bin++) {
+                        coarse[bin] += columnCoarse[channel][offset + bin];
+                    }
+                }
+            }
+
+            int rowOffset = y * width;
+            for (int x = fromX; x < toX; x++) {
+                if (x > fromX) {
+                    int entering = localColumn(x + radius) * COARSE_BINS;
+                    int leaving = localColumn(x - radius - 1) * COARSE_BINS;
+                    for (int channel = 0; channel < CHANNELS; channel++) {
+                        int[] coarse = kernelCoarse[channel];
+                        short[] column = columnCoarse[channel];
+                        for (int bin = 0; bin < COARSE_BINS; bin++) {
+                            coarse[bin] += column[entering + bin] - column[leaving + bin];
+                        }
+                    }
+                }
+                int red = median(0, x);
+                int green = median(1, x);
+                int blue = median(2, x);
+                target[rowOffset + x] = ImageTransformer.argb(ImageTransformer.alpha(source[rowOffset + x]), red, green, blue);
+            }
+        }
+
+        private int median(int channel, int x) {
+            int[] coarse = kernelCoarse[channel];
+            int count = 0;
+            int bin = 0;
+            while (count + coarse[bin] <= rank) {
+                count += coarse[bin];
+                bin++;
+            }
+            synchronizeFine(channel, bin, x);
+            int[] fine = kernelFine[channel];
+            int value = bin * FINE_BINS;
+            while (count + fine[value] <= rank) {
+                count += fine[value];
+                value++;
+            }
+            return value;
+        }
+
+        private void synchronizeFine(int channel, int bin, int x) {
+            int last = syncedAt[channel][bin];
+            if (last == x) {
+                return;
+            }
+            int[] fine = kernelFine[channel];
+            short[] column = columnFine[channel];
+            int segment = bin * FINE_BINS;
+            if (last == STALE || 2 * (x - last) > 2 * radius + 1) {
+                Arrays.fill(fine, segment, segment + FINE_BINS, 0);
+                for (int kx = -radius; kx <= radius; kx++) {
+                    int offset = localColumn(x + kx) * LEVELS + segment;
+                    for (int i = 0; i < FINE_BINS; i++) {
+                        fine[segment + i] += column[offset + i];
+                    }
+                }
+            } else {
+                for (int step = last + 1; step <= x; step++) {
+                    int entering = localColumn(step + radius) * LEVELS + segment;
+                    int leaving = localColumn(step - radius - 1) * LEVELS + segment;
+                    for (int i = 0; i < FINE_BINS; i++) {
+                        fine[segment + i] += column[entering + i] - column[leaving + i];
+                    }
+                }
+            }
+            syncedAt[channel][bin] = x;
+        }
+
+        private int localColumn(int x) {
+            return Math.clamp(x, 0, width - 1) - firstColumn;
+        }
+
+        private int clampRow(int y) {
+            return Math.clamp(y, 0, height - 1);
+        }
+
+        private static int channelValue(int argb, int channel) {
+            return (argb >> (16 - 8 * channel)) & 0xFF;
+        }
+    }
+}
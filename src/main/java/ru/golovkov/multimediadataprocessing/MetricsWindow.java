@@ -0,0 +1,112 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.Scene;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.Stage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Окно с замерами {@link OperationMetrics}: последние этапы и средние значения по операциям.
+ * Обновляется по мере поступления замеров, но не чаще одного раза за кадр JavaFX.
+ */
+final class MetricsWindow {
+
+    private final OperationMetrics metrics;
+    private final TableView<OperationMetrics.Sample> recentTable = new TableView<>();
+    private final TableView<Summary> summaryTable = new TableView<>();
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private Stage stage;
+
+    MetricsWindow(OperationMetrics metrics) {
+        this.metrics = metrics;
+        recentTable.getColumns().addAll(List.of(
+                column("Этап", sample -> sample.phase().getLabel()),
+                column("Операция", OperationMetrics.Sample::operation),
+                column("Параметры", OperationMetrics.Sample::parameters),
+                column("Размер", sample -> sample.width() + "x" + sample.height()),
+                column("мс", sample -> format(sample.durationNanos() / 1e6)),
+                column("Мп/с", sample -> format(sample.getMegapixelsPerSecond())),
+                column("Выделено, МБ", sample -> formatMegabytes(sample.allocatedBytes()))));
+        summaryTable.getColumns().addAll(List.of(
+                column("Этап", summary -> summary.phase().getLabel()),
+                column("Операция", Summary::operation),
+                column("Запусков", summary -> String.valueOf(summary.count())),
+                column("Среднее, мс", summary -> format(summary.durationNanos() / 1e6 / summary.count())),
+                column("Мп/с", summary -> format(summary.megapixels() / (summary.durationNanos() / 1e9))),
+                column("Выделено в среднем, МБ",
+                        summary -> formatMegabytes(summary.allocatedBytes() / summary.count()))));
+        metrics.addListener(sample -> {
+            if (refreshPending.compareAndSet(false, true)) {
+                Platform.runLater(this::refresh);
+            }
+        });
+    }
+
+    void show() {
+        if (stage == null) {
+            TabPane tabPane = new TabPane(new Tab("Последние", recentTable), new Tab("По операциям", summaryTable));
+            tabPane.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+            stage = new Stage();
+            stage.setTitle("Метрики");
+            stage.setScene(new Scene(tabPane, 900, 400));
+        }
+        refresh();
+        stage.show();
+        stage.toFront();
+    }
+
+    private void refresh() {
+        refreshPending.set(false);
+        List<OperationMetrics.Sample> samples = metrics.getRecentSamples();
+        recentTable.getItems().setAll(samples.reversed());
+        Map<String, Summary> summaries = new LinkedHashMap<>();
+        for (OperationMetrics.Sample sample : samples) {
+            summaries.merge(sample.phase() + "\n" + sample.operation(), Summary.of(sample), Summary::plus);
+        }
+        summaryTable.getItems().setAll(summaries.values());
+    }
+
+    private static <T> TableColumn<T, String> column(String title, Function<T, String> value) {
+        TableColumn<T, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(value.apply(cell.getValue())));
+        return column;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String formatMegabytes(long bytes) {
+        return bytes >= 0 ? format(bytes / 1e6) : "—";
+    }
+
+    /**
+     * Суммы по замерам одной операции на одном этапе.
+     */
+    private record Summary(OperationMetrics.Phase phase, String operation, int count, long durationNanos,
+                           double megapixels, long allocatedBytes) {
+
+        static Summary of(OperationMetrics.Sample sample) {
+            return new Summary(sample.phase(), sample.operation(), 1, sample.durationNanos(),
+                    (double) sample.width() * sample.height() / 1e6, sample.allocatedBytes());
+        }
+
+        Summary plus(Summary other) {
+            long allocated = allocatedBytes >= 0 && other.allocatedBytes >= 0
+                    ? allocatedBytes + other.allocatedBytes : -1;
+            return new Summary(phase, operation, count + other.count, durationNanos + other.durationNanos,
+                    megapixels + other.megapixels, allocated);
+        }
+    }
+}
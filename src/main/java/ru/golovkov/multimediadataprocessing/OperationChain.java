@@ -0,0 +1,182 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Последовательность операций {@link ImageTransformer}, заданная строкой для пакетной обработки.
+ * <p>
+ * Операции разделяются запятыми, параметры операции — двоеточиями:
+ * <pre>
+ * negative
+ * gamma:&lt;γ&gt;
+ * range-cut:&lt;min&gt;:&lt;max&gt;, range-cut2:&lt;min&gt;:&lt;max&gt;
+ * average[:&lt;радиус&gt;], median[:&lt;радиус&gt;]
+ * roberts, sobel, laplacian90, laplacian45
+ * equalize, threshold:&lt;порог&gt;, otsu
+ * clahe[:&lt;плиток&gt;[:&lt;предел&gt;]][:luma]
+ * adaptive-mean:&lt;радиус&gt;:&lt;сдвиг&gt;, bradley:&lt;радиус&gt;[:&lt;доля&gt;], sauvola:&lt;радиус&gt;[:&lt;k&gt;]
+ * dilate | erode | close | open | boundary [:&lt;форма&gt;:&lt;размер&gt;][:black]
+ * skeleton[:black]
+ * </pre>
+ * Форма структурного элемента — square, hline, vline, diag45, diag135, diamond или disc,
+ * по умолчанию квадрат 3x3; {@code black} означает, что маска чёрная.
+ * Например: {@code median:2,otsu,open:disc:7:black}.
+ * <p>
+ * Цепочка выполняется как {@link Pipeline}: поэлементные операции сливаются, а фильтры
+ * и свёртки идут потоком по строкам без промежуточных изображений.
+ */
+public final class OperationChain {
+
+    private final List<String> specifications;
+    private final Pipeline pipeline;
+
+    private OperationChain(List<String> specifications, Pipeline pipeline) {
+        this.specifications = List.copyOf(specifications);
+        this.pipeline = pipeline;
+    }
+
+    public static OperationChain parse(String specification) {
+        List<String> specifications = new ArrayList<>();
+        Pipeline.Builder builder = Pipeline.builder();
+        for (String part : specification.split(",")) {
+            String step = part.trim();
+            if (!step.isEmpty()) {
+                specifications.add(step);
+                parseStep(builder, step.split(":"));
+            }
+        }
+        if (specifications.isEmpty()) {
+            throw new IllegalArgumentException("Не задано ни одной операции");
+        }
+        return new OperationChain(specifications, builder.build());
+    }
+
+    public ImageWrapper apply(ImageTransformer imageTransformer, ImageWrapper imageWrapper) {
+        return pipeline.apply(imageTransformer, imageWrapper);
+    }
+
+    public TiledRaster apply(ImageTransformer imageTransformer, TiledRaster raster) throws IOException {
+        return pipeline.apply(imageTransformer, raster);
+    }
+
+    public int size() {
+        return specifications.size();
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", specifications);
+    }
+
+    private static void parseStep(Pipeline.Builder builder, String[] tokens) {
+        String name = tokens[0];
+        switch (name) {
+            case "negative" -> builder.negative();
+            case "gamma" -> builder.powerLaw(doubleArgument(tokens, 1));
+            case "range-cut" -> builder.brightnessRangeCut(intArgument(tokens, 1), intArgument(tokens, 2));
+            case "range-cut2" -> builder.brightnessRangeCut2(intArgument(tokens, 1), intArgument(tokens, 2));
+            case "average" -> builder.averageFilter(tokens.length > 1 ? intArgument(tokens, 1) : 1);
+            case "median" -> {
+                int radius = tokens.length > 1 ? intArgument(tokens, 1) : 1;
+                builder.then("медиана r=" + radius, radius,
+                        (transformer, image) -> transformer.createMedianFilter(image, radius));
+            }
+            case "roberts" -> builder.robertsGradient();
+            case "sobel" -> builder.sobelGradient();
+            case "laplacian90" -> builder.laplacian90();
+            case "laplacian45" -> builder.laplacian45();
+            case "equalize" -> builder.histogramEqualization();
+            case "clahe" -> {
+                boolean luma = tokens[tokens.length - 1].equals("luma");
+                int parameters = luma ? tokens.length - 1 : tokens.length;
+                int tileCount = parameters > 1 ? intArgument(tokens, 1) : 8;
+                double clipLimit = parameters > 2 ? doubleArgument(tokens, 2) : 2.0;
+                builder.then("CLAHE " + tileCount + "x" + tileCount, (transformer, image) ->
+                        transformer.createAdaptiveHistogramEqualization(image, tileCount, clipLimit, luma));
+            }
+            case "threshold" -> builder.threshold(intArgument(tokens, 1));
+            case "otsu" -> builder.otsuThreshold();
+            case "adaptive-mean" -> {
+                int radius = intArgument(tokens, 1);
+                double offset = doubleArgument(tokens, 2);
+                builder.then("адаптивный порог r=" + radius, radius,
+                        (transformer, image) -> transformer.applyMeanThreshold(image, radius, offset));
+            }
+            case "bradley" -> {
+                int radius = intArgument(tokens, 1);
+                double sensitivity = tokens.length > 2 ? doubleArgument(tokens, 2) : 0.15;
+                builder.then("Брэдли r=" + radius, radius,
+                        (transformer, image) -> transformer.applyBradleyThreshold(image, radius, sensitivity));
+            }
+            case "sauvola" -> {
+                int radius = intArgument(tokens, 1);
+                double k = tokens.length > 2 ? doubleArgument(tokens, 2) : 0.34;
+                builder.then("Саувола r=" + radius, radius,
+                        (transformer, image) -> transformer.applySauvolaThreshold(image, radius, k));
+            }
+            case "skeleton" -> {
+                boolean black = isMaskColorBlack(tokens);
+                builder.then("остов", (transformer, image) -> transformer.skeletonize(image, black));
+            }
+            case "dilate", "erode", "close", "open", "boundary" -> morphology(builder, name, tokens);
+            default -> throw new IllegalArgumentException("Неизвестная операция: " + name);
+        }
+    }
+
+    private static void morphology(Pipeline.Builder builder, String name, String[] tokens) {
+        boolean black = isMaskColorBlack(tokens);
+        int parameters = black ? tokens.length - 1 : tokens.length;
+        StructuringElement element = parameters > 1
+                ? structuringElement(tokens[1], intArgument(tokens, 2))
+                : StructuringElement.rectangle(3, 3);
+        int reach = Math.max(element.getWidth(), element.getHeight());
+        switch (name) {
+            case "dilate" -> builder.then(name, reach, (transformer, image) -> transformer.dilate(image, element, black));
+            case "erode" -> builder.then(name, reach, (transformer, image) -> transformer.erode(image, element, black));
+            case "close" -> builder.then(name, 2 * reach,
+                    (transformer, image) -> transformer.close(image, element, black));
+            case "open" -> builder.then(name, 2 * reach,
+                    (transformer, image) -> transformer.open(image, element, black));
+            default -> builder.then(name, reach,
+                    (transformer, image) -> transformer.boundaryExtraction(image, element, black));
+        }
+    }
+
+    private static StructuringElement structuringElement(String shape, int size) {
+        return switch (shape) {
+            case "square" -> StructuringElement.rectangle(size, size);
+            case "hline" -> StructuringElement.line(size, 0);
+            case "vline" -> StructuringElement.line(size, 90);
+            case "diag45" -> StructuringElement.line(size, 45);
+            case "diag135" -> StructuringElement.line(size, 135);
+            case "diamond" -> StructuringElement.diamond(size / 2);
+            case "disc" -> StructuringElement.disc(size / 2);
+            default -> throw new IllegalArgumentException("Неизвестная форма структурного элемента: " + shape);
+        };
+    }
+
+    private static boolean isMaskColorBlack(String[] tokens) {
+        return tokens.length > 1 && "black".equals(tokens[tokens.length - 1]);
+    }
+
+    private static int intArgument(String[] tokens, int index) {
+        return Integer.parseInt(argument(tokens, index));
+    }
+
+    private static double doubleArgument(String[] tokens, int index) {
+        return Double.parseDouble(argument(tokens, index));
+    }
+
+    private static String argument(String[] tokens, int index) {
+        if (index >= tokens.length) {
+            throw new IllegalArgumentException("Операции " + tokens[0] + " не хватает параметра №" + index);
+        }
+        return tokens[index];
+    }
+}
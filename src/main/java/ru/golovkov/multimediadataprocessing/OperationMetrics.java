@@ -0,0 +1,203 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Замеры этапов обработки: каждый этап выдаёт событие JFR {@link ProcessingEvent} и
+ * попадает в кольцевой журнал последних замеров, который показывает окно метрик.
+ * <pre>
+ * ImageWrapper result = metrics.measure(Phase.TRANSFORM, "Медианный фильтр", "radius=2", w, h,
+ *         () -&gt; imageTransformer.createMedianFilter(image, 2));
+ * </pre>
+ * Если этапу нужен сам замер (например, размер известен только после декодирования),
+ * {@link #start} возвращает {@link Span} для try-with-resources.
+ * <p>
+ * Выделенная память считается по всем потокам JVM, потому что операции выполняются в пуле
+ * {@link TileScheduler}; если одновременно работают другие этапы, их выделения тоже попадут
+ * в замер.
+ */
+public final class OperationMetrics {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final int capacity;
+    private final ArrayDeque<Sample> samples;
+    private final List<Consumer<Sample>> listeners = new CopyOnWriteArrayList<>();
+
+    public OperationMetrics(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Размер журнала должен быть положительным: " + capacity);
+        }
+        this.capacity = capacity;
+        this.samples = new ArrayDeque<>(capacity);
+    }
+
+    public Span start(Phase phase, String operation, String parameters, int width, int height) {
+        return new Span(phase, operation, parameters, width, height);
+    }
+
+    /**
+     * Выполняет {@code step} как один замеренный этап и возвращает его результат.
+     */
+    public <T, E extends Exception> T measure(Phase phase, String operation, String parameters, int width,
+                                              int height, Step<T, E> step) throws E {
+        Span span = start(phase, operation, parameters, width, height);
+        try {
+            return step.get();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Выполняет {@code action} как один замеренный этап.
+     */
+    public <E extends Exception> void run(Phase phase, String operation, String parameters, int width, int height,
+                                          Action<E> action) throws E {
+        Span span = start(phase, operation, parameters, width, height);
+        try {
+            action.run();
+        } finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Последние замеры, от старых к новым.
+     */
+    public synchronized List<Sample> getRecentSamples() {
+        return new ArrayList<>(samples);
+    }
+
+    /**
+     * Слушатель вызывается в потоке, завершившем этап.
+     */
+    public void addListener(Consumer<Sample> listener) {
+        listeners.add(listener);
+    }
+
+    private void record(Sample sample) {
+        synchronized (this) {
+            if (samples.size() == capacity) {
+                samples.removeFirst();
+            }
+            samples.addLast(sample);
+        }
+        for (Consumer<Sample> listener : listeners) {
+            listener.accept(sample);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    public interface Step<T, E extends Exception> {
+
+        T get() throws E;
+    }
+
+    @FunctionalInterface
+    public interface Action<E extends Exception> {
+
+        void run() throws E;
+    }
+
+    public enum Phase {
+
+        LOAD("Загрузка"),
+        TRANSFORM("Преобразование"),
+        HISTOGRAM("Гистограмма"),
+        CHART("Диаграмма"),
+        SAVE("Сохранение");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Один замер; {@code allocatedBytes} равно -1, если JVM не считает выделения потоков.
+     */
+    public record Sample(Phase phase, String operation, String parameters, int width, int height,
+                         long durationNanos, long allocatedBytes) {
+
+        public double getMegapixelsPerSecond() {
+            return durationNanos > 0 ? (double) width * height / 1e6 / (durationNanos / 1e9) : 0;
+        }
+    }
+
+    /**
+     * Идущий этап; завершается при {@link #close()}.
+     */
+    public final class Span implements AutoCloseable {
+
+        private final ProcessingEvent event = new ProcessingEvent();
+        private final Phase phase;
+        private final String operation;
+        private final String parameters;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+        private int width;
+        private int height;
+
+        private Span(Phase phase, String operation, String parameters, int width, int height) {
+            this.phase = phase;
+            this.operation = operation;
+            this.parameters = parameters;
+            this.width = width;
+            this.height = height;
+            this.startAllocatedBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+            event.begin();
+        }
+
+        /**
+         * Размер, который стал известен только во время этапа, например после декодирования.
+         */
+        public void setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void close() {
+            event.end();
+            long durationNanos = System.nanoTime() - startNanos;
+            long endAllocatedBytes = allocatedBytes();
+            long allocated = startAllocatedBytes >= 0 && endAllocatedBytes >= 0
+                    ? endAllocatedBytes - startAllocatedBytes : -1;
+            if (event.shouldCommit()) {
+                event.phase = phase.getLabel();
+                event.operation = operation;
+                event.parameters = parameters;
+                event.width = width;
+                event.height = height;
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+            record(new Sample(phase, operation, parameters, width, height, durationNanos, allocated));
+        }
+    }
+}
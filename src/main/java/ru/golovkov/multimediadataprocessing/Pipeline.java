@@ -0,0 +1,365 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Цепочка операций, которая планируется целиком.
+ * <p>
+ * Соседние поэлементные операции сливаются в одну таблицу {@link PointOperation}, а
+ * операции над окрестностью (усреднение, свёртки с краем {@link BorderMode#CLAMP}) идут
+ * потоком через кольцевые буферы строк {@link RowStage}: полоса строк проходит все звенья
+ * подряд, и в память записывается только результат последнего. Операции, которым нужно всё
+ * изображение сразу (медиана, морфология, остов, свёртки с другими краями), материализуют
+ * вход; эквализация и метод Оцу читают гистограмму готового входа, а само отображение
+ * продолжает поток. Так цепочка из N шагов обычно делает один-два прохода по памяти.
+ * <p>
+ * Для растров вне кучи ({@link TiledRaster}) каждая плитка результата считается по своей
+ * плитке входа с полями ширины, равной сумме радиусов влияния шагов, поэтому результат
+ * совпадает с обработкой изображения целиком. Шаги с гистограммой делят цепочку на части,
+ * между которыми промежуточный растр записывается на диск; шаги без известного радиуса
+ * (например, остов) по плиткам не выполняются.
+ */
+public final class Pipeline {
+
+    private final List<Step> steps;
+
+    private Pipeline(List<Step> steps) {
+        this.steps = List.copyOf(steps);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public ImageWrapper apply(ImageTransformer imageTransformer, ImageWrapper imageWrapper) {
+        ImageWrapper current = imageWrapper;
+        List<Step> pending = new ArrayList<>();
+        for (Step step : steps) {
+            switch (step.kind) {
+                case STREAM -> append(pending, step);
+                case HISTOGRAM -> {
+                    current = stream(imageTransformer, current, pending);
+                    Histogram histogram = imageTransformer.getHistogramService()
+                            .histogramOf(current, imageTransformer.getScheduler());
+                    append(pending, step.fromHistogram.apply(histogram));
+                }
+                case MATERIALIZED -> {
+                    current = stream(imageTransformer, current, pending);
+                    current = step.operation.apply(imageTransformer, current);
+                }
+            }
+        }
+        return stream(imageTransformer, current, pending);
+    }
+
+    /**
+     * Число полных проходов с записью в память, не считая чтения гистограмм.
+     */
+    public int getPassCount() {
+        int passes = 0;
+        boolean streaming = false;
+        for (Step step : steps) {
+            if (step.kind == Kind.MATERIALIZED) {
+                passes += streaming ? 2 : 1;
+                streaming = false;
+            } else {
+                if (step.kind == Kind.HISTOGRAM && streaming) {
+                    passes++;
+                }
+                streaming = true;
+            }
+        }
+        return streaming ? passes + 1 : passes;
+    }
+
+    /**
+     * Выполняет цепочку по плиткам; результат — новый временный растр, который закрывает
+     * вызывающий.
+     */
+    public TiledRaster apply(ImageTransformer imageTransformer, TiledRaster source) throws IOException {
+        for (Step step : steps) {
+            if (step.halo < 0) {
+                throw new IllegalArgumentException("Операция «" + step.name + "» требует всего изображения"
+                        + " и не выполняется по плиткам");
+            }
+        }
+        TiledRaster current = source;
+        List<Step> pending = new ArrayList<>();
+        try {
+            for (Step step : steps) {
+                if (step.kind == Kind.HISTOGRAM) {
+                    current = replace(source, current, streamTiles(imageTransformer, current, pending));
+                    Histogram histogram = current.histogram(imageTransformer.getScheduler());
+                    append(pending, step.fromHistogram.apply(histogram));
+                } else {
+                    append(pending, step);
+                }
+            }
+            return replace(source, current, streamTiles(imageTransformer, current, pending));
+        } catch (IOException | RuntimeException e) {
+            if (current != source) {
+                current.close();
+            }
+            throw e;
+        }
+    }
+
+    private static TiledRaster replace(TiledRaster source, TiledRaster current, TiledRaster next) throws IOException {
+        if (current != source && current != next) {
+            current.close();
+        }
+        return next;
+    }
+
+    private static TiledRaster streamTiles(ImageTransformer imageTransformer, TiledRaster source, List<Step> stages)
+            throws IOException {
+        if (stages.isEmpty()) {
+            return source;
+        }
+        Pipeline segment = new Pipeline(stages);
+        stages.clear();
+        int halo = segment.steps.stream().mapToInt(Step::halo).sum();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        TiledRaster result = TiledRaster.createTemporary(source.getTemporaryDirectory(), width, height);
+        ImageTransformer tileTransformer = imageTransformer.withScheduler(TileScheduler.serial());
+        try {
+            imageTransformer.getScheduler().forEachChunk(result.getTileCount(), 1, (from, to) -> {
+                for (int index = from; index < to; index++) {
+                    Rectangle tile = result.getTileBounds(index);
+                    int fromX = Math.max(0, tile.x - halo);
+                    int fromY = Math.max(0, tile.y - halo);
+                    int toX = Math.min(width, tile.x + tile.width + halo);
+                    int toY = Math.min(height, tile.y + tile.height + halo);
+                    ImageWrapper region = source.read(fromX, fromY, toX - fromX, toY - fromY);
+                    ImageWrapper processed = segment.apply(tileTransformer, region);
+                    result.write(processed, tile.x - fromX, tile.y - fromY, tile.x, tile.y, tile.width, tile.height);
+                }
+            });
+        } catch (RuntimeException e) {
+            result.close();
+            throw e;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return steps.stream().map(Step::name).collect(Collectors.joining(" → "));
+    }
+
+    private static void append(List<Step> pending, Step step) {
+        if (step.point != null && !pending.isEmpty() && pending.getLast().point != null) {
+            Step previous = pending.removeLast();
+            pending.add(Step.point(previous.name + " + " + step.name, previous.point.andThen(step.point)));
+        } else {
+            pending.add(step);
+        }
+    }
+
+    private static ImageWrapper stream(ImageTransformer imageTransformer, ImageWrapper imageWrapper, List<Step> stages) {
+        if (stages.isEmpty()) {
+            return imageWrapper;
+        }
+        List<Step> chain = List.copyOf(stages);
+        stages.clear();
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        ImageWrapper result = new ImageWrapper(width, height);
+        int[] target = result.getPixels();
+        imageTransformer.getScheduler().forEachRowBand(height, (fromY, toY) -> {
+            int count = chain.size();
+            RowStage[] rowStages = new RowStage[count];
+            for (int k = 0; k < count; k++) {
+                rowStages[k] = chain.get(k).stage.create(width, height);
+            }
+            int from = fromY;
+            int to = toY;
+            for (int k = count - 1; k >= 0; k--) {
+                rowStages[k].start(from, to, k + 1 < count ? rowStages[k + 1] : null, target);
+                from = rowStages[k].inputFrom(from);
+                to = rowStages[k].inputTo(to);
+            }
+            for (int y = from; y < to; y++) {
+                rowStages[0].accept(y, source, y * width);
+            }
+        });
+        return result;
+    }
+
+    private enum Kind {
+        STREAM,
+        HISTOGRAM,
+        MATERIALIZED
+    }
+
+    @FunctionalInterface
+    private interface StageFactory {
+
+        RowStage create(int width, int height);
+    }
+
+    /**
+     * Шаг плана; {@code halo} — на сколько пикселов результат зависит от соседей,
+     * отрицательное значение означает зависимость от всего изображения.
+     */
+    private record Step(String name, Kind kind, int halo, StageFactory stage, PointOperation point,
+                        Function<Histogram, Step> fromHistogram,
+                        BiFunction<ImageTransformer, ImageWrapper, ImageWrapper> operation) {
+
+        static Step stream(String name, int halo, StageFactory stage) {
+            return new Step(name, Kind.STREAM, halo, stage, null, null, null);
+        }
+
+        static Step point(String name, PointOperation point) {
+            return new Step(name, Kind.STREAM, 0, (width, height) -> new RowStage.Point(width, height, point),
+                    point, null, null);
+        }
+
+        static Step histogram(String name, Function<Histogram, Step> fromHistogram) {
+            return new Step(name, Kind.HISTOGRAM, 0, null, null, fromHistogram, null);
+        }
+
+        static Step materialized(String name, int halo,
+                                 BiFunction<ImageTransformer, ImageWrapper, ImageWrapper> operation) {
+            return new Step(name, Kind.MATERIALIZED, halo, null, null, null, operation);
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Step> steps = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder point(String name, PointOperation operation) {
+            steps.add(Step.point(name, operation));
+            return this;
+        }
+
+        public Builder negative() {
+            return point("негатив", PointOperation.negative());
+        }
+
+        public Builder powerLaw(double gamma) {
+            return point("гамма " + gamma, PointOperation.powerLaw(gamma));
+        }
+
+        public Builder brightnessRangeCut(int minBrightness, int maxBrightness) {
+            return point("вырезание " + minBrightness + ".." + maxBrightness,
+                    PointOperation.brightnessRangeCut(minBrightness, maxBrightness));
+        }
+
+        public Builder brightnessRangeCut2(int minBrightness, int maxBrightness) {
+            return point("вырезание 2 " + minBrightness + ".." + maxBrightness,
+                    PointOperation.brightnessRangeCut2(minBrightness, maxBrightness));
+        }
+
+        public Builder threshold(int threshold) {
+            return point("порог " + threshold, PointOperation.threshold(255 - threshold));
+        }
+
+        public Builder averageFilter(int radius) {
+            if (radius < 1) {
+                throw new IllegalArgumentException("Радиус фильтра должен быть положительным: " + radius);
+            }
+            steps.add(Step.stream("среднее r=" + radius, radius,
+                    (width, height) -> new RowStage.Box(width, height, radius)));
+            return this;
+        }
+
+        public Builder convolve(ConvolutionKernel kernel, BorderMode borderMode) {
+            if (borderMode != BorderMode.CLAMP) {
+                return then("свёртка " + borderMode, borderMode == BorderMode.WRAP ? -1 : halo(kernel),
+                        (transformer, image) -> transformer.convolve(image, kernel, borderMode));
+            }
+            steps.add(Step.stream("свёртка", halo(kernel), (width, height) ->
+                    new RowStage.Convolve(width, height, RowStage.Convolve.Output.CLAMPED, kernel)));
+            return this;
+        }
+
+        public Builder gradientMagnitude(ConvolutionKernel kernelX, ConvolutionKernel kernelY, BorderMode borderMode) {
+            if (borderMode != BorderMode.CLAMP) {
+                int halo = Math.max(halo(kernelX), halo(kernelY));
+                return then("градиент " + borderMode, borderMode == BorderMode.WRAP ? -1 : halo,
+                        (transformer, image) -> transformer.createGradientMagnitude(image, kernelX, kernelY, borderMode));
+            }
+            steps.add(Step.stream("градиент", Math.max(halo(kernelX), halo(kernelY)), (width, height) ->
+                    new RowStage.Convolve(width, height, RowStage.Convolve.Output.MAGNITUDE, kernelX, kernelY)));
+            return this;
+        }
+
+        public Builder robertsGradient() {
+            return gradientMagnitude(ImageTransformer.ROBERTS_X, ImageTransformer.ROBERTS_Y, BorderMode.CLAMP);
+        }
+
+        public Builder sobelGradient() {
+            steps.add(Step.stream("Собель", 1, (width, height) -> new RowStage.Convolve(width, height,
+                    RowStage.Convolve.Output.GRAY_MAGNITUDE, ImageTransformer.SOBEL_X, ImageTransformer.SOBEL_Y)));
+            return this;
+        }
+
+        public Builder laplacian90() {
+            return convolve(ImageTransformer.LAPLACIAN_90, BorderMode.CLAMP);
+        }
+
+        public Builder laplacian45() {
+            return convolve(ImageTransformer.LAPLACIAN_45, BorderMode.CLAMP);
+        }
+
+        public Builder histogramEqualization() {
+            steps.add(Step.histogram("эквализация", histogram -> {
+                int[] table = ImageTransformer.equalizationTable(histogram);
+                return Step.stream("эквализация", 0, (width, height) -> new RowStage.GrayMap(width, height, table));
+            }));
+            return this;
+        }
+
+        public Builder otsuThreshold() {
+            steps.add(Step.histogram("Оцу", histogram ->
+                    Step.point("Оцу", PointOperation.threshold(ImageTransformer.otsuThreshold(histogram)))));
+            return this;
+        }
+
+        /**
+         * Операция, которой нужно всё изображение сразу: вход перед ней материализуется,
+         * а по плиткам она не выполняется.
+         */
+        public Builder then(String name, BiFunction<ImageTransformer, ImageWrapper, ImageWrapper> operation) {
+            return then(name, -1, operation);
+        }
+
+        /**
+         * То же, но для операции, результат которой в пикселе зависит только от входа в
+         * пределах {@code halo} пикселов: такую операцию можно выполнять по плиткам.
+         */
+        public Builder then(String name, int halo, BiFunction<ImageTransformer, ImageWrapper, ImageWrapper> operation) {
+            steps.add(Step.materialized(name, halo, operation));
+            return this;
+        }
+
+        private static int halo(ConvolutionKernel kernel) {
+            return Math.max(Math.max(kernel.getAnchorX(), kernel.getWidth() - 1 - kernel.getAnchorX()),
+                    Math.max(kernel.getAnchorY(), kernel.getHeight() - 1 - kernel.getAnchorY()));
+        }
+
+        public Pipeline build() {
+            if (steps.isEmpty()) {
+                throw new IllegalArgumentException("Не задано ни одной операции");
+            }
+            List<Step> planned = new ArrayList<>();
+            for (Step step : steps) {
+                append(planned, step);
+            }
+            return new Pipeline(planned);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Потоковый декодер PNG, обратный {@link PngEncoder}: данные IDAT распаковываются одним
+ * {@link Inflater} по мере чтения, строки снимают фильтр по одной и переводятся в ARGB,
+ * поэтому файл читается за один проход и в памяти держатся только две строки.
+ * <p>
+ * Поддерживаются все типы цвета и глубины без чересстрочной развёртки, включая палитру и
+ * прозрачность из tRNS; 16-битные отсчёты округляются до 8 бит. Серый переводится как есть,
+ * без преобразования цветового пространства. Контрольные суммы чанков проверяются.
+ * Изображение с развёрткой Adam7 построчно не читается: для него {@link #isInterlaced()}.
+ */
+final class PngDecoder implements AutoCloseable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int GRAY_ALPHA = 4;
+    private static final int RGB_ALPHA = 6;
+
+    private final DataInputStream input;
+    private final Inflater inflater = new Inflater();
+    private final CRC32 crc32 = new CRC32();
+    private final byte[] compressed = new byte[1 << 16];
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final boolean interlaced;
+    private final int bytesPerPixel;
+    private final int lineBytes;
+    private int[] palette;
+    private int transparentKey = -1;
+    private int transparentRed = -1;
+    private int transparentGreen = -1;
+    private int transparentBlue = -1;
+    private byte[] previous;
+    private byte[] current;
+    private int chunkRemaining;
+    private int nextRow;
+
+    private PngDecoder(InputStream inputStream) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream, 1 << 16));
+        byte[] signature = new byte[SIGNATURE.length];
+        input.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) {
+            throw new IOException("Это не PNG");
+        }
+        byte[] header = readChunk("IHDR");
+        DataInputStream headerData = new DataInputStream(new ByteArrayInputStream(header));
+        this.width = headerData.readInt();
+        this.height = headerData.readInt();
+        this.bitDepth = headerData.readUnsignedByte();
+        this.colorType = headerData.readUnsignedByte();
+        headerData.readUnsignedByte();
+        headerData.readUnsignedByte();
+        this.interlaced = headerData.readUnsignedByte() != 0;
+        int channels = switch (colorType) {
+            case GRAY, PALETTE -> 1;
+            case GRAY_ALPHA -> 2;
+            case RGB -> 3;
+            case RGB_ALPHA -> 4;
+            default -> throw new IOException("Неизвестный тип цвета PNG: " + colorType);
+        };
+        if (width < 1 || height < 1 || Integer.bitCount(bitDepth) != 1 || bitDepth > 16
+                || bitDepth < 8 && colorType != GRAY && colorType != PALETTE) {
+            throw new IOException("Недопустимый заголовок PNG: " + width + "x" + height + ", глубина " + bitDepth);
+        }
+        int bitsPerPixel = channels * bitDepth;
+        this.bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        this.lineBytes = (int) (((long) width * bitsPerPixel + 7) / 8);
+        readUntilImageData();
+    }
+
+    static PngDecoder open(Path file) throws IOException {
+        InputStream inputStream = Files.newInputStream(file);
+        try {
+            return new PngDecoder(inputStream);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    static boolean isPng(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return Arrays.equals(inputStream.readNBytes(SIGNATURE.length), SIGNATURE);
+        }
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    boolean isInterlaced() {
+        return interlaced;
+    }
+
+    /**
+     * Декодирует следующие {@code rows} строк в {@code pixels} подряд.
+     */
+    void readRows(int[] pixels, int rows) throws IOException {
+        if (interlaced) {
+            throw new IOException("Построчное чтение PNG с чересстрочной развёрткой не поддерживается");
+        }
+        if (nextRow + rows > height) {
+            throw new IllegalArgumentException("Строк в изображении меньше, чем запрошено");
+        }
+        if (current == null) {
+            previous = new byte[lineBytes];
+            current = new byte[lineBytes];
+        }
+        for (int row = 0; row < rows; row++) {
+            int filter = inflateByte();
+            inflateFully(current);
+            unfilter(filter, current, previous);
+            convert(current, pixels, row * width);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            nextRow++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        input.close();
+    }
+
+    /**
+     * Читает чанки до первого IDAT, запоминая палитру и прозрачность.
+     */
+    private void readUntilImageData() throws IOException {
+        while (true) {
+            int length = input.readInt();
+            String type = readType();
+            if (type.equals("IDAT")) {
+                chunkRemaining = length;
+                return;
+            }
+            byte[] data = readChunkData(length);
+            switch (type) {
+                case "PLTE" -> {
+                    palette = new int[data.length / 3];
+                    for (int i = 0; i < palette.length; i++) {
+                        palette[i] = ImageTransformer.argb(0xFF, data[3 * i] & 0xFF, data[3 * i + 1] & 0xFF,
+                                data[3 * i + 2] & 0xFF);
+                    }
+                }
+                case "tRNS" -> readTransparency(data);
+                case "IEND" -> throw new IOException("В PNG нет данных изображения");
+                default -> {
+                    if (Character.isUpperCase(type.charAt(0))) {
+                        throw new IOException("Неизвестный обязательный чанк PNG: " + type);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readTransparency(byte[] data) throws IOException {
+        switch (colorType) {
+            case PALETTE -> {
+                if (palette == null) {
+                    throw new IOException("Чанк tRNS в PNG идёт раньше палитры");
+                }
+                for (int i = 0; i < Math.min(data.length, palette.length); i++) {
+                    palette[i] = (palette[i] & 0x00FFFFFF) | (data[i] & 0xFF) << 24;
+                }
+            }
+            case GRAY -> transparentKey = (data[0] & 0xFF) << 8 | data[1] & 0xFF;
+            case RGB -> {
+                transparentRed = (data[0] & 0xFF) << 8 | data[1] & 0xFF;
+                transparentGreen = (data[2] & 0xFF) << 8 | data[3] & 0xFF;
+                transparentBlue = (data[4] & 0xFF) << 8 | data[5] & 0xFF;
+            }
+            default -> {
+            }
+        }
+    }
+
+    private byte[] readChunk(String expectedType) throws IOException {
+        int length = input.readInt();
+        String type = readType();
+        if (!type.equals(expectedType)) {
+            throw new IOException("Ожидался чанк PNG " + expectedType + ", а встречен " + type);
+        }
+        return readChunkData(length);
+    }
+
+    private String readType() throws IOException {
+        byte[] type = new byte[4];
+        input.readFully(type);
+        crc32.reset();
+        crc32.update(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private byte[] readChunkData(int length) throws IOException {
+        byte[] data = new byte[length];
+        input.readFully(data);
+        crc32.update(data);
+        checkCrc();
+        return data;
+    }
+
+    private void checkCrc() throws IOException {
+        if ((int) crc32.getValue() != input.readInt()) {
+            throw new IOException("Повреждён чанк PNG: не совпадает контрольная сумма");
+        }
+    }
+
+    private int inflateByte() throws IOException {
+        byte[] single = new byte[1];
+        inflateFully(single);
+        return single[0] & 0xFF;
+    }
+
+    private void inflateFully(byte[] target) throws IOException {
+        int offset = 0;
+        try {
+            while (offset < target.length) {
+                int length = inflater.inflate(target, offset, target.length - offset);
+                offset += length;
+                if (length == 0) {
+                    if (inflater.finished() || inflater.needsDictionary()) {
+                        throw new EOFException("Данные PNG закончились раньше изображения");
+                    }
+                    if (inflater.needsInput()) {
+                        feedInflater();
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждены сжатые данные PNG", e);
+        }
+    }
+
+    /**
+     * Передаёт распаковщику следующую порцию данных IDAT, переходя к следующему чанку IDAT,
+     * когда текущий прочитан.
+     */
+    private void feedInflater() throws IOException {
+        while (chunkRemaining == 0) {
+            checkCrc();
+            int length = input.readInt();
+            if (!readType().equals("IDAT")) {
+                throw new EOFException("Данные PNG закончились раньше изображения");
+            }
+            chunkRemaining = length;
+        }
+        int length = Math.min(chunkRemaining, compressed.length);
+        input.readFully(compressed, 0, length);
+        crc32.update(compressed, 0, length);
+        chunkRemaining -= length;
+        inflater.setInput(compressed, 0, length);
+    }
+
+    private void unfilter(int filter, byte[] line, byte[] above) throws IOException {
+        int bpp = bytesPerPixel;
+        switch (filter) {
+            case 0 -> {
+            }
+            case 1 -> {
+                for (int i = bpp; i < line.length; i++) {
+                    line[i] += line[i - bpp];
+                }
+            }
+            case 2 -> {
+                for (int i = 0; i < line.length; i++) {
+                    line[i] += above[i];
+                }
+            }
+            case 3 -> {
+                for (int i = 0; i < line.length; i++) {
+                    int left = i >= bpp ? line[i - bpp] & 0xFF : 0;
+                    line[i] += (byte) ((left + (above[i] & 0xFF)) >>> 1);
+                }
+            }
+            case 4 -> {
+                for (int i = 0; i < line.length; i++) {
+                    int left = i >= bpp ? line[i - bpp] & 0xFF : 0;
+                    int upLeft = i >= bpp ? above[i - bpp] & 0xFF : 0;
+                    line[i] += (byte) paeth(left, above[i] & 0xFF, upLeft);
+                }
+            }
+            default -> throw new IOException("Неизвестный фильтр строки PNG: " + filter);
+        }
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return distanceUp <= distanceUpLeft ? up : upLeft;
+    }
+
+    private void convert(byte[] line, int[] pixels, int offset) throws IOException {
+        if (bitDepth < 8) {
+            convertPacked(line, pixels, offset);
+            return;
+        }
+        boolean wide = bitDepth == 16;
+        int step = wide ? 2 : 1;
+        int position = 0;
+        for (int x = 0; x < width; x++) {
+            int argb;
+            switch (colorType) {
+                case GRAY -> {
+                    int gray = sample(line, position, wide);
+                    position += step;
+                    int value = to8Bits(gray, wide);
+                    argb = ImageTransformer.argb(gray == transparentKey ? 0 : 0xFF, value, value, value);
+                }
+                case GRAY_ALPHA -> {
+                    int value = to8Bits(sample(line, position, wide), wide);
+                    int alpha = to8Bits(sample(line, position + step, wide), wide);
+                    position += 2 * step;
+                    argb = ImageTransformer.argb(alpha, value, value, value);
+                }
+                case RGB -> {
+                    int red = sample(line, position, wide);
+                    int green = sample(line, position + step, wide);
+                    int blue = sample(line, position + 2 * step, wide);
+                    position += 3 * step;
+                    boolean transparent = red == transparentRed && green == transparentGreen && blue == transparentBlue;
+                    argb = ImageTransformer.argb(transparent ? 0 : 0xFF, to8Bits(red, wide), to8Bits(green, wide),
+                            to8Bits(blue, wide));
+                }
+                case RGB_ALPHA -> {
+                    argb = ImageTransformer.argb(to8Bits(sample(line, position + 3 * step, wide), wide),
+                            to8Bits(sample(line, position, wide), wide),
+                            to8Bits(sample(line, position + step, wide), wide),
+                            to8Bits(sample(line, position + 2 * step, wide), wide));
+                    position += 4 * step;
+                }
+                default -> argb = paletteColor(line[position++] & 0xFF);
+            }
+            pixels[offset + x] = argb;
+        }
+    }
+
+    /**
+     * Серый или палитра глубиной 1, 2 или 4 бита: несколько пикселов в байте, старшие биты первыми.
+     */
+    private void convertPacked(byte[] line, int[] pixels, int offset) throws IOException {
+        int mask = (1 << bitDepth) - 1;
+        int perByte = 8 / bitDepth;
+        for (int x = 0; x < width; x++) {
+            int shift = 8 - bitDepth * (x % perByte + 1);
+            int sample = (line[x / perByte] >> shift) & mask;
+            if (colorType == PALETTE) {
+                pixels[offset + x] = paletteColor(sample);
+            } else {
+                int value = sample * 255 / mask;
+                pixels[offset + x] = ImageTransformer.argb(sample == transparentKey ? 0 : 0xFF, value, value, value);
+            }
+        }
+    }
+
+    private int paletteColor(int index) throws IOException {
+        if (palette == null || index >= palette.length) {
+            throw new IOException("Индекс " + index + " вне палитры PNG");
+        }
+        return palette[index];
+    }
+
+    private static int sample(byte[] line, int position, boolean wide) {
+        return wide ? (line[position] & 0xFF) << 8 | line[position + 1] & 0xFF : line[position] & 0xFF;
+    }
+
+    private static int to8Bits(int sample, boolean wide) {
+        return wide ? (sample * 255 + 32767) / 65535 : sample;
+    }
+}
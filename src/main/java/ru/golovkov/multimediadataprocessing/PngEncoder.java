@@ -0,0 +1,311 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Кодировщик PNG, который фильтрует и сжимает блоки строк параллельно, как pigz.
+ * <p>
+ * Каждый блок сжимается своим {@link Deflater} без обёртки zlib и завершается SYNC_FLUSH,
+ * поэтому сжатые блоки выровнены по байту и просто склеиваются в один поток; контрольная
+ * сумма Adler-32 всего потока собирается из сумм блоков. Каждый блок пишется отдельным
+ * чанком IDAT. Фильтр строки выбирается по минимальной сумме модулей, как в libpng.
+ * Если все пикселы непрозрачны, альфа-канал не пишется. Уровень сжатия по умолчанию 4,
+ * как у PNG-писателя ImageIO.
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int ADLER_BASE = 65521;
+    private static final int DEFAULT_LEVEL = 4;
+    private static final int BLOCKS_PER_WORKER = 4;
+
+    private final TileScheduler scheduler;
+    private final int level;
+
+    PngEncoder(TileScheduler scheduler) {
+        this(scheduler, DEFAULT_LEVEL);
+    }
+
+    PngEncoder(TileScheduler scheduler, int level) {
+        this.scheduler = scheduler;
+        this.level = level;
+    }
+
+    /**
+     * Число проходов планировщика при записи: проверка прозрачности и по одному на волну
+     * блоков. Оценка сверху: считается, что альфа-канал пишется.
+     */
+    int getPassCount(int width, int height) {
+        int rowsPerBlock = Math.max(1, BLOCK_BYTES / (1 + width * 4));
+        int blockCount = Math.ceilDiv(height, rowsPerBlock);
+        return 1 + Math.ceilDiv(blockCount, scheduler.getParallelism() * BLOCKS_PER_WORKER);
+    }
+
+    void write(ImageWrapper imageWrapper, OutputStream outputStream) throws IOException {
+        int width = imageWrapper.getWidth();
+        int[] pixels = imageWrapper.getPixels();
+        write(width, imageWrapper.getHeight(),
+                (fromY, toY) -> Arrays.copyOfRange(pixels, fromY * width, toY * width), outputStream);
+    }
+
+    void write(TiledRaster raster, OutputStream outputStream) throws IOException {
+        int width = raster.getWidth();
+        write(width, raster.getHeight(), (fromY, toY) -> raster.read(0, fromY, width, toY - fromY).getPixels(),
+                outputStream);
+    }
+
+    /**
+     * Блоки сжимаются волнами по несколько на поток и записываются по порядку, поэтому в
+     * памяти одновременно находится лишь одна волна, даже если изображение больше памяти.
+     */
+    private void write(int width, int height, RowSource source, OutputStream outputStream) throws IOException {
+        int channels = isOpaque(width, height, source) ? 3 : 4;
+        int rowBytes = 1 + width * channels;
+        int rowsPerBlock = Math.max(1, BLOCK_BYTES / rowBytes);
+        int blockCount = Math.ceilDiv(height, rowsPerBlock);
+        int wave = scheduler.getParallelism() * BLOCKS_PER_WORKER;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+        out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);
+        headerData.writeByte(channels == 4 ? 6 : 2);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        headerData.writeByte(0);
+        writeChunk(out, "IHDR", header.toByteArray());
+        writeChunk(out, "IDAT", new byte[]{0x78, (byte) 0x9C});
+
+        long checksum = 1;
+        for (int firstBlock = 0; firstBlock < blockCount; firstBlock += wave) {
+            int waveStart = firstBlock;
+            int waveSize = Math.min(wave, blockCount - waveStart);
+            byte[][] compressed = new byte[waveSize][];
+            long[] checksums = new long[waveSize];
+            scheduler.forEachChunk(waveSize, 1, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    int block = waveStart + i;
+                    int fromY = block * rowsPerBlock;
+                    int toY = Math.min(height, fromY + rowsPerBlock);
+                    int firstRow = Math.max(0, fromY - 1);
+                    byte[] filtered = filter(source.rows(firstRow, toY), width, channels,
+                            fromY - firstRow, toY - firstRow);
+                    Adler32 adler32 = new Adler32();
+                    adler32.update(filtered);
+                    checksums[i] = adler32.getValue();
+                    compressed[i] = deflate(filtered, block == blockCount - 1);
+                }
+            });
+            for (int i = 0; i < waveSize; i++) {
+                int fromY = (waveStart + i) * rowsPerBlock;
+                int rows = Math.min(height, fromY + rowsPerBlock) - fromY;
+                checksum = combineAdler32(checksum, checksums[i], (long) rows * rowBytes);
+                writeChunk(out, "IDAT", compressed[i]);
+            }
+        }
+        writeChunk(out, "IDAT", new byte[]{
+                (byte) (checksum >>> 24), (byte) (checksum >>> 16), (byte) (checksum >>> 8), (byte) checksum});
+        writeChunk(out, "IEND", new byte[0]);
+        out.flush();
+    }
+
+    private boolean isOpaque(int width, int height, RowSource source) {
+        int rowsPerBlock = Math.max(1, BLOCK_BYTES / (4 * width));
+        AtomicBoolean opaque = new AtomicBoolean(true);
+        scheduler.forEachChunk(Math.ceilDiv(height, rowsPerBlock), 1, (fromBlock, toBlock) -> {
+            for (int block = fromBlock; block < toBlock && opaque.get(); block++) {
+                int fromY = block * rowsPerBlock;
+                for (int argb : source.rows(fromY, Math.min(height, fromY + rowsPerBlock))) {
+                    if (argb >>> 24 != 0xFF) {
+                        opaque.set(false);
+                        break;
+                    }
+                }
+            }
+        });
+        return opaque.get();
+    }
+
+    private static byte[] filter(int[] pixels, int width, int channels, int fromY, int toY) {
+        int lineBytes = width * channels;
+        byte[] filtered = new byte[(toY - fromY) * (lineBytes + 1)];
+        byte[] previous = new byte[lineBytes];
+        byte[] current = new byte[lineBytes];
+        byte[][] candidates = new byte[5][lineBytes];
+        if (fromY > 0) {
+            unpack(pixels, width, channels, fromY - 1, previous);
+        }
+        int position = 0;
+        for (int y = fromY; y < toY; y++) {
+            unpack(pixels, width, channels, y, current);
+            int best = 0;
+            long bestSum = Long.MAX_VALUE;
+            for (int type = 0; type < candidates.length; type++) {
+                long sum = applyFilter(type, current, previous, channels, candidates[type]);
+                if (sum < bestSum) {
+                    bestSum = sum;
+                    best = type;
+                }
+            }
+            filtered[position++] = (byte) best;
+            System.arraycopy(candidates[best], 0, filtered, position, lineBytes);
+            position += lineBytes;
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return filtered;
+    }
+
+    private static void unpack(int[] pixels, int width, int channels, int y, byte[] line) {
+        int offset = y * width;
+        int position = 0;
+        for (int x = 0; x < width; x++) {
+            int argb = pixels[offset + x];
+            line[position++] = (byte) (argb >> 16);
+            line[position++] = (byte) (argb >> 8);
+            line[position++] = (byte) argb;
+            if (channels == 4) {
+                line[position++] = (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    private static long applyFilter(int type, byte[] line, byte[] previous, int bpp, byte[] out) {
+        int length = line.length;
+        long sum = 0;
+        switch (type) {
+            case 0 -> {
+                for (int i = 0; i < length; i++) {
+                    out[i] = line[i];
+                    sum += Math.abs(line[i]);
+                }
+            }
+            case 1 -> {
+                for (int i = 0; i < length; i++) {
+                    byte value = (byte) (line[i] - (i >= bpp ? line[i - bpp] : 0));
+                    out[i] = value;
+                    sum += Math.abs(value);
+                }
+            }
+            case 2 -> {
+                for (int i = 0; i < length; i++) {
+                    byte value = (byte) (line[i] - previous[i]);
+                    out[i] = value;
+                    sum += Math.abs(value);
+                }
+            }
+            case 3 -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? line[i - bpp] & 0xFF : 0;
+                    byte value = (byte) (line[i] - ((left + (previous[i] & 0xFF)) >>> 1));
+                    out[i] = value;
+                    sum += Math.abs(value);
+                }
+            }
+            default -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? line[i - bpp] & 0xFF : 0;
+                    int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    byte value = (byte) (line[i] - paeth(left, previous[i] & 0xFF, upLeft));
+                    out[i] = value;
+                    sum += Math.abs(value);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceUp = Math.abs(estimate - up);
+        int distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return distanceUp <= distanceUpLeft ? up : upLeft;
+    }
+
+    private byte[] deflate(byte[] data, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[1 << 16];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, length);
+                } while (length == buffer.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Сумма Adler-32 склейки двух последовательностей по их суммам (adler32_combine из zlib).
+     */
+    static long combineAdler32(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = remainder * sum1 % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((first >>> 16) & 0xFFFF) + ((second >>> 16) & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc32 = new CRC32();
+        crc32.update(typeBytes);
+        crc32.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc32.getValue());
+    }
+
+    @FunctionalInterface
+    private interface RowSource {
+
+        /**
+         * Пикселы строк [fromY, toY) подряд в новом массиве.
+         */
+        int[] rows(int fromY, int toY);
+    }
+}
@@ -0,0 +1,195 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Поканальное точечное преобразование, скомпилированное в таблицы на 256 значений.
+ * <p>
+ * Каждая ступень состоит из таблицы значений канала и необязательной таблицы классов:
+ * класс пиксела — это OR флагов его трёх каналов, и по классу выбирается либо значение
+ * из таблицы, либо постоянный цвет. Так описываются негатив, степенное преобразование,
+ * вырезание диапазона яркостей и пороговая обработка. {@link #andThen} сливает соседние
+ * ступени в одну таблицу, если хотя бы одна из них не классифицирует пикселы; в любом
+ * случае вся цепочка применяется за один проход по растру.
+ */
+public final class PointOperation {
+
+    private static final int LEVELS = 256;
+    private static final int KEEP = -1;
+    private static final int BELOW = 1;
+    private static final int ABOVE = 2;
+
+    private final List<Stage> stages;
+
+    private PointOperation(List<Stage> stages) {
+        this.stages = List.copyOf(stages);
+    }
+
+    public static PointOperation identity() {
+        return map(IntUnaryOperator.identity());
+    }
+
+    public static PointOperation map(IntUnaryOperator channelFunction) {
+        byte[] values = new byte[LEVELS];
+        for (int value = 0; value < LEVELS; value++) {
+            values[value] = (byte) Math.clamp(channelFunction.applyAsInt(value), 0, 255);
+        }
+        return new PointOperation(List.of(new Stage(values, null, null, false)));
+    }
+
+    public static PointOperation negative() {
+        return map(value -> 255 - value);
+    }
+
+    public static PointOperation powerLaw(double gamma) {
+        return map(value -> (int) Math.round(Math.pow(value / 255.0, gamma) * 255));
+    }
+
+    public static PointOperation brightnessRangeCut(int minBrightness, int maxBrightness) {
+        byte[] classes = classify(value -> value < minBrightness || value > maxBrightness ? BELOW : 0);
+        return new PointOperation(List.of(new Stage(identityValues(), classes, new int[]{KEEP, 0x000000, KEEP, 0x000000}, false)));
+    }
+
+    public static PointOperation brightnessRangeCut2(int minBrightness, int maxBrightness) {
+        byte[] classes = classify(value -> (value < minBrightness ? BELOW : 0) | (value > maxBrightness ? ABOVE : 0));
+        return new PointOperation(List.of(new Stage(identityValues(), classes, new int[]{KEEP, 0x000000, 0xFFFFFF, 0x000000}, false)));
+    }
+
+    public static PointOperation threshold(int threshold) {
+        byte[] classes = classify(value -> value >= threshold ? ABOVE : 0);
+        return new PointOperation(List.of(new Stage(identityValues(), classes, new int[]{0x000000, 0x000000, 0xFFFFFF, 0xFFFFFF}, true)));
+    }
+
+    public PointOperation andThen(PointOperation next) {
+        List<Stage> fused = new ArrayList<>(stages);
+        for (Stage stage : next.stages) {
+            Stage last = fused.getLast();
+            Stage merged = last.andThen(stage);
+            if (merged != null) {
+                fused.set(fused.size() - 1, merged);
+            } else {
+                fused.add(stage);
+            }
+        }
+        return new PointOperation(fused);
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public int apply(int argb) {
+        for (Stage stage : stages) {
+            argb = stage.apply(argb);
+        }
+        return argb;
+    }
+
+    public void apply(int[] source, int[] target, int fromIndex, int toIndex) {
+        if (stages.size() == 1) {
+            stages.getFirst().apply(source, target, fromIndex, toIndex);
+            return;
+        }
+        for (int i = fromIndex; i < toIndex; i++) {
+            target[i] = apply(source[i]);
+        }
+    }
+
+    private static byte[] identityValues() {
+        byte[] values = new byte[LEVELS];
+        for (int value = 0; value < LEVELS; value++) {
+            values[value] = (byte) value;
+        }
+        return values;
+    }
+
+    private static byte[] classify(IntUnaryOperator classFunction) {
+        byte[] classes = new byte[LEVELS];
+        for (int value = 0; value < LEVELS; value++) {
+            classes[value] = (byte) classFunction.applyAsInt(value);
+        }
+        return classes;
+    }
+
+    private static final class Stage {
+
+        private final byte[] values;
+        private final byte[] classes;
+        private final int[] outcomes;
+        private final boolean opaque;
+
+        Stage(byte[] values, byte[] classes, int[] outcomes, boolean opaque) {
+            this.values = values;
+            this.classes = classes;
+            this.outcomes = outcomes;
+            this.opaque = opaque;
+        }
+
+        Stage andThen(Stage next) {
+            if (next.classes == null) {
+                byte[] fusedValues = compose(values, next.values);
+                if (classes == null) {
+                    return new Stage(fusedValues, null, null, opaque || next.opaque);
+                }
+                int[] mappedOutcomes = new int[outcomes.length];
+                for (int i = 0; i < outcomes.length; i++) {
+                    mappedOutcomes[i] = outcomes[i] == KEEP ? KEEP : next.mapRgb(outcomes[i]);
+                }
+                return new Stage(fusedValues, classes, mappedOutcomes, opaque || next.opaque);
+            }
+            if (classes == null) {
+                return new Stage(compose(values, next.values), compose(values, next.classes), next.outcomes, opaque || next.opaque);
+            }
+            return null;
+        }
+
+        int apply(int argb) {
+            int alpha = opaque ? 0xFF000000 : argb & 0xFF000000;
+            int red = ImageTransformer.red(argb);
+            int green = ImageTransformer.green(argb);
+            int blue = ImageTransformer.blue(argb);
+            if (classes != null) {
+                int outcome = outcomes[classes[red] | classes[green] | classes[blue]];
+                if (outcome != KEEP) {
+                    return alpha | outcome;
+                }
+            }
+            return alpha | (values[red] & 0xFF) << 16 | (values[green] & 0xFF) << 8 | values[blue] & 0xFF;
+        }
+
+        void apply(int[] source, int[] target, int fromIndex, int toIndex) {
+            if (classes != null) {
+                for (int i = fromIndex; i < toIndex; i++) {
+                    target[i] = apply(source[i]);
+                }
+                return;
+            }
+            byte[] table = values;
+            int alphaMask = opaque ? 0 : 0xFF000000;
+            int alphaFill = opaque ? 0xFF000000 : 0;
+            for (int i = fromIndex; i < toIndex; i++) {
+                int argb = source[i];
+                target[i] = (argb & alphaMask) | alphaFill
+                        | (table[(argb >> 16) & 0xFF] & 0xFF) << 16
+                        | (table[(argb >> 8) & 0xFF] & 0xFF) << 8
+                        | table[argb & 0xFF] & 0xFF;
+            }
+        }
+
+        private int mapRgb(int rgb) {
+            return (values[(rgb >> 16) & 0xFF] & 0xFF) << 16
+                    | (values[(rgb >> 8) & 0xFF] & 0xFF) << 8
+                    | values[rgb & 0xFF] & 0xFF;
+        }
+
+        private static byte[] compose(byte[] first, byte[] second) {
+            byte[] composed = new byte[LEVELS];
+            for (int value = 0; value < LEVELS; value++) {
+                composed[value] = second[first[value] & 0xFF];
+            }
+            return composed;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ru.golovkov.multimediadataprocessing;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR для одного этапа обработки: загрузки, преобразования, гистограммы, обновления
+ * диаграммы или сохранения. Длительность события — длительность этапа. Записывается через
+ * {@link OperationMetrics}, например {@code jcmd <pid> JFR.start} или
+ * {@code -XX:StartFlightRecording}.
+ */
+@Name("ru.golovkov.multimediadataprocessing.Processing")
+@Label("Этап обработки изображения")
+@Category({"Обработка изображений"})
+@StackTrace(false)
+final class ProcessingEvent extends Event {
+
+    @Label("Этап")
+    String phase;
+
+    @Label("Операция")
+    String operation;
+
+    @Label("Параметры")
+    String parameters;
+
+    @Label("Ширина")
+    int width;
+
+    @Label("Высота")
+    int height;
+
+    @Label("Выделено памяти")
+    @Description("Байты, выделенные всеми потоками за время этапа")
+    @DataAmount
+    long allocatedBytes;
+}
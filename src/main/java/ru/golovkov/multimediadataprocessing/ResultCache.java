@@ -0,0 +1,156 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш результатов преобразований с вытеснением давно не использованных по объёму памяти.
+ * <p>
+ * Ключ — исходное изображение (по ссылке, без удержания его в памяти) и его
+ * {@link ImageWrapper#getVersion() версия}, название операции и её параметры, поэтому
+ * повторное применение той же операции к тому же изображению, в том числе после отмены
+ * правки, возвращает готовый результат. Размер записи — растр результата и его
+ * {@link ImagePyramid}. Если результат изменили после сохранения, запись считается устаревшей.
+ */
+final class ResultCache {
+
+    private final long memoryBudget;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryUsage;
+    private long hits;
+    private long misses;
+
+    ResultCache(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Бюджет памяти должен быть положительным: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Готовый результат или {@code null}; каждый вызов считается попаданием или промахом.
+     */
+    synchronized TransformationTask.Result get(ImageWrapper source, String operation, String parameters) {
+        purgeStale();
+        Key key = new Key(source, operation, parameters);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.resultVersion != entry.result.imageWrapper().getVersion()) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    synchronized void put(ImageWrapper source, String operation, String parameters, TransformationTask.Result result) {
+        purgeStale();
+        long bytes = sizeOf(result);
+        Key key = new Key(source, operation, parameters);
+        remove(key);
+        if (bytes > memoryBudget) {
+            return;
+        }
+        entries.put(key, new Entry(result, result.imageWrapper().getVersion(), bytes));
+        memoryUsage += bytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (memoryUsage > memoryBudget && iterator.hasNext()) {
+            memoryUsage -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        memoryUsage = 0;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            memoryUsage -= removed.bytes;
+        }
+    }
+
+    /**
+     * Убирает записи, исходное изображение которых собрано или изменено: они уже не найдутся.
+     */
+    private void purgeStale() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().isStale()) {
+                memoryUsage -= entry.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(TransformationTask.Result result) {
+        ImageWrapper imageWrapper = result.imageWrapper();
+        return (long) Integer.BYTES * imageWrapper.getWidth() * imageWrapper.getHeight()
+                + result.pyramid().getByteSize();
+    }
+
+    private record Entry(TransformationTask.Result result, long resultVersion, long bytes) {
+    }
+
+    /**
+     * Ключ сравнивает исходное изображение по ссылке, а не по содержимому, и держит его
+     * слабой ссылкой.
+     */
+    private static final class Key {
+
+        private final WeakReference<ImageWrapper> source;
+        private final long version;
+        private final String operation;
+        private final String parameters;
+        private final int hash;
+
+        Key(ImageWrapper source, String operation, String parameters) {
+            this.source = new WeakReference<>(source);
+            this.version = source.getVersion();
+            this.operation = operation;
+            this.parameters = parameters;
+            this.hash = 31 * (31 * (31 * System.identityHashCode(source) + Long.hashCode(version))
+                    + operation.hashCode()) + parameters.hashCode();
+        }
+
+        boolean isStale() {
+            ImageWrapper referent = source.get();
+            return referent == null || referent.getVersion() != version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key key)) {
+                return false;
+            }
+            ImageWrapper referent = source.get();
+            return referent != null && referent == key.source.get() && version == key.version
+                    && operation.equals(key.operation) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Звено потоковой обработки {@link Pipeline}: принимает строки входа по порядку и, как только
+ * накоплены все строки окрестности, выдаёт строку результата следующему звену.
+ * <p>
+ * Входные строки хранятся в кольцевом буфере на {@code above + below + 2} строки, поэтому
+ * изображение между звеньями никогда не материализуется целиком. За верхним и нижним краем
+ * повторяются крайние строки, как у {@link BorderMode#CLAMP}. Экземпляр обслуживает одну
+ * полосу строк и не потокобезопасен.
+ */
+abstract class RowStage {
+
+    protected final int width;
+    protected final int height;
+    private final int above;
+    private final int below;
+    private final int[][] ring;
+
+    private int nextOutput;
+    private int endOutput;
+    private int lastInput = -1;
+    private RowStage next;
+    private int[] target;
+    private final int[] output;
+
+    RowStage(int width, int height, int above, int below) {
+        this.width = width;
+        this.height = height;
+        this.above = above;
+        this.below = below;
+        this.ring = new int[above + below + 2][width];
+        this.output = new int[width];
+    }
+
+    /**
+     * Строки входа, нужные для строк результата [fromY, toY).
+     */
+    int inputFrom(int fromY) {
+        return Math.max(0, fromY - above);
+    }
+
+    int inputTo(int toY) {
+        return Math.min(height, toY + below);
+    }
+
+    void start(int fromY, int toY, RowStage next, int[] target) {
+        this.nextOutput = fromY;
+        this.endOutput = toY;
+        this.next = next;
+        this.target = target;
+    }
+
+    void accept(int y, int[] data, int offset) {
+        int[] row = ring[y % ring.length];
+        System.arraycopy(data, offset, row, 0, width);
+        lastInput = y;
+        onInput(y, row);
+        while (nextOutput < endOutput && Math.min(height - 1, nextOutput + below) <= lastInput) {
+            if (next == null) {
+                produce(nextOutput, target, nextOutput * width);
+            } else {
+                produce(nextOutput, output, 0);
+                next.accept(nextOutput, output, 0);
+            }
+            nextOutput++;
+        }
+    }
+
+    protected int[] inputRow(int y) {
+        return ring[Math.clamp(y, 0, height - 1) % ring.length];
+    }
+
+    protected int slot(int y) {
+        return Math.clamp(y, 0, height - 1) % ring.length;
+    }
+
+    protected int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Вызывается для каждой принятой строки, например чтобы разложить её по каналам.
+     */
+    protected void onInput(int y, int[] row) {
+    }
+
+    protected abstract void produce(int y, int[] target, int offset);
+
+    /**
+     * Поэлементная операция над строкой.
+     */
+    static final class Point extends RowStage {
+
+        private final PointOperation operation;
+        private final int[] mapped;
+
+        Point(int width, int height, PointOperation operation) {
+            super(width, height, 0, 0);
+            this.operation = operation;
+            this.mapped = new int[width];
+        }
+
+        @Override
+        protected void produce(int y, int[] target, int offset) {
+            if (offset == 0) {
+                operation.apply(inputRow(y), target, 0, width);
+            } else {
+                operation.apply(inputRow(y), mapped, 0, width);
+                System.arraycopy(mapped, 0, target, offset, width);
+            }
+        }
+    }
+
+    /**
+     * Замена пиксела серым уровнем из таблицы по его серому ((r + g + b) / 3).
+     */
+    static final class GrayMap extends RowStage {
+
+        private final int[] table;
+
+        GrayMap(int width, int height, int[] table) {
+            super(width, height, 0, 0);
+            this.table = table;
+        }
+
+        @Override
+        protected void produce(int y, int[] target, int offset) {
+            int[] row = inputRow(y);
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                int gray = table[ImageTransformer.gray(argb)];
+                target[offset + x] = ImageTransformer.argb(ImageTransformer.alpha(argb), gray, gray, gray);
+            }
+        }
+    }
+
+    /**
+     * Усредняющий фильтр, совпадающий с {@link BoxFilter}: суммы по столбцам обновляются
+     * входящей и выходящей строкой, горизонтальное окно скользит по ним.
+     */
+    static final class Box extends RowStage {
+
+        private final int radius;
+        private final int area;
+        private final int[] columnRed;
+        private final int[] columnGreen;
+        private final int[] columnBlue;
+        private int summedRow = Integer.MIN_VALUE;
+
+        Box(int width, int height, int radius) {
+            super(width, height, radius, radius);
+            this.radius = radius;
+            this.area = (2 * radius + 1) * (2 * radius + 1);
+            this.columnRed = new int[width];
+            this.columnGreen = new int[width];
+            this.columnBlue = new int[width];
+        }
+
+        @Override
+        protected void produce(int y, int[] target, int offset) {
+            if (summedRow == y - 1) {
+                addRow(inputRow(y + radius), 1);
+                addRow(inputRow(y - radius - 1), -1);
+            } else {
+                Arrays.fill(columnRed, 0);
+                Arrays.fill(columnGreen, 0);
+                Arrays.fill(columnBlue, 0);
+                for (int ky = y - radius; ky <= y + radius; ky++) {
+                    addRow(inputRow(ky), 1);
+                }
+            }
+            summedRow = y;
+            int half = area / 2;
+            int sumRed = 0;
+            int sumGreen = 0;
+            int sumBlue = 0;
+            for (int kx = -radius; kx <= radius; kx++) {
+                int column = Math.clamp(kx, 0, width - 1);
+                sumRed += columnRed[column];
+                sumGreen += columnGreen[column];
+                sumBlue += columnBlue[column];
+            }
+            int[] center = inputRow(y);
+            for (int x = 0; x < width; x++) {
+                target[offset + x] = ImageTransformer.argb(ImageTransformer.alpha(center[x]),
+                        (sumRed + half) / area, (sumGreen + half) / area, (sumBlue + half) / area);
+                int entering = Math.clamp(x + radius + 1, 0, width - 1);
+                int leaving = Math.clamp(x - radius, 0, width - 1);
+                sumRed += columnRed[entering] - columnRed[leaving];
+                sumGreen += columnGreen[entering] - columnGreen[leaving];
+                sumBlue += columnBlue[entering] - columnBlue[leaving];
+            }
+        }
+
+        private void addRow(int[] row, int sign) {
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                columnRed[x] += sign * ImageTransformer.red(argb);
+                columnGreen[x] += sign * ImageTransformer.green(argb);
+                columnBlue[x] += sign * ImageTransformer.blue(argb);
+            }
+        }
+    }
+
+    /**
+     * Свёртка с краем {@link BorderMode#CLAMP}. Каждая принятая строка раскладывается по
+     * плоскостям (каналы R, G, B или сумма каналов) с полями по бокам, и строка результата
+     * считается {@link Convolution#convolveRow} прямо по кольцевому буферу.
+     */
+    static final class Convolve extends RowStage {
+
+        /**
+         * Как строка свёрток превращается в пикселы результата.
+         */
+        enum Output {
+            /** Одно ядро на каждый канал, результат обрезается до 0..255. */
+            CLAMPED,
+            /** Два ядра на каждый канал, модуль градиента. */
+            MAGNITUDE,
+            /** Два ядра по сумме каналов, модуль градиента в сером. */
+            GRAY_MAGNITUDE
+        }
+
+        private final ConvolutionKernel[] kernels;
+        private final Output mode;
+        private final int padX;
+        private final int stride;
+        private final int[][] planes;
+        private final int[][] sums;
+        private final int[][] rowBases;
+
+        Convolve(int width, int height, Output mode, ConvolutionKernel... kernels) {
+            super(width, height, maxAnchorY(kernels), maxBelowAnchor(kernels));
+            this.kernels = kernels;
+            this.mode = mode;
+            int pad = 0;
+            for (ConvolutionKernel kernel : kernels) {
+                pad = Math.max(pad, Math.max(kernel.getAnchorX(), kernel.getWidth() - 1 - kernel.getAnchorX()));
+            }
+            this.padX = pad;
+            this.stride = width + 2 * pad;
+            int planeCount = mode == Output.GRAY_MAGNITUDE ? 1 : 3;
+            this.planes = new int[planeCount][capacity() * stride];
+            this.sums = new int[planeCount * kernels.length][width];
+            this.rowBases = new int[kernels.length][];
+            for (int k = 0; k < kernels.length; k++) {
+                rowBases[k] = new int[kernels[k].getHeight()];
+            }
+        }
+
+        @Override
+        protected void onInput(int y, int[] row) {
+            int base = slot(y) * stride;
+            for (int p = 0; p < planes.length; p++) {
+                int[] plane = planes[p];
+                for (int x = 0; x < width; x++) {
+                    plane[base + padX + x] = channel(row[x], p);
+                }
+                for (int px = 0; px < padX; px++) {
+                    plane[base + px] = plane[base + padX];
+                    plane[base + padX + width + px] = plane[base + padX + width - 1];
+                }
+            }
+        }
+
+        @Override
+        protected void produce(int y, int[] target, int offset) {
+            for (int k = 0; k < kernels.length; k++) {
+                ConvolutionKernel kernel = kernels[k];
+                for (int ky = 0; ky < kernel.getHeight(); ky++) {
+                    rowBases[k][ky] = slot(y - kernel.getAnchorY() + ky) * stride + padX - kernel.getAnchorX();
+                }
+                for (int p = 0; p < planes.length; p++) {
+                    Convolution.convolveRow(planes[p], rowBases[k], width, kernel, sums[p * kernels.length + k], 0);
+                }
+            }
+            int[] center = inputRow(y);
+            for (int x = 0; x < width; x++) {
+                int alpha = ImageTransformer.alpha(center[x]);
+                target[offset + x] = switch (mode) {
+                    case CLAMPED -> ImageTransformer.argb(alpha, Math.clamp(sums[0][x], 0, 255),
+                            Math.clamp(sums[1][x], 0, 255), Math.clamp(sums[2][x], 0, 255));
+                    case MAGNITUDE -> ImageTransformer.argb(alpha,
+                            ImageTransformer.magnitude(sums[0][x], sums[1][x]),
+                            ImageTransformer.magnitude(sums[2][x], sums[3][x]),
+                            ImageTransformer.magnitude(sums[4][x], sums[5][x]));
+                    case GRAY_MAGNITUDE -> {
+                        int gray = ImageTransformer.magnitude(sums[0][x], sums[1][x]);
+                        yield ImageTransformer.argb(alpha, gray, gray, gray);
+                    }
+                };
+            }
+        }
+
+        private int channel(int argb, int plane) {
+            if (mode == Output.GRAY_MAGNITUDE) {
+                return ImageTransformer.red(argb) + ImageTransformer.green(argb) + ImageTransformer.blue(argb);
+            }
+            return (argb >> (16 - 8 * plane)) & 0xFF;
+        }
+
+        private static int maxAnchorY(ConvolutionKernel[] kernels) {
+            int above = 0;
+            for (ConvolutionKernel kernel : kernels) {
+                above = Math.max(above, kernel.getAnchorY());
+            }
+            return above;
+        }
+
+        private static int maxBelowAnchor(ConvolutionKernel[] kernels) {
+            int below = 0;
+            for (ConvolutionKernel kernel : kernels) {
+                below = Math.max(below, kernel.getHeight() - 1 - kernel.getAnchorY());
+            }
+            return below;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Arrays;
+
+/**
+ * Утоньшение Чжана — Суня, обходящее только контур маски.
+ * <p>
+ * Окрестность 8 пикселов упаковывается в байт (бит 0 — верхний сосед p2, далее по часовой
+ * стрелке до p9), а решение «пиксел можно удалить» для каждого из двух подшагов берётся из
+ * заранее посчитанной таблицы на 256 значений. Удалить можно только пиксел, у которого есть
+ * сосед-фон, поэтому подшаг проверяет лишь очередь контурных пикселов. Соседи удалённых
+ * пикселов попадают в очередь, а пиксел, который оба подшага признали неудаляемым при
+ * неизменной окрестности, из неё выбывает до следующего изменения рядом. Всё состояние
+ * хранится в одном массиве байт. Пикселы на краю изображения не удаляются, как и раньше.
+ */
+final class Skeletonizer {
+
+    private static final byte FOREGROUND = 1;
+    private static final byte QUEUED = 2;
+    private static final byte MARKED = 4;
+    private static final byte CHECKED_FIRST = 8;
+    private static final byte CHECKED_SECOND = 16;
+    private static final byte BORDER = 32;
+    private static final byte CHECKED = CHECKED_FIRST | CHECKED_SECOND;
+
+    private static final boolean[] FIRST_STEP = deletabilityTable(true);
+    private static final boolean[] SECOND_STEP = deletabilityTable(false);
+    private static final int MIN_PIXELS_PER_CHUNK = 4096;
+
+    private final byte[] state;
+    private final int width;
+    private final int[] neighbours;
+    private int[] queue;
+    private int queueSize;
+    private int[] next;
+
+    private Skeletonizer(byte[] state, int width) {
+        this.state = state;
+        this.width = width;
+        this.neighbours = new int[]{-width, -width + 1, 1, width + 1, width, width - 1, -1, -width - 1};
+        this.queue = new int[256];
+        this.next = new int[256];
+    }
+
+    static void apply(ImageWrapper imageWrapper, ImageWrapper result, int maskColor, int backgroundColor,
+                      TileScheduler scheduler) {
+        int width = imageWrapper.getWidth();
+        int height = imageWrapper.getHeight();
+        int[] source = imageWrapper.getPixels();
+        int[] target = result.getPixels();
+        byte[] state = new byte[width * height];
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int y = fromY; y < toY; y++) {
+                boolean borderRow = y == 0 || y == height - 1;
+                for (int x = 0; x < width; x++) {
+                    int index = y * width + x;
+                    byte flags = source[index] == maskColor ? FOREGROUND : 0;
+                    if (borderRow || x == 0 || x == width - 1) {
+                        flags |= BORDER;
+                    }
+                    state[index] = flags;
+                }
+            }
+        });
+
+        new Skeletonizer(state, width).run(height, scheduler);
+
+        scheduler.forEachRowBand(height, (fromY, toY) -> {
+            for (int index = fromY * width; index < toY * width; index++) {
+                target[index] = (state[index] & FOREGROUND) != 0 ? maskColor : backgroundColor;
+            }
+        });
+    }
+
+    private void run(int height, TileScheduler scheduler) {
+        for (int y = 1; y < height - 1; y++) {
+            for (int index = y * width + 1; index < (y + 1) * width - 1; index++) {
+                if ((state[index] & FOREGROUND) != 0 && neighbourhood(index) != 0xFF) {
+                    state[index] |= QUEUED;
+                    queue = append(queue, queueSize++, index);
+                }
+            }
+        }
+        boolean firstStep = true;
+        while (queueSize > 0) {
+            mark(firstStep ? FIRST_STEP : SECOND_STEP, firstStep ? CHECKED_FIRST : CHECKED_SECOND, scheduler);
+            deleteMarked();
+            firstStep = !firstStep;
+        }
+    }
+
+    private void mark(boolean[] table, byte checked, TileScheduler scheduler) {
+        int[] candidates = queue;
+        scheduler.forEachChunk(queueSize, MIN_PIXELS_PER_CHUNK, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int index = candidates[i];
+                state[index] |= table[neighbourhood(index)] ? MARKED : checked;
+            }
+        });
+    }
+
+    private void deleteMarked() {
+        for (int i = 0; i < queueSize; i++) {
+            int index = queue[i];
+            if ((state[index] & MARKED) != 0) {
+                state[index] = 0;
+            }
+        }
+        int nextSize = 0;
+        for (int i = 0; i < queueSize; i++) {
+            int index = queue[i];
+            if (state[index] != 0) {
+                continue;
+            }
+            for (int offset : neighbours) {
+                int neighbour = index + offset;
+                byte flags = state[neighbour];
+                if ((flags & FOREGROUND) == 0 || (flags & BORDER) != 0) {
+                    continue;
+                }
+                flags &= ~CHECKED;
+                if ((flags & QUEUED) == 0) {
+                    flags |= QUEUED;
+                    next = append(next, nextSize++, neighbour);
+                }
+                state[neighbour] = flags;
+            }
+        }
+        for (int i = 0; i < queueSize; i++) {
+            int index = queue[i];
+            byte flags = state[index];
+            if (flags == 0) {
+                continue;
+            }
+            if ((flags & CHECKED) == CHECKED) {
+                state[index] = (byte) (flags & ~QUEUED);
+            } else {
+                next = append(next, nextSize++, index);
+            }
+        }
+        int[] swap = queue;
+        queue = next;
+        next = swap;
+        queueSize = nextSize;
+    }
+
+    private int neighbourhood(int index) {
+        int code = 0;
+        for (int bit = 0; bit < neighbours.length; bit++) {
+            code |= (state[index + neighbours[bit]] & FOREGROUND) << bit;
+        }
+        return code;
+    }
+
+    private static int[] append(int[] array, int size, int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, size * 2);
+        }
+        array[size] = value;
+        return array;
+    }
+
+    private static boolean[] deletabilityTable(boolean firstStep) {
+        boolean[] table = new boolean[256];
+        for (int code = 0; code < table.length; code++) {
+            int p2 = code & 1;
+            int p4 = code >> 2 & 1;
+            int p6 = code >> 4 & 1;
+            int p8 = code >> 6 & 1;
+            int b = Integer.bitCount(code);
+            int a = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((code >> bit & 1) == 0 && (code >> ((bit + 1) & 7) & 1) == 1) {
+                    a++;
+                }
+            }
+            boolean removable = b >= 2 && b <= 6 && a == 1;
+            if (firstStep) {
+                table[code] = removable && p2 * p4 * p6 == 0 && p4 * p6 * p8 == 0;
+            } else {
+                table[code] = removable && p2 * p4 * p8 == 0 && p2 * p6 * p8 == 0;
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,234 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Структурный элемент морфологических операций, разложенный на последовательность
+ * компонентов: отрезков прямых (для них работает алгоритм ван Херка — Гиля — Вермана)
+ * и произвольных наборов смещений. Результат операции с элементом равен последовательному
+ * применению компонентов.
+ * <p>
+ * Прямоугольник — это горизонтальный и вертикальный отрезки, ромб — два диагональных
+ * отрезка и крест 3x3, диск приближается восьмиугольником из четырёх отрезков.
+ * Элемент из матрицы {@link #of(int[][])} сохраняет прежнюю семантику: строка матрицы
+ * задаёт смещение по x, столбец — по y, значение 1 совпадает с маской, 0 — с фоном.
+ */
+public final class StructuringElement {
+
+    public static final int MAX_SIZE = 101;
+
+    private static final Component CROSS = Component.offsets(
+            new int[]{0, -1, 1, 0, 0}, new int[]{0, 0, 0, -1, 1});
+
+    private final List<Component> components;
+    private final int width;
+    private final int height;
+
+    private StructuringElement(List<Component> components) {
+        this.components = List.copyOf(components);
+        int minDx = 0;
+        int maxDx = 0;
+        int minDy = 0;
+        int maxDy = 0;
+        for (Component component : this.components) {
+            minDx += component.minDx();
+            maxDx += component.maxDx();
+            minDy += component.minDy();
+            maxDy += component.maxDy();
+        }
+        this.width = maxDx - minDx + 1;
+        this.height = maxDy - minDy + 1;
+        if (width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Структурный элемент больше " + MAX_SIZE + "x" + MAX_SIZE);
+        }
+    }
+
+    public static StructuringElement of(int[][] matrix) {
+        int rows = matrix.length;
+        int columns = matrix[0].length;
+        int[] dx = new int[rows * columns];
+        int[] dy = new int[rows * columns];
+        int[] values = new int[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int index = i * columns + j;
+                dx[index] = i - rows / 2;
+                dy[index] = j - columns / 2;
+                values[index] = matrix[i][j];
+            }
+        }
+        return new StructuringElement(List.of(new Component(null, 0, dx, dy, values)));
+    }
+
+    public static StructuringElement rectangle(int width, int height) {
+        requirePositive(width, "Ширина");
+        requirePositive(height, "Высота");
+        return new StructuringElement(List.of(Component.line(Direction.HORIZONTAL, width),
+                Component.line(Direction.VERTICAL, height)));
+    }
+
+    /**
+     * Отрезок длины {@code length} под углом 0, 45, 90 или 135 градусов
+     * (ось y направлена вниз, 45 градусов — отрезок «/»).
+     */
+    public static StructuringElement line(int length, int angle) {
+        requirePositive(length, "Длина");
+        Direction direction = switch (angle) {
+            case 0 -> Direction.HORIZONTAL;
+            case 45 -> Direction.RISING;
+            case 90 -> Direction.VERTICAL;
+            case 135 -> Direction.FALLING;
+            default -> throw new IllegalArgumentException("Поддерживаются углы 0, 45, 90 и 135 градусов: " + angle);
+        };
+        return new StructuringElement(List.of(Component.line(direction, length)));
+    }
+
+    public static StructuringElement diamond(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Радиус не может быть отрицательным: " + radius);
+        }
+        if (radius == 0) {
+            return new StructuringElement(List.of(Component.line(Direction.HORIZONTAL, 1)));
+        }
+        List<Component> components = new ArrayList<>();
+        int diagonalLength = radius % 2 == 1 ? radius : radius - 1;
+        components.add(Component.line(Direction.RISING, diagonalLength));
+        components.add(Component.line(Direction.FALLING, diagonalLength));
+        components.add(CROSS);
+        if (radius % 2 == 0) {
+            components.add(CROSS);
+        }
+        return new StructuringElement(components);
+    }
+
+    public static StructuringElement disc(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Радиус не может быть отрицательным: " + radius);
+        }
+        if (radius < 3) {
+            List<int[]> offsets = new ArrayList<>();
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dy = -radius; dy <= radius; dy++) {
+                    if (dx * dx + dy * dy <= radius * radius) {
+                        offsets.add(new int[]{dx, dy});
+                    }
+                }
+            }
+            int[] dx = new int[offsets.size()];
+            int[] dy = new int[offsets.size()];
+            for (int i = 0; i < offsets.size(); i++) {
+                dx[i] = offsets.get(i)[0];
+                dy[i] = offsets.get(i)[1];
+            }
+            return new StructuringElement(List.of(Component.offsets(dx, dy)));
+        }
+        int diagonalHalf = (int) Math.round(radius * (1 - Math.sqrt(0.5)));
+        int axisHalf = radius - 2 * diagonalHalf;
+        return new StructuringElement(List.of(
+                Component.line(Direction.HORIZONTAL, 2 * axisHalf + 1),
+                Component.line(Direction.VERTICAL, 2 * axisHalf + 1),
+                Component.line(Direction.RISING, 2 * diagonalHalf + 1),
+                Component.line(Direction.FALLING, 2 * diagonalHalf + 1)));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    List<Component> getComponents() {
+        return components;
+    }
+
+    private static void requirePositive(int value, String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " структурного элемента должна быть положительной: " + value);
+        }
+    }
+
+    /**
+     * Направление отрезка: смещение точки с параметром t равно (t * dx, t * dy).
+     */
+    enum Direction {
+
+        HORIZONTAL(1, 0),
+        VERTICAL(0, 1),
+        FALLING(1, 1),
+        RISING(1, -1);
+
+        final int dx;
+        final int dy;
+
+        Direction(int dx, int dy) {
+            this.dx = dx;
+            this.dy = dy;
+        }
+    }
+
+    /**
+     * Отрезок {@code direction} длины {@code length} с параметром t от -length/2
+     * либо набор смещений {@code dx}, {@code dy} со значениями {@code values}
+     * (1 — маска, 0 — фон, иное — ничего).
+     */
+    record Component(Direction direction, int length, int[] dx, int[] dy, int[] values) {
+
+        static Component line(Direction direction, int length) {
+            return new Component(direction, length, null, null, null);
+        }
+
+        static Component offsets(int[] dx, int[] dy) {
+            int[] values = new int[dx.length];
+            Arrays.fill(values, 1);
+            return new Component(null, 0, dx, dy, values);
+        }
+
+        boolean isLine() {
+            return direction != null;
+        }
+
+        int lineStart() {
+            return -(length / 2);
+        }
+
+        int lineEnd() {
+            return length - 1 - length / 2;
+        }
+
+        int minDx() {
+            return isLine() ? Math.min(direction.dx * lineStart(), direction.dx * lineEnd()) : min(dx);
+        }
+
+        int maxDx() {
+            return isLine() ? Math.max(direction.dx * lineStart(), direction.dx * lineEnd()) : max(dx);
+        }
+
+        int minDy() {
+            return isLine() ? Math.min(direction.dy * lineStart(), direction.dy * lineEnd()) : min(dy);
+        }
+
+        int maxDy() {
+            return isLine() ? Math.max(direction.dy * lineStart(), direction.dy * lineEnd()) : max(dy);
+        }
+
+        private static int min(int[] values) {
+            int min = 0;
+            for (int value : values) {
+                min = Math.min(min, value);
+            }
+            return min;
+        }
+
+        private static int max(int[] values) {
+            int max = 0;
+            for (int value : values) {
+                max = Math.max(max, value);
+            }
+            return max;
+        }
+    }
+}
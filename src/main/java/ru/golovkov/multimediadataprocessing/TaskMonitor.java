@@ -0,0 +1,97 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ход и отмена одного фонового преобразования.
+ * <p>
+ * {@link TileScheduler#withMonitor} перед каждым проходом по изображению начинает новый проход
+ * монитора, после каждой полосы прибавляет её размер к выполненному, а перед полосой проверяет
+ * отмену. Отмена кооперативная: текущие полосы дорабатывают, новые не начинаются, и вызов
+ * планировщика завершается {@link CancellationException}.
+ * <p>
+ * Ход считается по всей операции, а не по проходу: заранее задаётся ожидаемое число проходов,
+ * каждый проход занимает равную долю шкалы, и многопроходная операция (замыкание, CLAHE,
+ * конвейер) не отбрасывает шкалу к нулю. Если проходов оказалось больше ожидаемого, оценка
+ * растёт, а сообщаемый ход не уменьшается.
+ */
+public final class TaskMonitor {
+
+    private final ProgressListener listener;
+    private final int expectedPasses;
+    private final AtomicLong completed = new AtomicLong();
+    private volatile boolean cancelled;
+    private long passSize;
+    private int pass;
+    private double progress;
+
+    public TaskMonitor(ProgressListener listener) {
+        this(1, listener);
+    }
+
+    public TaskMonitor(int expectedPasses, ProgressListener listener) {
+        if (expectedPasses < 1) {
+            throw new IllegalArgumentException("Ожидаемое число проходов должно быть положительным: "
+                    + expectedPasses);
+        }
+        this.expectedPasses = expectedPasses;
+        this.listener = listener;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Число начатых проходов; по нему можно оценить проходы следующего запуска той же операции.
+     */
+    public synchronized int getPassCount() {
+        return pass;
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Преобразование отменено");
+        }
+    }
+
+    void beginPass(long size) {
+        checkCancelled();
+        synchronized (this) {
+            completed.set(0);
+            passSize = size;
+            pass++;
+            report(0);
+        }
+    }
+
+    void advance(long count) {
+        long done = completed.addAndGet(count);
+        synchronized (this) {
+            report(done);
+        }
+    }
+
+    private void report(long done) {
+        int passes = Math.max(expectedPasses, pass);
+        double passProgress = passSize > 0 ? Math.min(1, (double) done / passSize) : 1;
+        progress = Math.max(progress, (pass - 1 + passProgress) / passes);
+        listener.progressChanged(pass, passes, progress);
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Вызывается из рабочих потоков; {@code pass} — номер прохода, начиная с 1,
+         * {@code passes} — текущая оценка числа проходов, {@code progress} — доля всей
+         * операции от 0 до 1, не убывает.
+         */
+        void progressChanged(int pass, int passes, double progress);
+    }
+}
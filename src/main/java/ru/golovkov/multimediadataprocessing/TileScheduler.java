@@ -0,0 +1,165 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Делит изображение на горизонтальные полосы строк (или вертикальные полосы столбцов)
+ * и обрабатывает их в {@link ForkJoinPool}.
+ * <p>
+ * Каждая задача пишет только в свои строки результата, а исходный растр читает целиком,
+ * поэтому окрестность 3x3 (и любая другая) на границе полос берётся из соседних строк
+ * источника без копирования — результат совпадает с последовательным проходом бит в бит.
+ * При параллелизме 1 полосы выполняются в вызывающем потоке.
+ * <p>
+ * Планировщик, полученный через {@link #withMonitor}, делит работу мельче, сообщает
+ * {@link TaskMonitor} о ходе каждого прохода и перестаёт брать новые полосы после отмены.
+ */
+public class TileScheduler {
+
+    private static final int MIN_ROWS_PER_BAND = 8;
+    private static final int BANDS_PER_WORKER = 4;
+    private static final int MONITORED_BANDS = 64;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final TaskMonitor monitor;
+
+    public TileScheduler(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Уровень параллелизма должен быть положительным: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.monitor = null;
+    }
+
+    private TileScheduler(TileScheduler scheduler, TaskMonitor monitor) {
+        this.parallelism = scheduler.parallelism;
+        this.pool = scheduler.pool;
+        this.monitor = monitor;
+    }
+
+    public static TileScheduler serial() {
+        return new TileScheduler(1);
+    }
+
+    public static TileScheduler withAvailableProcessors() {
+        return new TileScheduler(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isSerial() {
+        return pool == null;
+    }
+
+    /**
+     * Планировщик на том же пуле потоков, который отчитывается перед {@code monitor}.
+     */
+    public TileScheduler withMonitor(TaskMonitor monitor) {
+        return new TileScheduler(this, monitor);
+    }
+
+    public void forEachRowBand(int height, RangeTask task) {
+        forEachRowBand(0, height, task);
+    }
+
+    public void forEachRowBand(int fromY, int toY, RangeTask task) {
+        forEachRange(fromY, toY, MIN_ROWS_PER_BAND, task);
+    }
+
+    public void forEachColumnStrip(int width, int minStripWidth, RangeTask task) {
+        forEachRange(0, width, Math.max(1, minStripWidth), task);
+    }
+
+    /**
+     * Делит на части произвольный диапазон индексов [0, size), например очередь пикселов.
+     */
+    public void forEachChunk(int size, int minChunkSize, RangeTask task) {
+        forEachRange(0, size, Math.max(1, minChunkSize), task);
+    }
+
+    /**
+     * Начало части {@code index} из {@code parts} почти равных частей диапазона [0, length);
+     * {@code index == parts} даёт {@code length}. Нужно, когда части заданы заранее (плитки,
+     * полосы со швами), а не выбираются планировщиком.
+     */
+    static int partBoundary(int index, int length, int parts) {
+        return (int) ((long) index * length / parts);
+    }
+
+    private void forEachRange(int from, int to, int minSize, RangeTask task) {
+        int size = to - from;
+        if (size <= 0) {
+            return;
+        }
+        if (monitor != null) {
+            forEachMonitoredRange(from, to, minSize, task);
+            return;
+        }
+        int chunkSize = Math.max(minSize, size / (parallelism * BANDS_PER_WORKER));
+        if (pool == null || size <= chunkSize) {
+            task.process(from, to);
+            return;
+        }
+        pool.invoke(new RangeAction(task, from, to, chunkSize));
+    }
+
+    private void forEachMonitoredRange(int from, int to, int minSize, RangeTask task) {
+        int size = to - from;
+        monitor.beginPass(size);
+        int chunkSize = Math.max(minSize, size / Math.max(MONITORED_BANDS, parallelism * BANDS_PER_WORKER));
+        RangeTask monitoredTask = (chunkFrom, chunkTo) -> {
+            monitor.checkCancelled();
+            task.process(chunkFrom, chunkTo);
+            monitor.advance(chunkTo - chunkFrom);
+        };
+        if (pool == null || size <= chunkSize) {
+            for (int chunkFrom = from; chunkFrom < to; chunkFrom += chunkSize) {
+                monitoredTask.process(chunkFrom, Math.min(to, chunkFrom + chunkSize));
+            }
+            return;
+        }
+        pool.invoke(new RangeAction(monitoredTask, from, to, chunkSize));
+    }
+
+    @FunctionalInterface
+    public interface RangeTask {
+
+        void process(int from, int to);
+    }
+
+    /**
+     * Задачи живут только внутри {@link ForkJoinPool#invoke} и не сериализуются.
+     */
+    private static final class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient RangeTask task;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        RangeAction(RangeTask task, int from, int to, int chunkSize) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                task.process(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(task, from, middle, chunkSize),
+                    new RangeAction(task, middle, to, chunkSize));
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Растр ARGB, который хранится не в куче, а в отображённом в память файле, для изображений
+ * больше доступной памяти.
+ * <p>
+ * Файл разбит на квадратные плитки (по умолчанию {@value #DEFAULT_TILE_SIZE} пикселов),
+ * каждая плитка лежит непрерывным куском, крайние дополнены до полного размера. Доступ к
+ * файлу идёт через {@link MemorySegment} из {@link Arena#ofShared()}, а недавно использованные
+ * плитки держатся в куче в LRU-кэше; изменённые плитки записываются обратно при вытеснении,
+ * {@link #flush()} и {@link #close()}. Чтение и запись прямоугольников потокобезопасны: у каждой
+ * плитки свой замок, общий замок кэша держится только на время поиска и вставки, а загрузка,
+ * копирование и запись пикселов плитки идут под её собственным замком. Вытесненная плитка до
+ * записи в файл остаётся доступной, чтобы повторное чтение не получило устаревшие пикселы.
+ * Временные файлы создаются в заданном каталоге (по умолчанию в системном), туда же
+ * {@link Pipeline} кладёт промежуточные растры.
+ * Обработка по плиткам описана в {@link Pipeline#apply(ImageTransformer, TiledRaster)}.
+ */
+public final class TiledRaster implements AutoCloseable {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+    private static final int DEFAULT_CACHED_TILES = 64;
+    private static final long IMPORT_STRIPE_PIXELS = 1L << 24;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int cachedTiles;
+    private final Path file;
+    private final boolean temporary;
+    private final Path temporaryDirectory;
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final Object[] tileLocks;
+    private final Map<Integer, CachedTile> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, CachedTile> evicted = new HashMap<>();
+
+    private TiledRaster(Path file, boolean temporary, Path temporaryDirectory, int width, int height, int tileSize,
+                        int cachedTiles) throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Размер растра должен быть положительным: " + width + "x" + height);
+        }
+        if (tileSize < 1 || cachedTiles < 1) {
+            throw new IllegalArgumentException("Размер плитки и кэша должны быть положительными");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = Math.ceilDiv(width, tileSize);
+        this.cachedTiles = cachedTiles;
+        this.file = file;
+        this.temporary = temporary;
+        this.temporaryDirectory = temporaryDirectory;
+        long size = (long) columns * Math.ceilDiv(height, tileSize) * tileSize * tileSize * Integer.BYTES;
+        this.arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+        this.tileLocks = new Object[getTileCount()];
+        for (int index = 0; index < tileLocks.length; index++) {
+            tileLocks[index] = new Object();
+        }
+    }
+
+    /**
+     * Новый растр, заполненный нулями, в файле {@code file} (файл перезаписывается).
+     */
+    public static TiledRaster create(Path file, int width, int height) throws IOException {
+        return new TiledRaster(file, false, null, width, height, DEFAULT_TILE_SIZE, DEFAULT_CACHED_TILES);
+    }
+
+    /**
+     * Новый растр во временном файле, который удаляется при {@link #close()}.
+     */
+    public static TiledRaster createTemporary(int width, int height) throws IOException {
+        return createTemporary(null, width, height);
+    }
+
+    /**
+     * Новый растр во временном файле в каталоге {@code directory} ({@code null} — системный
+     * каталог временных файлов).
+     */
+    public static TiledRaster createTemporary(Path directory, int width, int height) throws IOException {
+        return createTemporary(directory, width, height, DEFAULT_TILE_SIZE, DEFAULT_CACHED_TILES);
+    }
+
+    static TiledRaster createTemporary(Path directory, int width, int height, int tileSize, int cachedTiles)
+            throws IOException {
+        Path file = directory == null
+                ? Files.createTempFile("raster", ".tiles")
+                : Files.createTempFile(directory, "raster", ".tiles");
+        try {
+            return new TiledRaster(file, true, directory, width, height, tileSize, cachedTiles);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    public static TiledRaster of(ImageWrapper imageWrapper) throws IOException {
+        TiledRaster raster = createTemporary(imageWrapper.getWidth(), imageWrapper.getHeight());
+        raster.write(imageWrapper, 0, 0);
+        return raster;
+    }
+
+    /**
+     * Читает файл изображения, не держа его в памяти целиком, если формат это позволяет.
+     * <p>
+     * PNG без чересстрочной развёртки декодируется {@link PngDecoder} за один проход полосами
+     * строк. Остальные форматы читает ImageIO: полосами через {@code setSourceRegion}, только
+     * если читатель умеет произвольный доступ (например, TIFF из плиток), иначе одним вызовом,
+     * потому что последовательные читатели PNG и JPEG декодируют каждую полосу с начала файла.
+     * Пикселы совпадают с {@link ImageDecoder#read}.
+     */
+    public static TiledRaster read(Path imageFile) throws IOException {
+        return read(imageFile, null);
+    }
+
+    /**
+     * То же, что {@link #read(Path)}, но растр и промежуточные растры обработки лежат в
+     * каталоге {@code temporaryDirectory} ({@code null} — системный каталог временных файлов).
+     */
+    public static TiledRaster read(Path imageFile, Path temporaryDirectory) throws IOException {
+        if (PngDecoder.isPng(imageFile)) {
+            try (PngDecoder decoder = PngDecoder.open(imageFile)) {
+                if (!decoder.isInterlaced()) {
+                    return readPng(decoder, temporaryDirectory);
+                }
+            }
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Формат не поддерживается: " + imageFile);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                TiledRaster raster = createTemporary(temporaryDirectory, width, height);
+                try {
+                    boolean randomAccess = reader.isImageTiled(0) || reader.isRandomAccessEasy(0);
+                    int stripeHeight = randomAccess ? Math.clamp(IMPORT_STRIPE_PIXELS / width, 1, height) : height;
+                    for (int y = 0; y < height; y += stripeHeight) {
+                        int rows = Math.min(stripeHeight, height - y);
+                        ImageReadParam param = reader.getDefaultReadParam();
+                        param.setSourceRegion(new Rectangle(0, y, width, rows));
+                        BufferedImage stripe = reader.read(0, param);
+                        raster.write(new ImageWrapper(width, rows, ImageDecoder.toArgb(stripe)), 0, y);
+                    }
+                    return raster;
+                } catch (IOException | RuntimeException e) {
+                    raster.close();
+                    throw e;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static TiledRaster readPng(PngDecoder decoder, Path temporaryDirectory) throws IOException {
+        int width = decoder.getWidth();
+        int height = decoder.getHeight();
+        TiledRaster raster = createTemporary(temporaryDirectory, width, height);
+        try {
+            int stripeHeight = Math.clamp(IMPORT_STRIPE_PIXELS / width, 1, height);
+            ImageWrapper stripe = new ImageWrapper(width, stripeHeight);
+            for (int y = 0; y < height; y += stripeHeight) {
+                int rows = Math.min(stripeHeight, height - y);
+                decoder.readRows(stripe.getPixels(), rows);
+                raster.write(stripe, 0, 0, 0, y, width, rows);
+            }
+            return raster;
+        } catch (IOException | RuntimeException e) {
+            raster.close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getTileCount() {
+        return columns * Math.ceilDiv(height, tileSize);
+    }
+
+    /**
+     * Каталог для временных файлов этого растра и растров, полученных из него;
+     * {@code null} — системный каталог.
+     */
+    public Path getTemporaryDirectory() {
+        return temporaryDirectory;
+    }
+
+    /**
+     * Прямоугольник плитки с номером {@code index} (по строкам плиток слева направо).
+     */
+    public Rectangle getTileBounds(int index) {
+        int x = index % columns * tileSize;
+        int y = index / columns * tileSize;
+        return new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+    }
+
+    public ImageWrapper read(int x, int y, int regionWidth, int regionHeight) {
+        checkRegion(x, y, regionWidth, regionHeight);
+        ImageWrapper region = new ImageWrapper(regionWidth, regionHeight);
+        copy(region.getPixels(), regionWidth, x, y, regionWidth, regionHeight, false);
+        return region;
+    }
+
+    public void write(ImageWrapper region, int x, int y) {
+        write(region, 0, 0, x, y, region.getWidth(), region.getHeight());
+    }
+
+    /**
+     * Записывает часть {@code region} размером regionWidth x regionHeight, начиная с
+     * (fromX, fromY), в точку растра (x, y).
+     */
+    public void write(ImageWrapper region, int fromX, int fromY, int x, int y, int regionWidth, int regionHeight) {
+        checkRegion(x, y, regionWidth, regionHeight);
+        if (fromX < 0 || fromY < 0 || fromX + regionWidth > region.getWidth()
+                || fromY + regionHeight > region.getHeight()) {
+            throw new IllegalArgumentException("Прямоугольник выходит за пределы изображения");
+        }
+        int[] pixels = region.getPixels();
+        int offset = fromY * region.getWidth() + fromX;
+        if (offset == 0 && region.getWidth() == regionWidth) {
+            copy(pixels, regionWidth, x, y, regionWidth, regionHeight, true);
+        } else {
+            int[] rows = new int[regionWidth * regionHeight];
+            for (int row = 0; row < regionHeight; row++) {
+                System.arraycopy(pixels, offset + row * region.getWidth(), rows, row * regionWidth, regionWidth);
+            }
+            copy(rows, regionWidth, x, y, regionWidth, regionHeight, true);
+        }
+    }
+
+    /**
+     * Весь растр в куче; только для растров, которые помещаются в один массив.
+     */
+    public ImageWrapper toImageWrapper() {
+        if ((long) width * height > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Растр " + width + "x" + height + " не помещается в память");
+        }
+        return read(0, 0, width, height);
+    }
+
+    /**
+     * Гистограммы всего растра, посчитанные по плиткам.
+     */
+    public Histogram histogram(TileScheduler scheduler) {
+        List<Histogram> parts = new ArrayList<>();
+        TileScheduler serial = TileScheduler.serial();
+        scheduler.forEachChunk(getTileCount(), 1, (from, to) -> {
+            for (int index = from; index < to; index++) {
+                Rectangle bounds = getTileBounds(index);
+                Histogram histogram = HistogramService.compute(
+                        read(bounds.x, bounds.y, bounds.width, bounds.height), serial);
+                synchronized (parts) {
+                    parts.add(histogram);
+                }
+            }
+        });
+        return Histogram.sum(parts);
+    }
+
+    public void flush() {
+        List<Map.Entry<Integer, CachedTile>> tiles;
+        synchronized (cache) {
+            tiles = new ArrayList<>(cache.entrySet());
+            tiles.addAll(evicted.entrySet());
+        }
+        writeBack(tiles);
+        segment.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!temporary && segment.scope().isAlive()) {
+            flush();
+        }
+        synchronized (cache) {
+            cache.clear();
+            evicted.clear();
+        }
+        if (segment.scope().isAlive()) {
+            arena.close();
+        }
+        if (temporary) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void copy(int[] pixels, int stride, int x, int y, int regionWidth, int regionHeight, boolean toRaster) {
+        int lastColumn = (x + regionWidth - 1) / tileSize;
+        int lastRow = (y + regionHeight - 1) / tileSize;
+        for (int tileRow = y / tileSize; tileRow <= lastRow; tileRow++) {
+            for (int tileColumn = x / tileSize; tileColumn <= lastColumn; tileColumn++) {
+                int tileX = tileColumn * tileSize;
+                int tileY = tileRow * tileSize;
+                int fromX = Math.max(x, tileX);
+                int toX = Math.min(x + regionWidth, tileX + tileSize);
+                int fromY = Math.max(y, tileY);
+                int toY = Math.min(y + regionHeight, tileY + tileSize);
+                int index = tileRow * columns + tileColumn;
+                synchronized (tileLocks[index]) {
+                    CachedTile tile = tile(index);
+                    for (int row = fromY; row < toY; row++) {
+                        int tileOffset = (row - tileY) * tileSize + fromX - tileX;
+                        int regionOffset = (row - y) * stride + fromX - x;
+                        if (toRaster) {
+                            System.arraycopy(pixels, regionOffset, tile.pixels, tileOffset, toX - fromX);
+                        } else {
+                            System.arraycopy(tile.pixels, tileOffset, pixels, regionOffset, toX - fromX);
+                        }
+                    }
+                    tile.dirty |= toRaster;
+                }
+            }
+        }
+        writeBackEvicted();
+    }
+
+    /**
+     * Плитка из кэша; вызывается под замком плитки {@code index}, поэтому загрузить её из файла
+     * может только один поток, а общий замок кэша при загрузке не держится.
+     */
+    private CachedTile tile(int index) {
+        synchronized (cache) {
+            CachedTile tile = cache.get(index);
+            if (tile == null) {
+                tile = evicted.get(index);
+                if (tile != null) {
+                    insert(index, tile);
+                }
+            }
+            if (tile != null) {
+                return tile;
+            }
+        }
+        CachedTile tile = new CachedTile(new int[tileSize * tileSize]);
+        MemorySegment.copy(segment, ValueLayout.JAVA_INT, tileOffset(index), tile.pixels, 0, tile.pixels.length);
+        synchronized (cache) {
+            insert(index, tile);
+        }
+        return tile;
+    }
+
+    private void insert(int index, CachedTile tile) {
+        cache.put(index, tile);
+        Iterator<Map.Entry<Integer, CachedTile>> eldest = cache.entrySet().iterator();
+        while (cache.size() > cachedTiles) {
+            Map.Entry<Integer, CachedTile> entry = eldest.next();
+            evicted.put(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    private void writeBackEvicted() {
+        List<Map.Entry<Integer, CachedTile>> tiles;
+        synchronized (cache) {
+            if (evicted.isEmpty()) {
+                return;
+            }
+            tiles = new ArrayList<>(evicted.entrySet());
+        }
+        writeBack(tiles);
+    }
+
+    /**
+     * Записывает плитки в файл, каждую под её замком, и убирает записанные из вытесненных.
+     * Вызывается без замков плиток, поэтому потоки не ждут друг друга по кругу.
+     */
+    private void writeBack(List<Map.Entry<Integer, CachedTile>> tiles) {
+        for (Map.Entry<Integer, CachedTile> entry : tiles) {
+            int index = entry.getKey();
+            CachedTile tile = entry.getValue();
+            synchronized (tileLocks[index]) {
+                store(index, tile);
+            }
+            synchronized (cache) {
+                evicted.remove(index, tile);
+            }
+        }
+    }
+
+    private void store(int index, CachedTile tile) {
+        if (tile.dirty) {
+            MemorySegment.copy(tile.pixels, 0, segment, ValueLayout.JAVA_INT, tileOffset(index), tile.pixels.length);
+            tile.dirty = false;
+        }
+    }
+
+    private long tileOffset(int index) {
+        return (long) index * tileSize * tileSize * Integer.BYTES;
+    }
+
+    private void checkRegion(int x, int y, int regionWidth, int regionHeight) {
+        if (x < 0 || y < 0 || regionWidth < 1 || regionHeight < 1
+                || x + regionWidth > width || y + regionHeight > height) {
+            throw new IllegalArgumentException("Прямоугольник " + regionWidth + "x" + regionHeight + " в (" + x
+                    + ", " + y + ") выходит за пределы растра " + width + "x" + height);
+        }
+    }
+
+    private static final class CachedTile {
+
+        private final int[] pixels;
+        private boolean dirty;
+
+        CachedTile(int[] pixels) {
+            this.pixels = pixels;
+        }
+    }
+}
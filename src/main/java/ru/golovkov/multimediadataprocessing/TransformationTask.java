@@ -0,0 +1,72 @@
+package ru.golovkov.multimediadataprocessing;
+
+import javafx.concurrent.Task;
+
+import java.util.function.Function;
+
+/**
+ * Преобразование изображения в фоновом потоке с отчётом о ходе и кооперативной отменой.
+ * <p>
+ * Преобразование получает {@link ImageTransformer}, планировщик которого связан с
+ * {@link TaskMonitor} этой задачи: ход считается по полосам строк (или столбцов) всех
+ * проходов, число которых оценивается заранее, а {@link #cancel()} останавливает выдачу
+ * новых полос. {@link ImagePyramid} и
+ * гистограмма результата готовятся здесь же, чтобы поток JavaFX только подставил готовое.
+ * Преобразование и гистограмма замеряются через {@link OperationMetrics}.
+ */
+class TransformationTask extends Task<TransformationTask.Result> {
+
+    private final ImageTransformer imageTransformer;
+    private final Function<ImageTransformer, ImageWrapper> transformation;
+    private final TaskMonitor monitor;
+    private final OperationMetrics metrics;
+    private final String operation;
+    private final String parameters;
+    private final int width;
+    private final int height;
+
+    TransformationTask(ImageTransformer imageTransformer, Function<ImageTransformer, ImageWrapper> transformation,
+                       OperationMetrics metrics, String operation, String parameters, ImageWrapper source,
+                       int expectedPasses) {
+        this.imageTransformer = imageTransformer;
+        this.transformation = transformation;
+        this.metrics = metrics;
+        this.operation = operation;
+        this.parameters = parameters;
+        this.width = source.getWidth();
+        this.height = source.getHeight();
+        this.monitor = new TaskMonitor(expectedPasses, (pass, passes, progress) -> {
+            updateProgress(progress, 1);
+            updateMessage("Проход " + pass + " из " + passes);
+        });
+    }
+
+    @Override
+    protected Result call() {
+        ImageTransformer monitoredTransformer =
+                imageTransformer.withScheduler(imageTransformer.getScheduler().withMonitor(monitor));
+        ImageWrapper imageWrapper = metrics.measure(OperationMetrics.Phase.TRANSFORM, operation, parameters,
+                width, height, () -> transformation.apply(monitoredTransformer));
+        monitor.checkCancelled();
+        metrics.measure(OperationMetrics.Phase.HISTOGRAM, operation, parameters,
+                imageWrapper.getWidth(), imageWrapper.getHeight(),
+                () -> imageTransformer.getHistogramService().histogramOf(imageWrapper));
+        return new Result(imageWrapper, ImagePyramid.build(imageWrapper, imageTransformer.getScheduler()));
+    }
+
+    /**
+     * Число проходов, сделанных преобразованием; оценка для следующего запуска.
+     */
+    int getPassCount() {
+        return monitor.getPassCount();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        monitor.cancel();
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+    record Result(ImageWrapper imageWrapper, ImagePyramid pyramid) {
+    }
+}
@@ -0,0 +1,52 @@
+package ru.golovkov.multimediadataprocessing;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Векторный вариант {@link Convolution#scalarConvolveRow}. Загружается только когда модуль
+ * {@code jdk.incubator.vector} присутствует в загрузочном слое.
+ */
+final class VectorConvolution {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorConvolution() {
+    }
+
+    static void convolveRow(int[] data, int[] rowBases, int width, ConvolutionKernel kernel, int[] result, int offset) {
+        int kernelWidth = kernel.getWidth();
+        int kernelHeight = kernel.getHeight();
+        int shift = kernel.getShift();
+        int half = shift > 0 ? 1 << (shift - 1) : 0;
+
+        int x = 0;
+        for (int bound = SPECIES.loopBound(width); x < bound; x += SPECIES.length()) {
+            IntVector sum = IntVector.zero(SPECIES);
+            for (int ky = 0; ky < kernelHeight; ky++) {
+                int rowBase = rowBases[ky] + x;
+                for (int kx = 0; kx < kernelWidth; kx++) {
+                    int weight = kernel.getWeight(kx, ky);
+                    if (weight != 0) {
+                        sum = sum.add(IntVector.fromArray(SPECIES, data, rowBase + kx).mul(weight));
+                    }
+                }
+            }
+            if (shift > 0) {
+                sum = sum.add(half).lanewise(VectorOperators.ASHR, shift);
+            }
+            sum.intoArray(result, offset + x);
+        }
+        for (; x < width; x++) {
+            int sum = 0;
+            for (int ky = 0; ky < kernelHeight; ky++) {
+                int rowBase = rowBases[ky] + x;
+                for (int kx = 0; kx < kernelWidth; kx++) {
+                    sum += kernel.getWeight(kx, ky) * data[rowBase + kx];
+                }
+            }
+            result[offset + x] = shift > 0 ? (sum + half) >> shift : sum;
+        }
+    }
+}
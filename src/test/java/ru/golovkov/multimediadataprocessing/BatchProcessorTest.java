@@ -0,0 +1,129 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchProcessorTest {
+
+    @Test
+    void tiledAndInMemoryRunsProduceSameOutput(@TempDir Path directory) throws Exception {
+        Path input = Files.createDirectory(directory.resolve("in"));
+        List<Path> files = writeInputs(input, new Random(7));
+        OperationChain operations = OperationChain.parse("median:1,gamma:0.8,average:2");
+        Path inMemory = directory.resolve("memory");
+        Path tiled = directory.resolve("tiled");
+
+        new BatchProcessor(operations, inMemory, "png", 2).process(files);
+        new BatchProcessor(operations, tiled, "png", 2).processTiled(files);
+
+        for (Path file : files) {
+            String name = file.getFileName().toString().replaceFirst("\\.[^.]+$", ".png");
+            ImageWrapper expected = ImageDecoder.read(inMemory.resolve(name));
+            ImageWrapper actual = ImageDecoder.read(tiled.resolve(name));
+            assertEquals(expected.getWidth(), actual.getWidth(), name);
+            assertEquals(expected.getHeight(), actual.getHeight(), name);
+            assertArrayEquals(expected.getPixels(), actual.getPixels(), name);
+        }
+    }
+
+    @Test
+    void grayImagesKeepTheirSamples(@TempDir Path directory) throws IOException {
+        BufferedImage gray = new BufferedImage(5, 3, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] samples = new byte[15];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (byte) (i * 17);
+        }
+        gray.getRaster().setDataElements(0, 0, 5, 3, samples);
+        for (boolean interlaced : new boolean[]{false, true}) {
+            Path file = directory.resolve("gray" + interlaced + ".png");
+            write(gray, "png", file, interlaced);
+            int[] pixels = ImageDecoder.read(file).getPixels();
+            try (TiledRaster raster = TiledRaster.read(file)) {
+                assertArrayEquals(pixels, raster.toImageWrapper().getPixels());
+            }
+            for (int i = 0; i < samples.length; i++) {
+                int value = i * 17;
+                assertEquals(0xFF000000 | value << 16 | value << 8 | value, pixels[i]);
+            }
+        }
+    }
+
+    private static List<Path> writeInputs(Path directory, Random random) throws IOException {
+        List<Path> files = new ArrayList<>();
+        int[][] sizes = {{1, 1}, {1, 23}, {23, 1}, {67, 45}, {300, 131}};
+        for (int[] size : sizes) {
+            for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_BYTE_GRAY,
+                    BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_INDEXED}) {
+                BufferedImage image = new BufferedImage(size[0], size[1], type);
+                fill(image, random);
+                Path file = directory.resolve("type" + type + "-" + size[0] + "x" + size[1] + ".png");
+                write(image, "png", file, size[0] > 50);
+                files.add(file);
+            }
+        }
+        BufferedImage grayAlpha = grayAlpha(37, 29, random);
+        files.add(write(grayAlpha, "png", directory.resolve("gray-alpha.png"), false));
+        files.add(write(grayAlpha, "png", directory.resolve("gray-alpha-interlaced.png"), true));
+        BufferedImage gray = new BufferedImage(61, 40, BufferedImage.TYPE_BYTE_GRAY);
+        fill(gray, random);
+        files.add(write(gray, "jpg", directory.resolve("gray.jpg"), false));
+        BufferedImage color = new BufferedImage(61, 40, BufferedImage.TYPE_INT_RGB);
+        fill(color, random);
+        files.add(write(color, "bmp", directory.resolve("color.bmp"), false));
+        return files;
+    }
+
+    private static void fill(BufferedImage image, Random random) {
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+    }
+
+    private static BufferedImage grayAlpha(int width, int height, Random random) {
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_GRAY), true,
+                false, Transparency.TRANSLUCENT, DataBuffer.TYPE_BYTE);
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+        byte[] samples = new byte[width * height * 2];
+        random.nextBytes(samples);
+        raster.setDataElements(0, 0, width, height, samples);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static Path write(BufferedImage image, String format, Path file, boolean interlaced) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (interlaced) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file.toFile())) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return file;
+    }
+}
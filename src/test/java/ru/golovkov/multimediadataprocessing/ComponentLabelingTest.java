@@ -0,0 +1,139 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ComponentLabelingTest {
+
+    @Test
+    void randomMasksMatchBreadthFirstSearch() {
+        long seed = 1;
+        for (int[] size : TestImages.SIZES) {
+            for (double density : new double[]{0, 0.3, 0.55, 0.8, 1}) {
+                ImageWrapper mask = TestImages.mask(size[0], size[1], density, seed++);
+                assertMatchesBreadthFirstSearch(mask, TestImages.describe(size[0], size[1]) + ", плотность " + density);
+            }
+        }
+    }
+
+    @Test
+    void checkerboardAndRingsMatchBreadthFirstSearch() {
+        for (int[] size : TestImages.SIZES) {
+            int width = size[0];
+            int height = size[1];
+            ImageWrapper checkerboard = new ImageWrapper(width, height);
+            ImageWrapper rings = new ImageWrapper(width, height);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    checkerboard.getPixels()[y * width + x] = (x + y) % 2 == 0 ? 0xFF000000 : 0xFFFFFFFF;
+                    int ring = Math.min(Math.min(x, y), Math.min(width - 1 - x, height - 1 - y));
+                    boolean wall = ring % 2 == 0 && !(x == ring + 1 && y == ring && ring + 1 < width - 1 - ring);
+                    rings.getPixels()[y * width + x] = wall ? 0xFF000000 : 0xFFFFFFFF;
+                }
+            }
+            assertMatchesBreadthFirstSearch(checkerboard, "шахматы " + TestImages.describe(width, height));
+            assertMatchesBreadthFirstSearch(rings, "кольца " + TestImages.describe(width, height));
+        }
+    }
+
+    private static void assertMatchesBreadthFirstSearch(ImageWrapper mask, String message) {
+        for (boolean eightConnected : new boolean[]{false, true}) {
+            BinaryImage binaryImage = BinaryImage.fromImage(mask, 0xFF000000, TileScheduler.serial());
+            int[] expected = breadthFirstSearch(binaryImage, eightConnected);
+            for (TileScheduler scheduler : new TileScheduler[]{TileScheduler.serial(), TestImages.parallel()}) {
+                String description = message + (eightConnected ? ", 8-связность" : ", 4-связность")
+                        + ", потоков " + scheduler.getParallelism();
+                ConnectedComponents components = ComponentLabeling.apply(binaryImage, eightConnected, scheduler);
+                assertArrayEquals(expected, components.getLabels(), description);
+                assertStatistics(binaryImage.getWidth(), expected, components, description);
+            }
+        }
+    }
+
+    /**
+     * Обход в ширину от каждого ещё не размеченного пиксела маски по строкам: номера
+     * компонент идут в порядке их первого пиксела.
+     */
+    private static int[] breadthFirstSearch(BinaryImage image, boolean eightConnected) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] labels = new int[width * height];
+        int count = 0;
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int start = 0; start < labels.length; start++) {
+            if (labels[start] != 0 || !image.get(start % width, start / width)) {
+                continue;
+            }
+            labels[start] = ++count;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                int pixel = queue.poll();
+                int x = pixel % width;
+                int y = pixel / width;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        if ((dx != 0 && dy != 0 && !eightConnected) || (dx == 0 && dy == 0)) {
+                            continue;
+                        }
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if (nx >= 0 && ny >= 0 && nx < width && ny < height
+                                && labels[ny * width + nx] == 0 && image.get(nx, ny)) {
+                            labels[ny * width + nx] = count;
+                            queue.add(ny * width + nx);
+                        }
+                    }
+                }
+            }
+        }
+        return labels;
+    }
+
+    private static void assertStatistics(int width, int[] labels, ConnectedComponents components, String message) {
+        int count = 0;
+        for (int label : labels) {
+            count = Math.max(count, label);
+        }
+        assertEquals(count, components.getCount(), message);
+        int[] areas = new int[count + 1];
+        int[] minX = new int[count + 1];
+        int[] minY = new int[count + 1];
+        int[] maxX = new int[count + 1];
+        int[] maxY = new int[count + 1];
+        long[] sumX = new long[count + 1];
+        long[] sumY = new long[count + 1];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        for (int i = 0; i < labels.length; i++) {
+            int label = labels[i];
+            if (label == 0) {
+                continue;
+            }
+            int x = i % width;
+            int y = i / width;
+            areas[label]++;
+            minX[label] = Math.min(minX[label], x);
+            minY[label] = Math.min(minY[label], y);
+            maxX[label] = Math.max(maxX[label], x);
+            maxY[label] = Math.max(maxY[label], y);
+            sumX[label] += x;
+            sumY[label] += y;
+        }
+        for (int label = 1; label <= count; label++) {
+            String description = message + ", компонента " + label;
+            assertEquals(areas[label], components.getArea(label), description);
+            assertEquals(minX[label], components.getMinX(label), description);
+            assertEquals(minY[label], components.getMinY(label), description);
+            assertEquals(maxX[label], components.getMaxX(label), description);
+            assertEquals(maxY[label], components.getMaxY(label), description);
+            assertEquals((double) sumX[label] / areas[label], components.getCentroidX(label), 1e-9, description);
+            assertEquals((double) sumY[label] / areas[label], components.getCentroidY(label), 1e-9, description);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MedianFilterTest {
+
+    @Test
+    void matchesBruteForce() {
+        long seed = 1;
+        for (int[] size : TestImages.SIZES) {
+            for (ImageWrapper input : new ImageWrapper[]{
+                    TestImages.random(size[0], size[1], seed++), TestImages.smooth(size[0], size[1], seed++)}) {
+                for (int radius : new int[]{1, 2, 5, 40}) {
+                    if (radius > 5 && input.getWidth() * input.getHeight() > 1000) {
+                        continue;
+                    }
+                    ImageWrapper expected = bruteForce(input, radius);
+                    for (TileScheduler scheduler : new TileScheduler[]{TileScheduler.serial(), TestImages.parallel()}) {
+                        ImageWrapper actual = new ImageWrapper(input.getWidth(), input.getHeight());
+                        MedianFilter.apply(input, actual, radius, scheduler);
+                        TestImages.assertSameImage(expected, actual, "r=" + radius + ", "
+                                + TestImages.describe(size[0], size[1]) + ", потоков " + scheduler.getParallelism());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsRadiusOutsideCounterRange() {
+        ImageWrapper input = TestImages.random(3, 3, 0);
+        ImageWrapper result = new ImageWrapper(3, 3);
+        assertThrows(IllegalArgumentException.class,
+                () -> MedianFilter.apply(input, result, 0, TileScheduler.serial()));
+        assertThrows(IllegalArgumentException.class,
+                () -> MedianFilter.apply(input, result, Short.MAX_VALUE, TileScheduler.serial()));
+    }
+
+    /**
+     * Сортировка каждого окна; за краем повторяются крайние пикселы, альфа берётся из центра.
+     */
+    private static ImageWrapper bruteForce(ImageWrapper input, int radius) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        int[] source = input.getPixels();
+        ImageWrapper result = new ImageWrapper(width, height);
+        int side = 2 * radius + 1;
+        int[][] windows = new int[3][side * side];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dx = -radius; dx <= radius; dx++) {
+                        int argb = source[Math.clamp(y + dy, 0, height - 1) * width + Math.clamp(x + dx, 0, width - 1)];
+                        windows[0][count] = ImageTransformer.red(argb);
+                        windows[1][count] = ImageTransformer.green(argb);
+                        windows[2][count] = ImageTransformer.blue(argb);
+                        count++;
+                    }
+                }
+                for (int[] window : windows) {
+                    Arrays.sort(window);
+                }
+                result.getPixels()[y * width + x] = ImageTransformer.argb(ImageTransformer.alpha(source[y * width + x]),
+                        windows[0][count / 2], windows[1][count / 2], windows[2][count / 2]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PipelineTest {
+
+    private static final ConvolutionKernel GAUSSIAN = ConvolutionKernel.of(new double[][]{
+            {1 / 16.0, 2 / 16.0, 1 / 16.0},
+            {2 / 16.0, 4 / 16.0, 2 / 16.0},
+            {1 / 16.0, 2 / 16.0, 1 / 16.0}});
+    private static final ConvolutionKernel SHIFTED = ConvolutionKernel.of(new int[][]{
+            {0, 0, 1, 0},
+            {1, 0, 0, 0}});
+
+    @Test
+    void fusedPointOperationsMatchStepByStep() {
+        assertMatchesSteps(Pipeline.builder().negative().powerLaw(0.6).brightnessRangeCut(30, 220).threshold(90).build(),
+                List.of(ImageTransformer::createNegativeImage,
+                        (transformer, image) -> transformer.createPowerLawTransformation(image, 0.6),
+                        (transformer, image) -> transformer.createBrightnessRangeCut(image, 30, 220),
+                        (transformer, image) -> transformer.applyThreshold(image, 90)));
+    }
+
+    @Test
+    void streamedNeighbourhoodOperationsMatchStepByStep() {
+        assertMatchesSteps(Pipeline.builder().averageFilter(2).powerLaw(1.4).sobelGradient().averageFilter(1)
+                        .convolve(GAUSSIAN, BorderMode.CLAMP).laplacian90().build(),
+                List.of((transformer, image) -> transformer.createAverageFilter(image, 2),
+                        (transformer, image) -> transformer.createPowerLawTransformation(image, 1.4),
+                        ImageTransformer::createSobelGradient,
+                        ImageTransformer::createAverageFilter,
+                        (transformer, image) -> transformer.convolve(image, GAUSSIAN, BorderMode.CLAMP),
+                        ImageTransformer::createLaplacian90));
+        assertMatchesSteps(Pipeline.builder().robertsGradient().convolve(SHIFTED, BorderMode.CLAMP).laplacian45()
+                        .negative().build(),
+                List.of(ImageTransformer::createRobertsGradient,
+                        (transformer, image) -> transformer.convolve(image, SHIFTED, BorderMode.CLAMP),
+                        ImageTransformer::createLaplacian45,
+                        ImageTransformer::createNegativeImage));
+    }
+
+    @Test
+    void histogramAndMaterializedStepsMatchStepByStep() {
+        assertMatchesSteps(Pipeline.builder().averageFilter(1).histogramEqualization().negative()
+                        .then("медиана", 2, (transformer, image) -> transformer.createMedianFilter(image, 2))
+                        .convolve(GAUSSIAN, BorderMode.REFLECT).otsuThreshold().build(),
+                List.of(ImageTransformer::createAverageFilter,
+                        ImageTransformer::createHistogramEqualization,
+                        ImageTransformer::createNegativeImage,
+                        (transformer, image) -> transformer.createMedianFilter(image, 2),
+                        (transformer, image) -> transformer.convolve(image, GAUSSIAN, BorderMode.REFLECT),
+                        ImageTransformer::applyOtsuThreshold));
+    }
+
+    @Test
+    void operationChainMatchesStepByStep() {
+        OperationChain chain = OperationChain.parse("median:1, gamma:0.8, average:2, equalize, open:disc:5:black");
+        assertEquals(5, chain.size());
+        assertMatchesSteps(chain.getPipeline(),
+                List.of(ImageTransformer::createMedianFilter,
+                        (transformer, image) -> transformer.createPowerLawTransformation(image, 0.8),
+                        (transformer, image) -> transformer.createAverageFilter(image, 2),
+                        ImageTransformer::createHistogramEqualization,
+                        (transformer, image) -> transformer.open(image, StructuringElement.disc(2), true)));
+    }
+
+    private static void assertMatchesSteps(Pipeline pipeline,
+                                           List<BiFunction<ImageTransformer, ImageWrapper, ImageWrapper>> steps) {
+        long seed = 1;
+        for (int[] size : TestImages.SIZES) {
+            for (ImageWrapper input : new ImageWrapper[]{
+                    TestImages.random(size[0], size[1], seed++), TestImages.smooth(size[0], size[1], seed++)}) {
+                for (TileScheduler scheduler : new TileScheduler[]{TileScheduler.serial(), TestImages.parallel()}) {
+                    ImageTransformer transformer = new ImageTransformer(scheduler);
+                    ImageWrapper expected = input;
+                    for (BiFunction<ImageTransformer, ImageWrapper, ImageWrapper> step : steps) {
+                        expected = step.apply(transformer, expected);
+                    }
+                    TestImages.assertSameImage(expected, pipeline.apply(transformer, input), pipeline + ", "
+                            + TestImages.describe(size[0], size[1]) + ", потоков " + scheduler.getParallelism());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PngEncoderTest {
+
+    @Test
+    void combinedChecksumMatchesChecksumOfConcatenation() {
+        Random random = new Random(3);
+        for (int length : new int[]{0, 1, 2, 100, 65520, 65521, 65522, 200_000}) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            if (length > 100) {
+                Arrays.fill(data, 0, 100, (byte) 0xFF);
+            }
+            long whole = adler32(data, 0, length);
+            for (int split : new int[]{0, 1, length / 3, length / 2, length - 1, length}) {
+                if (split < 0 || split > length) {
+                    continue;
+                }
+                long combined = PngEncoder.combineAdler32(adler32(data, 0, split), adler32(data, split, length),
+                        length - split);
+                assertEquals(whole, combined, "длина " + length + ", разрез " + split);
+            }
+        }
+    }
+
+    @Test
+    void decodesToTheSamePixels(@TempDir Path directory) throws IOException {
+        long seed = 1;
+        int[][] sizes = {{1, 1}, {1, 37}, {37, 1}, {131, 77}, {300, 2000}};
+        for (int[] size : sizes) {
+            for (boolean opaque : new boolean[]{true, false}) {
+                ImageWrapper image = opaque
+                        ? TestImages.smooth(size[0], size[1], seed++)
+                        : TestImages.random(size[0], size[1], seed++);
+                for (TileScheduler scheduler : new TileScheduler[]{TileScheduler.serial(), TestImages.parallel()}) {
+                    String message = TestImages.describe(size[0], size[1]) + (opaque ? ", непрозрачное" : "")
+                            + ", потоков " + scheduler.getParallelism();
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    new PngEncoder(scheduler).write(image, output);
+                    byte[] png = output.toByteArray();
+
+                    BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(png));
+                    assertEquals(size[0], decoded.getWidth(), message);
+                    assertEquals(size[1], decoded.getHeight(), message);
+                    assertArrayEquals(image.getPixels(),
+                            decoded.getRGB(0, 0, size[0], size[1], null, 0, size[0]), message);
+
+                    Path file = directory.resolve("image.png");
+                    Files.write(file, png);
+                    try (PngDecoder decoder = PngDecoder.open(file)) {
+                        int[] pixels = new int[size[0] * size[1]];
+                        decoder.readRows(pixels, size[1]);
+                        assertArrayEquals(image.getPixels(), pixels, message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void tiledRasterEncodesLikeImage(@TempDir Path directory) throws IOException {
+        ImageWrapper image = TestImages.random(300, 1500, 9);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new PngEncoder(TestImages.parallel()).write(image, expected);
+        try (TiledRaster raster = TiledRaster.createTemporary(directory, 300, 1500, 64, 4)) {
+            raster.write(image, 0, 0);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            new PngEncoder(TestImages.parallel()).write(raster, actual);
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    private static long adler32(byte[] data, int from, int to) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(data, from, to - from);
+        return adler32.getValue();
+    }
+}
@@ -0,0 +1,188 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StructuringElementTest {
+
+    @Test
+    void shapesDecomposeIntoTheirOffsets() {
+        for (int width = 1; width <= 6; width++) {
+            for (int height = 1; height <= 6; height++) {
+                Set<Offset> expected = new HashSet<>();
+                for (int dx = -(width / 2); dx < width - width / 2; dx++) {
+                    for (int dy = -(height / 2); dy < height - height / 2; dy++) {
+                        expected.add(new Offset(dx, dy));
+                    }
+                }
+                assertEquals(expected, offsets(StructuringElement.rectangle(width, height)),
+                        "прямоугольник " + width + "x" + height);
+            }
+        }
+        for (int radius = 0; radius <= 7; radius++) {
+            Set<Offset> expected = new HashSet<>();
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dy = -radius; dy <= radius; dy++) {
+                    if (Math.abs(dx) + Math.abs(dy) <= radius) {
+                        expected.add(new Offset(dx, dy));
+                    }
+                }
+            }
+            assertEquals(expected, offsets(StructuringElement.diamond(radius)), "ромб r=" + radius);
+        }
+        for (int radius = 0; radius <= 9; radius++) {
+            StructuringElement disc = StructuringElement.disc(radius);
+            Set<Offset> offsets = offsets(disc);
+            assertEquals(2 * radius + 1, disc.getWidth(), "диск r=" + radius);
+            assertEquals(2 * radius + 1, disc.getHeight(), "диск r=" + radius);
+            for (Offset offset : offsets) {
+                assertTrue(offsets.contains(new Offset(-offset.dx, offset.dy)), "симметрия, r=" + radius);
+                assertTrue(offsets.contains(new Offset(offset.dy, offset.dx)), "симметрия, r=" + radius);
+            }
+        }
+    }
+
+    @Test
+    void decomposedMorphologyMatchesBruteForce() {
+        long seed = 1;
+        for (int[] size : TestImages.SIZES) {
+            ImageWrapper mask = TestImages.mask(size[0], size[1], 0.3, seed++);
+            BinaryImage binaryImage = BinaryImage.fromImage(mask, 0xFF000000, TileScheduler.serial());
+            for (Map.Entry<String, StructuringElement> element : elements().entrySet()) {
+                Set<Offset> offsets = offsets(element.getValue());
+                for (TileScheduler scheduler : new TileScheduler[]{TileScheduler.serial(), TestImages.parallel()}) {
+                    String message = element.getKey() + ", " + TestImages.describe(size[0], size[1])
+                            + ", потоков " + scheduler.getParallelism();
+                    assertSameMask(bruteForce(binaryImage, offsets, false),
+                            BinaryMorphology.dilate(binaryImage, element.getValue(), scheduler), "дилатация " + message);
+                    assertSameMask(bruteForce(binaryImage, offsets, true),
+                            BinaryMorphology.erode(binaryImage, element.getValue(), scheduler), "эрозия " + message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matrixElementMatchesMaskAndBackground() {
+        int[][] matrix = {{0, 1, 2}, {1, 1, 1}, {2, 1, 0}};
+        StructuringElement element = StructuringElement.of(matrix);
+        long seed = 50;
+        for (int[] size : TestImages.SIZES) {
+            BinaryImage image = BinaryImage.fromImage(TestImages.mask(size[0], size[1], 0.6, seed++), 0xFF000000,
+                    TileScheduler.serial());
+            for (boolean erode : new boolean[]{false, true}) {
+                BinaryImage actual = erode
+                        ? BinaryMorphology.erode(image, element, TestImages.parallel())
+                        : BinaryMorphology.dilate(image, element, TestImages.parallel());
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        boolean expected = erode;
+                        for (int i = 0; i < 3; i++) {
+                            for (int j = 0; j < 3; j++) {
+                                int sourceX = x + i - 1;
+                                int sourceY = y + j - 1;
+                                if (sourceX < 0 || sourceY < 0 || sourceX >= image.getWidth()
+                                        || sourceY >= image.getHeight()) {
+                                    continue;
+                                }
+                                boolean pixel = image.get(sourceX, sourceY);
+                                boolean matches = matrix[i][j] == 1 ? pixel : matrix[i][j] == 0 && !pixel;
+                                expected = erode ? expected && matches : expected || matches;
+                            }
+                        }
+                        assertEquals(expected, actual.get(x, y), (erode ? "эрозия " : "дилатация ")
+                                + TestImages.describe(size[0], size[1]) + " в (" + x + ", " + y + ")");
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<String, StructuringElement> elements() {
+        Map<String, StructuringElement> elements = new LinkedHashMap<>();
+        elements.put("прямоугольник 3x3", StructuringElement.rectangle(3, 3));
+        elements.put("прямоугольник 4x7", StructuringElement.rectangle(4, 7));
+        elements.put("прямоугольник 70x1", StructuringElement.rectangle(70, 1));
+        for (int angle : new int[]{0, 45, 90, 135}) {
+            elements.put("отрезок 6 под " + angle, StructuringElement.line(6, angle));
+            elements.put("отрезок 9 под " + angle, StructuringElement.line(9, angle));
+        }
+        for (int radius : new int[]{1, 2, 3, 4, 7}) {
+            elements.put("ромб r=" + radius, StructuringElement.diamond(radius));
+        }
+        for (int radius : new int[]{1, 2, 3, 5, 8}) {
+            elements.put("диск r=" + radius, StructuringElement.disc(radius));
+        }
+        return elements;
+    }
+
+    /**
+     * Смещения всего элемента: сумма Минковского его компонентов.
+     */
+    private static Set<Offset> offsets(StructuringElement element) {
+        Set<Offset> offsets = Set.of(new Offset(0, 0));
+        for (StructuringElement.Component component : element.getComponents()) {
+            List<Offset> componentOffsets = new ArrayList<>();
+            if (component.isLine()) {
+                for (int t = component.lineStart(); t <= component.lineEnd(); t++) {
+                    componentOffsets.add(new Offset(t * component.direction().dx, t * component.direction().dy));
+                }
+            } else {
+                for (int i = 0; i < component.dx().length; i++) {
+                    componentOffsets.add(new Offset(component.dx()[i], component.dy()[i]));
+                }
+            }
+            Set<Offset> sum = new HashSet<>();
+            for (Offset offset : offsets) {
+                for (Offset componentOffset : componentOffsets) {
+                    sum.add(new Offset(offset.dx + componentOffset.dx, offset.dy + componentOffset.dy));
+                }
+            }
+            offsets = sum;
+        }
+        return offsets;
+    }
+
+    /**
+     * Пиксел (x, y) результата объединяет (или пересекает при эрозии) пикселы (x + dx, y + dy)
+     * внутри изображения; пикселы за краем не учитываются.
+     */
+    private static BinaryImage bruteForce(BinaryImage image, Set<Offset> offsets, boolean erode) {
+        BinaryImage result = new BinaryImage(image.getWidth(), image.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                boolean value = erode;
+                for (Offset offset : offsets) {
+                    int sourceX = x + offset.dx;
+                    int sourceY = y + offset.dy;
+                    if (sourceX >= 0 && sourceY >= 0 && sourceX < image.getWidth() && sourceY < image.getHeight()) {
+                        boolean pixel = image.get(sourceX, sourceY);
+                        value = erode ? value && pixel : value || pixel;
+                    }
+                }
+                result.set(x, y, value);
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameMask(BinaryImage expected, BinaryImage actual, String message) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.get(x, y), actual.get(x, y), message + " в (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    private record Offset(int dx, int dy) {
+    }
+}
@@ -0,0 +1,80 @@
+package ru.golovkov.multimediadataprocessing;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Общие для тестов изображения и проверки.
+ * <p>
+ * Размеры нарочно неудобные: вырожденные 1x1, 1xN и Nx1, а также стороны, не кратные
+ * размерам полос, плиток и слов {@code long}, чтобы попадать на края разбиения.
+ */
+final class TestImages {
+
+    static final int[][] SIZES = {{1, 1}, {1, 37}, {37, 1}, {2, 3}, {65, 9}, {131, 77}, {300, 131}};
+
+    private TestImages() {
+    }
+
+    /**
+     * Планировщик с несколькими потоками независимо от числа процессоров машины.
+     */
+    static TileScheduler parallel() {
+        return new TileScheduler(4);
+    }
+
+    static ImageWrapper random(int width, int height, long seed) {
+        Random random = new Random(seed);
+        ImageWrapper imageWrapper = new ImageWrapper(width, height);
+        int[] pixels = imageWrapper.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return imageWrapper;
+    }
+
+    /**
+     * Изображение из гладкого фона с шумом: на нём пороги, медиана и морфология дают
+     * осмысленные области, а не случайную маску.
+     */
+    static ImageWrapper smooth(int width, int height, long seed) {
+        Random random = new Random(seed);
+        ImageWrapper imageWrapper = new ImageWrapper(width, height);
+        int[] pixels = imageWrapper.getPixels();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int base = (int) (127 + 100 * Math.sin(x / 7.0) * Math.cos(y / 5.0));
+                int red = Math.clamp(base + random.nextInt(41) - 20, 0, 255);
+                int green = Math.clamp(base + random.nextInt(41) - 20, 0, 255);
+                int blue = Math.clamp(255 - base + random.nextInt(41) - 20, 0, 255);
+                pixels[y * width + x] = ImageTransformer.argb(255, red, green, blue);
+            }
+        }
+        return imageWrapper;
+    }
+
+    /**
+     * Чёрно-белая маска, в которой доля чёрных пикселов примерно равна {@code density}.
+     */
+    static ImageWrapper mask(int width, int height, double density, long seed) {
+        Random random = new Random(seed);
+        ImageWrapper imageWrapper = new ImageWrapper(width, height);
+        int[] pixels = imageWrapper.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextDouble() < density ? 0xFF000000 : 0xFFFFFFFF;
+        }
+        return imageWrapper;
+    }
+
+    static void assertSameImage(ImageWrapper expected, ImageWrapper actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message);
+        assertEquals(expected.getHeight(), actual.getHeight(), message);
+        assertArrayEquals(expected.getPixels(), actual.getPixels(), message);
+    }
+
+    static String describe(int width, int height) {
+        return width + "x" + height;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileSchedulerTest {
+
+    private static final ConvolutionKernel GAUSSIAN = ConvolutionKernel.of(new double[][]{
+            {1 / 16.0, 2 / 16.0, 1 / 16.0},
+            {2 / 16.0, 4 / 16.0, 2 / 16.0},
+            {1 / 16.0, 2 / 16.0, 1 / 16.0}});
+
+    @Test
+    void everyIndexIsProcessedExactlyOnce() {
+        TileScheduler scheduler = TestImages.parallel();
+        for (int size : new int[]{0, 1, 7, 8, 9, 63, 1000, 4099}) {
+            AtomicIntegerArray rows = new AtomicIntegerArray(size);
+            AtomicIntegerArray columns = new AtomicIntegerArray(size);
+            AtomicIntegerArray chunks = new AtomicIntegerArray(size);
+            scheduler.forEachRowBand(size, (from, to) -> mark(rows, from, to));
+            scheduler.forEachColumnStrip(size, 5, (from, to) -> mark(columns, from, to));
+            scheduler.forEachChunk(size, 1, (from, to) -> mark(chunks, from, to));
+            for (int i = 0; i < size; i++) {
+                assertEquals(1, rows.get(i), "полосы строк, " + size);
+                assertEquals(1, columns.get(i), "полосы столбцов, " + size);
+                assertEquals(1, chunks.get(i), "части, " + size);
+            }
+        }
+    }
+
+    @Test
+    void partBoundariesCoverTheRange() {
+        for (int length : new int[]{0, 1, 5, 131}) {
+            for (int parts = 1; parts <= 9; parts++) {
+                assertEquals(0, TileScheduler.partBoundary(0, length, parts));
+                assertEquals(length, TileScheduler.partBoundary(parts, length, parts));
+                for (int index = 1; index <= parts; index++) {
+                    assertTrue(TileScheduler.partBoundary(index - 1, length, parts)
+                            <= TileScheduler.partBoundary(index, length, parts));
+                }
+            }
+        }
+    }
+
+    @Test
+    void parallelOperationsMatchSerialBitForBit() {
+        ImageTransformer serial = new ImageTransformer(TileScheduler.serial());
+        ImageTransformer parallel = new ImageTransformer(TestImages.parallel());
+        long seed = 1;
+        for (int[] size : TestImages.SIZES) {
+            ImageWrapper random = TestImages.random(size[0], size[1], seed++);
+            ImageWrapper smooth = TestImages.smooth(size[0], size[1], seed++);
+            ImageWrapper mask = TestImages.mask(size[0], size[1], 0.4, seed++);
+            for (Map.Entry<String, BiFunction<ImageTransformer, ImageWrapper, ImageWrapper>> operation
+                    : operations().entrySet()) {
+                for (ImageWrapper input : new ImageWrapper[]{random, smooth, mask}) {
+                    String message = operation.getKey() + ", " + TestImages.describe(size[0], size[1]);
+                    TestImages.assertSameImage(operation.getValue().apply(serial, input),
+                            operation.getValue().apply(parallel, input), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void parallelLabelingMatchesSerial() {
+        long seed = 100;
+        for (int[] size : TestImages.SIZES) {
+            ImageWrapper mask = TestImages.mask(size[0], size[1], 0.55, seed++);
+            for (boolean eightConnected : new boolean[]{false, true}) {
+                ConnectedComponents expected = new ImageTransformer(TileScheduler.serial())
+                        .labelComponents(mask, eightConnected, true);
+                ConnectedComponents actual = new ImageTransformer(TestImages.parallel())
+                        .labelComponents(mask, eightConnected, true);
+                assertEquals(expected.getCount(), actual.getCount());
+                assertArrayEquals(expected.getLabels(), actual.getLabels());
+            }
+        }
+    }
+
+    private static Map<String, BiFunction<ImageTransformer, ImageWrapper, ImageWrapper>> operations() {
+        Map<String, BiFunction<ImageTransformer, ImageWrapper, ImageWrapper>> operations = new LinkedHashMap<>();
+        operations.put("негатив", ImageTransformer::createNegativeImage);
+        operations.put("гамма", (transformer, image) -> transformer.createPowerLawTransformation(image, 0.7));
+        operations.put("вырезание", (transformer, image) -> transformer.createBrightnessRangeCut(image, 40, 200));
+        operations.put("среднее r=1", ImageTransformer::createAverageFilter);
+        operations.put("среднее r=4", (transformer, image) -> transformer.createAverageFilter(image, 4));
+        operations.put("медиана r=1", ImageTransformer::createMedianFilter);
+        operations.put("медиана r=3", (transformer, image) -> transformer.createMedianFilter(image, 3));
+        operations.put("Робертс", ImageTransformer::createRobertsGradient);
+        operations.put("Собель", ImageTransformer::createSobelGradient);
+        operations.put("Лаплас 90", ImageTransformer::createLaplacian90);
+        operations.put("Лаплас 45", ImageTransformer::createLaplacian45);
+        for (BorderMode borderMode : BorderMode.values()) {
+            operations.put("Гаусс " + borderMode,
+                    (transformer, image) -> transformer.convolve(image, GAUSSIAN, borderMode));
+        }
+        operations.put("эквализация", ImageTransformer::createHistogramEqualization);
+        operations.put("CLAHE", (transformer, image) ->
+                transformer.createAdaptiveHistogramEqualization(image, 4, 2.0, false));
+        operations.put("CLAHE luma", (transformer, image) ->
+                transformer.createAdaptiveHistogramEqualization(image, 3, 3.0, true));
+        operations.put("порог", (transformer, image) -> transformer.applyThreshold(image, 100));
+        operations.put("Оцу", ImageTransformer::applyOtsuThreshold);
+        operations.put("адаптивное среднее", (transformer, image) -> transformer.applyMeanThreshold(image, 5, 3));
+        operations.put("Брэдли", (transformer, image) -> transformer.applyBradleyThreshold(image, 6, 0.15));
+        operations.put("Саувола", (transformer, image) -> transformer.applySauvolaThreshold(image, 4, 0.34));
+        operations.put("дилатация диск", (transformer, image) ->
+                transformer.dilate(image, StructuringElement.disc(4), true));
+        operations.put("эрозия ромб", (transformer, image) ->
+                transformer.erode(image, StructuringElement.diamond(3), true));
+        operations.put("закрытие", (transformer, image) ->
+                transformer.close(image, StructuringElement.rectangle(5, 2), true));
+        operations.put("открытие", (transformer, image) ->
+                transformer.open(image, StructuringElement.line(7, 45), false));
+        operations.put("граница", (transformer, image) ->
+                transformer.boundaryExtraction(image, StructuringElement.rectangle(3, 3), true));
+        operations.put("остов", (transformer, image) -> transformer.skeletonize(image, true));
+        operations.put("уменьшение", (transformer, image) -> transformer.createDownsampled(image, 40, 30));
+        return operations;
+    }
+
+    private static void mark(AtomicIntegerArray counts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            counts.incrementAndGet(i);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ru.golovkov.multimediadataprocessing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TiledRasterTest {
+
+    @Test
+    void regionsMatchInMemoryImage(@TempDir Path directory) throws IOException {
+        Random random = new Random(5);
+        for (int[] size : TestImages.SIZES) {
+            int width = size[0];
+            int height = size[1];
+            ImageWrapper expected = new ImageWrapper(width, height);
+            try (TiledRaster raster = TiledRaster.createTemporary(directory, width, height, 16, 3)) {
+                for (int step = 0; step < 200; step++) {
+                    int x = random.nextInt(width);
+                    int y = random.nextInt(height);
+                    int regionWidth = 1 + random.nextInt(width - x);
+                    int regionHeight = 1 + random.nextInt(height - y);
+                    if (random.nextBoolean()) {
+                        ImageWrapper region = TestImages.random(regionWidth, regionHeight, step);
+                        raster.write(region, x, y);
+                        copy(region, expected, x, y);
+                    } else {
+                        assertSameRegion(expected, raster.read(x, y, regionWidth, regionHeight), x, y);
+                    }
+                }
+                TestImages.assertSameImage(expected, raster.toImageWrapper(), TestImages.describe(width, height));
+            }
+        }
+    }
+
+    @Test
+    void concurrentWritesAreNotLost(@TempDir Path directory) throws Exception {
+        int width = 301;
+        int height = 257;
+        int threads = 6;
+        ImageWrapper expected = TestImages.random(width, height, 11);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (TiledRaster raster = TiledRaster.createTemporary(directory, width, height, 16, 5)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int first = thread;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(first);
+                    for (int y = first; y < height; y += threads) {
+                        raster.write(expected, 0, y, 0, y, width, 1);
+                        assertSameRegion(expected, raster.read(0, y, width, 1), 0, y);
+                        int x = random.nextInt(width);
+                        int other = random.nextInt(height);
+                        raster.read(x, other, width - x, height - other);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            TestImages.assertSameImage(expected, raster.toImageWrapper(), "после параллельной записи");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void tiledPipelineMatchesInMemory(@TempDir Path directory) throws IOException {
+        OperationChain chain = OperationChain.parse("median:2,average:1,sobel,equalize,gamma:0.8,erode:diamond:5");
+        int[][] sizes = {{1, 1}, {1, 37}, {37, 1}, {131, 77}, {700, 530}};
+        long seed = 1;
+        for (int[] size : sizes) {
+            ImageWrapper image = TestImages.smooth(size[0], size[1], seed++);
+            for (TileScheduler scheduler : new TileScheduler[]{TileScheduler.serial(), TestImages.parallel()}) {
+                ImageTransformer transformer = new ImageTransformer(scheduler);
+                ImageWrapper expected = chain.apply(transformer, image);
+                try (TiledRaster source = TiledRaster.createTemporary(directory, size[0], size[1], 64, 8)) {
+                    source.write(image, 0, 0);
+                    try (TiledRaster result = chain.apply(transformer, source)) {
+                        TestImages.assertSameImage(expected, result.toImageWrapper(),
+                                TestImages.describe(size[0], size[1]) + ", потоков " + scheduler.getParallelism());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void histogramMatchesInMemory(@TempDir Path directory) throws IOException {
+        ImageWrapper image = TestImages.random(133, 71, 4);
+        Histogram expected = HistogramService.compute(image, TileScheduler.serial());
+        try (TiledRaster raster = TiledRaster.createTemporary(directory, 133, 71, 32, 2)) {
+            raster.write(image, 0, 0);
+            Histogram actual = raster.histogram(TestImages.parallel());
+            assertArrayEquals(expected.getBrightness(), actual.getBrightness());
+            assertEquals(expected.getTotal(), actual.getTotal());
+        }
+    }
+
+    @Test
+    void temporaryFilesStayInTheirDirectory(@TempDir Path directory) throws IOException {
+        try (TiledRaster raster = TiledRaster.createTemporary(directory, 40, 30)) {
+            assertEquals(1, count(directory));
+            assertEquals(directory, raster.getTemporaryDirectory());
+            try (TiledRaster result = OperationChain.parse("average:1").apply(new ImageTransformer(), raster)) {
+                assertEquals(directory, result.getTemporaryDirectory());
+                assertEquals(2, count(directory));
+            }
+        }
+        assertEquals(0, count(directory));
+    }
+
+    private static void copy(ImageWrapper region, ImageWrapper target, int x, int y) {
+        for (int row = 0; row < region.getHeight(); row++) {
+            System.arraycopy(region.getPixels(), row * region.getWidth(), target.getPixels(),
+                    (y + row) * target.getWidth() + x, region.getWidth());
+        }
+    }
+
+    private static void assertSameRegion(ImageWrapper expected, ImageWrapper region, int x, int y) {
+        for (int row = 0; row < region.getHeight(); row++) {
+            int offset = (y + row) * expected.getWidth() + x;
+            int[] expectedRow = Arrays.copyOfRange(expected.getPixels(), offset, offset + region.getWidth());
+            int[] actualRow = Arrays.copyOfRange(region.getPixels(), row * region.getWidth(),
+                    (row + 1) * region.getWidth());
+            assertArrayEquals(expectedRow, actualRow, "строка " + (y + row));
+        }
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}